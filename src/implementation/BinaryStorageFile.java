@@ -0,0 +1,198 @@
+package cz.salmelu.discord.implementation;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * <p>Snapshot of a storage in the compact binary format, saved in memory-mapped segment files.</p>
+ * <p>A segment contains a header and the entries of the storage. Every entry is a length-prefixed key,
+ * the id of the {@link StorageCodec} and the length-prefixed encoded value. The segment ends with a checksum
+ * of all the preceding bytes, which is verified when it's loaded.</p>
+ * <p>A loaded segment is mapped into memory and only the keys are read. The values stay in the mapped file
+ * as {@link MappedValue}s and are decoded when they are requested for the first time, values never requested
+ * are copied into the next segment without being decoded at all.</p>
+ * <p>Segments are named <code>storage.seg.generation</code>, where the generation is the first generation
+ * of the {@link StorageJournal} logs the segment doesn't contain. Every snapshot is written into a new segment,
+ * so a segment is never changed while it's mapped. It's written into a temporary file first and renamed
+ * when complete, see {@link StorageFiles}.</p>
+ */
+final class BinaryStorageFile {
+
+    private static final int MAGIC = 0x44534253;
+    private static final byte VERSION_NO_CHECKSUM = 1;
+    private static final byte VERSION = 2;
+    static final String SEGMENT_INFIX = ".seg.";
+
+    /**
+     * A value still kept in a mapped segment.
+     */
+    static final class MappedValue {
+        private final byte codec;
+        private final ByteBuffer bytes;
+
+        private MappedValue(byte codec, ByteBuffer bytes) {
+            this.codec = codec;
+            this.bytes = bytes;
+        }
+
+        /**
+         * Decodes the value.
+         * @return decoded value
+         * @throws IOException if the value can't be decoded
+         */
+        Object decode() throws IOException {
+            final StorageCodec decoder = StorageCodecs.byId(codec);
+            if(decoder == null) {
+                throw new IOException("Unknown storage codec " + (codec & 0xFF) + ".");
+            }
+            return decoder.decode(bytes.duplicate());
+        }
+    }
+
+    /**
+     * Encoded entry, ready to be written.
+     */
+    static final class Entry {
+        private final byte[] key;
+        private final byte codec;
+        private final ByteBuffer value;
+
+        private Entry(byte[] key, byte codec, ByteBuffer value) {
+            this.key = key;
+            this.codec = codec;
+            this.value = value;
+        }
+    }
+
+    private BinaryStorageFile() {}
+
+    /**
+     * Gets the path of a segment.
+     * @param storageFile path of the storage's file
+     * @param generation generation of the segment
+     * @return path of the segment
+     */
+    static Path getSegmentPath(Path storageFile, long generation) {
+        return storageFile.resolveSibling(storageFile.getFileName() + SEGMENT_INFIX + generation);
+    }
+
+    /**
+     * Encodes the contents of a storage. Must be called while the storage can't change,
+     * the values which weren't decoded are only referenced.
+     * @param map contents of the storage
+     * @return encoded entries
+     * @throws IOException if some of the values can't be encoded
+     */
+    static List<Entry> capture(Map<String, Object> map) throws IOException {
+        final List<Entry> entries = new ArrayList<>(map.size());
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        final DataOutputStream out = new DataOutputStream(bytes);
+        for(Map.Entry<String, Object> entry : map.entrySet()) {
+            final byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            final Object value = entry.getValue();
+            if(value == null) continue;
+            if(value instanceof MappedValue) {
+                final MappedValue mapped = (MappedValue) value;
+                entries.add(new Entry(key, mapped.codec, mapped.bytes.duplicate()));
+                continue;
+            }
+            final StorageCodec codec = StorageCodecs.forValue(value);
+            bytes.reset();
+            codec.encode(value, out);
+            out.flush();
+            entries.add(new Entry(key, codec.getId(), ByteBuffer.wrap(bytes.toByteArray())));
+        }
+        return entries;
+    }
+
+    /**
+     * Writes a new segment atomically.
+     * @param path path of the segment
+     * @param generation generation of the segment
+     * @param entries encoded entries
+     * @throws IOException if the segment can't be written
+     */
+    static void write(Path path, long generation, List<Entry> entries) throws IOException {
+        StorageFiles.writeAtomically(path, null, stream -> {
+            final CheckedOutputStream checked = new CheckedOutputStream(stream, new CRC32());
+            final DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(generation);
+            out.writeInt(entries.size());
+            final byte[] buffer = new byte[8192];
+            for(Entry entry : entries) {
+                out.writeInt(entry.key.length);
+                out.write(entry.key);
+                out.writeByte(entry.codec);
+                final ByteBuffer value = entry.value.duplicate();
+                out.writeInt(value.remaining());
+                while(value.hasRemaining()) {
+                    final int length = Math.min(buffer.length, value.remaining());
+                    value.get(buffer, 0, length);
+                    out.write(buffer, 0, length);
+                }
+            }
+            out.flush();
+            new DataOutputStream(stream).writeInt((int) checked.getChecksum().getValue());
+        });
+    }
+
+    /**
+     * Maps a segment, verifies its checksum and reads its keys.
+     * @param path path of the segment
+     * @return loaded snapshot, with the keys mapped to {@link MappedValue}s
+     * @throws IOException if the segment can't be read or is damaged
+     */
+    static StorageSnapshot read(Path path) throws IOException {
+        final MappedByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        try {
+            if(buffer.getInt() != MAGIC) {
+                throw new IOException("Not a storage segment: " + path);
+            }
+            final byte version = buffer.get();
+            if(version == VERSION) {
+                final ByteBuffer contents = buffer.duplicate();
+                contents.position(0).limit(buffer.limit() - 4);
+                final CRC32 crc = new CRC32();
+                crc.update(contents);
+                if((int) crc.getValue() != buffer.getInt(buffer.limit() - 4)) {
+                    throw new IOException("Damaged storage segment: " + path);
+                }
+            }
+            else if(version != VERSION_NO_CHECKSUM) {
+                throw new IOException("Unknown storage segment version: " + path);
+            }
+            final long generation = buffer.getLong();
+            final int count = buffer.getInt();
+            final Map<String, Object> entries = Collections.synchronizedMap(new HashMap<>(count * 4 / 3 + 1));
+            for(int i = 0; i < count; i++) {
+                final byte[] key = new byte[buffer.getInt()];
+                buffer.get(key);
+                final byte codec = buffer.get();
+                final int length = buffer.getInt();
+                final ByteBuffer value = buffer.slice();
+                value.limit(length);
+                buffer.position(buffer.position() + length);
+                entries.put(new String(key, StandardCharsets.UTF_8), new MappedValue(codec, value));
+            }
+            return new StorageSnapshot(generation, entries);
+        }
+        catch(RuntimeException e) {
+            // Buffer underflow or a negative length, the segment is damaged
+            throw new IOException("Damaged storage segment: " + path, e);
+        }
+    }
+}
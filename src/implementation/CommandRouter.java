@@ -0,0 +1,100 @@
+package cz.salmelu.discord.implementation;
+
+import java.util.Arrays;
+
+/**
+ * <p>Finds the handler of a command at the beginning of a message.</p>
+ * <p>Commands are stored in a trie of their characters, so finding the handler takes time proportional
+ * to the length of the command, regardless of the amount of registered commands. A command matches
+ * only if it is followed by a whitespace or the end of the message. If more commands match,
+ * like <code>!git</code> and <code>!git log</code>, the longest one is used.</p>
+ * @param <T> type of the handlers
+ */
+class CommandRouter<T> {
+
+    /**
+     * A node of the trie. Children are kept in arrays sorted by their characters.
+     */
+    private static final class Node<T> {
+        private static final char[] NO_KEYS = new char[0];
+
+        char[] keys = NO_KEYS;
+        Node<T>[] children;
+        T handler;
+
+        Node<T> child(char c) {
+            final int index = Arrays.binarySearch(keys, c);
+            return index < 0 ? null : children[index];
+        }
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Node<T> addChild(char c) {
+            int index = Arrays.binarySearch(keys, c);
+            if(index >= 0) return children[index];
+            index = -index - 1;
+            final char[] newKeys = new char[keys.length + 1];
+            final Node<T>[] newChildren = new Node[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, index);
+            System.arraycopy(keys, index, newKeys, index + 1, keys.length - index);
+            if(children != null) {
+                System.arraycopy(children, 0, newChildren, 0, index);
+                System.arraycopy(children, index, newChildren, index + 1, keys.length - index);
+            }
+            newKeys[index] = c;
+            newChildren[index] = new Node<>();
+            keys = newKeys;
+            children = newChildren;
+            return newChildren[index];
+        }
+    }
+
+    private final Node<T> root = new Node<>();
+    private int size = 0;
+
+    /**
+     * Registers a command handler, unless the command already has one.
+     * @param command command, must not be empty
+     * @param handler handler of the command
+     * @return the already registered handler, or null if the handler was registered
+     */
+    T register(String command, T handler) {
+        if(command == null || command.isEmpty()) {
+            throw new IllegalArgumentException("The command must not be empty.");
+        }
+        Node<T> node = root;
+        for(int i = 0; i < command.length(); i++) {
+            node = node.addChild(command.charAt(i));
+        }
+        if(node.handler != null) return node.handler;
+        node.handler = handler;
+        size++;
+        return null;
+    }
+
+    /**
+     * Finds the handler of the command the text starts with.
+     * @param text message text
+     * @return handler of the longest matching command, or null if no command matches
+     */
+    T route(String text) {
+        Node<T> node = root;
+        T found = null;
+        final int length = text.length();
+        for(int i = 0; i < length; i++) {
+            node = node.child(text.charAt(i));
+            if(node == null) break;
+            if(node.handler != null && (i + 1 == length || Character.isWhitespace(text.charAt(i + 1)))) {
+                found = node.handler;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Gets the amount of registered commands.
+     * @return amount of commands
+     */
+    int size() {
+        return size;
+    }
+}
@@ -47,6 +47,14 @@ public class ContextImpl implements Context {
         notifyManager.start();
     }
 
+    void stopNotifyManager() {
+        notifyManager.stop();
+    }
+
+    NotifyManagerImpl getNotifyManagerImpl() {
+        return notifyManager;
+    }
+
     /**
      * Creates a new context instance for a specific module.
      * This is used to create personal storage.
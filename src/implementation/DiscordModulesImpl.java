@@ -1,5 +1,6 @@
 package cz.salmelu.discord.implementation;
 
+import cz.salmelu.discord.implementation.net.rest.DiscordRequester;
 import cz.salmelu.discord.implementation.resources.ClientImpl;
 
 import java.io.BufferedReader;
@@ -28,8 +29,9 @@ public class DiscordModulesImpl {
         public void run() {
             started = false;
             client.logout();
+            context.stopNotifyManager();
+            dispatcher.stop();
             context.getStorageManagerImpl().stop();
-            context.getStorageManagerImpl().saveAll();
         }
     }
 
@@ -52,11 +54,44 @@ public class DiscordModulesImpl {
             final boolean ignoreSelf = Boolean.parseBoolean(properties.getProperty("ignoreSelf", "true"));
             final String helpCommand = properties.getProperty("helpCommand", "");
             final String storagePath = properties.getProperty("storageDirectory", "./storage/");
+            final boolean transportCompression =
+                    Boolean.parseBoolean(properties.getProperty("transportCompression", "true"));
+            final int shards = Integer.parseInt(properties.getProperty("shards", "1"));
+            final int dispatchThreads = Integer.parseInt(properties.getProperty("dispatchThreads", "1"));
+            final ModuleExecutor.Mode moduleExecution = ModuleExecutor.Mode.valueOf(
+                    properties.getProperty("moduleExecution", "inline").toUpperCase());
+            final int moduleThreads = Integer.parseInt(properties.getProperty("moduleThreads", "8"));
+            final int moduleConcurrency = Integer.parseInt(properties.getProperty("moduleConcurrency", "16"));
+            final boolean lazyMembers = Boolean.parseBoolean(properties.getProperty("lazyMembers", "false"));
+            final int messageCacheChannel = Integer.parseInt(properties.getProperty("messageCacheChannel", "200"));
+            final int messageCacheTotal = Integer.parseInt(properties.getProperty("messageCacheTotal", "20000"));
+            final long messageCacheMemory = Long.parseLong(properties.getProperty("messageCacheMemory", "64"));
+            final long messageCacheTtl = Long.parseLong(properties.getProperty("messageCacheTtl", "60"));
+            final DiscordRequester.Transport restTransport = DiscordRequester.Transport.valueOf(
+                    properties.getProperty("restTransport", "pooled").toUpperCase());
+            final int restConnections = Integer.parseInt(properties.getProperty("restConnections", "4"));
+            final boolean storageJournal = Boolean.parseBoolean(properties.getProperty("storageJournal", "true"));
+            final StorageManagerImpl.Format storageFormat = StorageManagerImpl.Format.valueOf(
+                    properties.getProperty("storageFormat", "serialized").toUpperCase());
+            final long storageSaveDelay = Long.parseLong(properties.getProperty("storageSaveDelay", "30"));
+            final int notifyThreads = Integer.parseInt(properties.getProperty("notifyThreads", "2"));
+            final int notifyQueueSize = Integer.parseInt(properties.getProperty("notifyQueueSize", "1000"));
+            final long statsInterval = Long.parseLong(properties.getProperty("statsInterval", "0"));
 
             context = new ContextImpl(storagePath);
-            client = new ClientImpl(token);
+            context.getStorageManagerImpl().setJournaling(storageJournal);
+            context.getStorageManagerImpl().setFormat(storageFormat);
+            context.getStorageManagerImpl().setSaveDelay(storageSaveDelay * 1000);
+            context.getNotifyManagerImpl().setCallbackExecutor(notifyThreads, notifyQueueSize);
+            client = new ClientImpl(token, restTransport, restConnections);
+            client.setTransportCompression(transportCompression);
+            client.setShardCount(shards);
+            client.setLazyMembers(lazyMembers);
+            client.setMessageCacheLimits(messageCacheChannel, messageCacheTotal,
+                    messageCacheMemory * 1024 * 1024, messageCacheTtl * 60 * 1000);
             manager = new ModuleManager(context);
-            dispatcher = new Dispatcher(client, manager, helpCommand);
+            dispatcher = new Dispatcher(client, manager, helpCommand, dispatchThreads,
+                    new ModuleExecutor(moduleExecution, moduleThreads, moduleConcurrency));
             dispatcher.ignoreBotMessages(ignoreBot);
             dispatcher.ignoreOwnMessages(ignoreSelf);
 
@@ -80,6 +115,9 @@ public class DiscordModulesImpl {
             client.login(dispatcher);
             context.setDispatcher(dispatcher);
             context.startNotifyManager();
+            if(statsInterval > 0) {
+                scheduleStatistics(statsInterval * 60 * 1000);
+            }
 
             Runtime.getRuntime().addShutdownHook(new ShutdownHook());
 
@@ -95,6 +133,19 @@ public class DiscordModulesImpl {
 
     }
 
+    /**
+     * Logs the runtime statistics periodically, using a notification rescheduling itself.
+     * @param interval time between the logs in milliseconds
+     */
+    private void scheduleStatistics(long interval) {
+        context.getNotifyManager().addNotification(null, o -> {
+            if(!started) return;
+            dispatcher.logStatistics();
+            context.getNotifyManagerImpl().logStats();
+            scheduleStatistics(interval);
+        }, System.currentTimeMillis() + interval);
+    }
+
     public boolean isStarted() {
         return started;
     }
@@ -0,0 +1,73 @@
+package cz.salmelu.discord.implementation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>A set of worker lanes processing the dispatched events.</p>
+ * <p>Every event is assigned a partition key (a server id, or a channel id for private channels) and all events
+ * with the same key are processed by the same lane, in the order they were received.
+ * Events of unrelated servers are processed in parallel, so a slow module only stalls the server it works with.</p>
+ */
+class DispatchLanes {
+
+    private final ExecutorService[] lanes;
+    private final Logger logger = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    /**
+     * Creates the lanes.
+     * @param concurrency the amount of lanes processing the events in parallel
+     */
+    DispatchLanes(int concurrency) {
+        if(concurrency < 1) {
+            throw new IllegalArgumentException("There must be at least one dispatch lane.");
+        }
+        lanes = new ExecutorService[concurrency];
+        for(int i = 0; i < concurrency; i++) {
+            final String name = "Dispatcher-" + i;
+            lanes[i] = Executors.newSingleThreadExecutor(runnable -> {
+                final Thread thread = new Thread(runnable, name);
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    /**
+     * Queues a task in the lane given by its partition key.
+     * @param key partition key, tasks with the same key are run in order
+     * @param task executed task
+     */
+    void execute(String key, Runnable task) {
+        final int lane = key == null ? 0 : (key.hashCode() & Integer.MAX_VALUE) % lanes.length;
+        lanes[lane].execute(() -> {
+            try {
+                task.run();
+            }
+            catch (Exception e) {
+                logger.warn("Processing an event threw an exception.", e);
+            }
+        });
+    }
+
+    /**
+     * Stops the lanes, letting them finish already queued events.
+     */
+    void stop() {
+        for(ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+        try {
+            for(ExecutorService lane : lanes) {
+                lane.awaitTermination(5, TimeUnit.SECONDS);
+            }
+        }
+        catch (InterruptedException e) {
+            logger.warn("Interrupted while waiting for dispatch lanes to stop.");
+        }
+    }
+}
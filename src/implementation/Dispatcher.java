@@ -19,7 +19,11 @@ import java.util.stream.Collectors;
 import static java.util.Arrays.*;
 
 /**
- * Takes care of processing events, updating Discord data structures and passing the events to the listener modules.
+ * <p>Takes care of processing events, updating Discord data structures and passing the events to the listener modules.</p>
+ * <p>The events are processed by {@link DispatchLanes}. Events of a single server (or a private channel)
+ * are processed in order, while events of different servers may be processed in parallel.</p>
+ * <p>The listener callbacks are run by {@link ModuleExecutor}, which isolates the modules from each other
+ * and from the event processing.</p>
  */
 public class Dispatcher {
 
@@ -31,63 +35,80 @@ public class Dispatcher {
     private boolean ignoreOwnMessages;
     private boolean ignoreBotMessages;
     private final String helpCommand;
+    private final DispatchLanes lanes;
+    private final ModuleExecutor moduleExecutor;
 
-    public Dispatcher(ClientImpl client, ModuleManager manager, String helpCommand) {
+    public Dispatcher(ClientImpl client, ModuleManager manager, String helpCommand, int concurrency,
+                      ModuleExecutor moduleExecutor) {
         this.client = client;
         this.moduleManager = manager;
         this.helpCommand = helpCommand;
+        this.lanes = new DispatchLanes(concurrency);
+        this.moduleExecutor = moduleExecutor;
+    }
+
+    void ignoreOwnMessages(boolean ignore) {
+        this.ignoreOwnMessages = ignore;
+    }
+
+    void ignoreBotMessages(boolean ignore) {
+        this.ignoreBotMessages = ignore;
     }
 
     /**
-     * Wrapped so we can call all the modules and know they don't disrupt each other by throwing exceptions.
-     *
-     * Each exception is logged.
-     *
-     * @param <T> type of the passed object
+     * Logs the execution statistics of the listener modules.
      */
-    private interface Wrapper<T> {
-        void dispatch(T a);
-
-        static <T> void wrap(Wrapper<T> method, T a) {
-            try {
-                method.dispatch(a);
-            }
-            catch (Exception e) {
-                logger.warn("A module threw an exception.", e);
-            }
-        }
+    void logStatistics() {
+        moduleExecutor.logStats();
     }
 
     /**
-     * Wrapped so we can call all the modules and know they don't disrupt each other by throwing exceptions.
-     *
-     * Each exception is logged.
-     *
-     * @param <T> type of the first passed object
-     * @param <U> type of the second passed object
+     * Stops processing the events, finishing those already received.
      */
-    private interface Wrapper2<T, U> {
-        void dispatch(T a, U b);
+    void stop() {
+        lanes.stop();
+        moduleExecutor.stop();
+    }
 
-        static <T, U> void wrap(Wrapper2<T, U> method, T a, U b) {
-            try {
-                method.dispatch(a, b);
-            }
-            catch (Exception e) {
-                logger.warn("A module threw an exception.", e);
-            }
-        }
+    /**
+     * Gets the partition key for events of a channel. Server channels use their server's key,
+     * so that all events of a server are processed in order.
+     * @param channelId channel id
+     * @return partition key
+     */
+    private String channelKey(String channelId) {
+        return channelKey(null, channelId);
     }
 
-    void ignoreOwnMessages(boolean ignore) {
-        this.ignoreOwnMessages = ignore;
+    /**
+     * Gets the partition key for events of a channel, using the server id if the event contains it.
+     * @param serverId server id, or null if not known
+     * @param channelId channel id
+     * @return partition key
+     */
+    private String channelKey(String serverId, String channelId) {
+        if(serverId != null) {
+            return serverId;
+        }
+        final Channel channel = client.getChannelById(channelId);
+        if(channel != null && !channel.isPrivate()) {
+            return channel.toServerChannel().getServer().getId();
+        }
+        return channelId;
     }
 
-    void ignoreBotMessages(boolean ignore) {
-        this.ignoreBotMessages = ignore;
+    /**
+     * Checks if the text starts with the command, followed by a whitespace or the end of the text.
+     * @param text message text
+     * @param command command
+     * @return true if the text is the command, possibly with arguments
+     */
+    private static boolean isCommand(String text, String command) {
+        return text.startsWith(command)
+                && (text.length() == command.length() || Character.isWhitespace(text.charAt(command.length())));
     }
 
-    synchronized void fireNotification(NotifyManager.Callback callback, Object o) {
+    void fireNotification(NotifyManager.Callback callback, Object o) {
         try {
             callback.call(o);
         }
@@ -96,359 +117,456 @@ public class Dispatcher {
         }
     }
 
-    public synchronized void onReady(PrivateChannelObject[] privateChannelObjects,
+    public void onReady(PrivateChannelObject[] privateChannelObjects,
                         UnavailableServerObject[] serverObjects) {
-        moduleManager.getInitializers().forEach(listener -> Wrapper.wrap(listener::onReady, client));
-    }
-
-    public synchronized void onChannelCreate(PrivateChannelObject channelObject) {
-        final List<User> users = new ArrayList<>();
-        final UserObject[] userObjects = channelObject.getRecipients();
-        if(userObjects != null) {
-            for(UserObject userObject : userObjects) {
-                final User user = client.getUser(userObject.getId());
-                if (user == null) {
-                    UserImpl newUser = new UserImpl(client, userObject);
-                    client.addUser(newUser);
-                    users.add(newUser);
-                }
-                else {
-                    users.add(user);
+        lanes.execute(null, () -> {
+            moduleManager.getInitializers().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onReady(client)));
+        });
+    }
+
+    public void onChannelCreate(PrivateChannelObject channelObject) {
+        lanes.execute(channelObject.getId(), () -> {
+            final List<User> users = new ArrayList<>();
+            final UserObject[] userObjects = channelObject.getRecipients();
+            if(userObjects != null) {
+                for(UserObject userObject : userObjects) {
+                    final User user = client.getUser(userObject.getId());
+                    if (user == null) {
+                        UserImpl newUser = new UserImpl(client, userObject);
+                        client.addUser(newUser);
+                        users.add(newUser);
+                    }
+                    else {
+                        users.add(user);
+                    }
                 }
             }
-        }
-        final PrivateChannelImpl channel = new PrivateChannelImpl(client, channelObject, users);
-        client.addChannel(channel);
-        moduleManager.getUserActionListeners().forEach(
-                listener -> Wrapper.wrap(listener::onChannelOpen, channel));
-    }
-
-    public synchronized void onChannelCreate(ChannelObject channelObject) {
-        final ServerImpl server = (ServerImpl) client.getServerById(channelObject.getGuildId());
-        if(server == null || server.isDisabled()) {
-            logger.debug("Created channel for non-tracked server.");
-            // Doesn't matter, we don't track this server
-            return;
-        }
-        final ServerChannel oldChannel = server.getChannelById(channelObject.getId());
-        if(oldChannel != null) {
-            logger.warn("Detected old channel hanging, removing it.");
-            // Something old needs to be get rid of
-            server.removeChannel(oldChannel);
-        }
-        final ServerChannelImpl channel = new ServerChannelImpl(client, server, channelObject);
-        server.addChannel(channel);
-        moduleManager.getServerListeners().forEach(
-                listener -> Wrapper.wrap(listener::onChannelCreate, channel));
+            final PrivateChannelImpl channel = new PrivateChannelImpl(client, channelObject, users);
+            client.addChannel(channel);
+            moduleManager.getUserActionListeners().forEach(
+                    listener -> moduleExecutor.execute(listener, () -> listener.onChannelOpen(channel)));
+        });
     }
 
-    public synchronized void onChannelUpdate(ChannelObject channelObject) {
-        final Channel channel = client.getChannelById(channelObject.getId());
-        if(channel == null || channel.isPrivate()) {
-            logger.warn("Update for channel that is tracked as private, skipping.");
-            return;
-        }
-        ((ServerImpl) channel.toServerChannel().getServer())
-                .updateChannelResponse((ServerChannelImpl) channel, channelObject);
-        moduleManager.getServerListeners().forEach(
-                listener -> Wrapper.wrap(listener::onChannelUpdate, channel.toServerChannel()));
+    public void onChannelCreate(ChannelObject channelObject) {
+        lanes.execute(channelObject.getGuildId(), () -> {
+            final ServerImpl server = (ServerImpl) client.getServerById(channelObject.getGuildId());
+            if(server == null || server.isDisabled()) {
+                logger.debug("Created channel for non-tracked server.");
+                // Doesn't matter, we don't track this server
+                return;
+            }
+            final ServerChannel oldChannel = server.getChannelById(channelObject.getId());
+            if(oldChannel != null) {
+                logger.warn("Detected old channel hanging, removing it.");
+                // Something old needs to be get rid of
+                server.removeChannel(oldChannel);
+            }
+            final ServerChannelImpl channel = new ServerChannelImpl(client, server, channelObject);
+            server.addChannel(channel);
+            moduleManager.getServerListeners().forEach(
+                    listener -> moduleExecutor.execute(listener, () -> listener.onChannelCreate(channel)));
+        });
     }
 
-    public synchronized void onChannelDelete(PrivateChannelObject channelObject) {
-        final Channel removed = client.getChannelById(channelObject.getId());
-        client.removeChannel(removed);
-        moduleManager.getUserActionListeners().forEach(
-                listener -> Wrapper.wrap(listener::onChannelClose, removed.toPrivateChannel()));
+    public void onChannelUpdate(ChannelObject channelObject) {
+        lanes.execute(channelKey(channelObject.getId()), () -> {
+            final Channel channel = client.getChannelById(channelObject.getId());
+            if(channel == null || channel.isPrivate()) {
+                logger.warn("Update for channel that is tracked as private, skipping.");
+                return;
+            }
+            ((ServerImpl) channel.toServerChannel().getServer())
+                    .updateChannelResponse((ServerChannelImpl) channel, channelObject);
+            client.namesChanged();
+            moduleManager.getServerListeners().forEach(
+                    listener -> moduleExecutor.execute(listener, () -> listener.onChannelUpdate(channel.toServerChannel())));
+        });
     }
 
-    public synchronized void onChannelDelete(ChannelObject channelObject) {
-        final Channel removed = client.getChannelById(channelObject.getId());
-        if(removed.isPrivate()) {
+    public void onChannelDelete(PrivateChannelObject channelObject) {
+        lanes.execute(channelObject.getId(), () -> {
+            final Channel removed = client.getChannelById(channelObject.getId());
             client.removeChannel(removed);
-            return;
-        }
-        ((ServerImpl) removed.toServerChannel().getServer()).removeChannel(removed.toServerChannel());
-        moduleManager.getServerListeners().forEach(
-                listener -> Wrapper.wrap(listener::onChannelDelete, removed.toServerChannel()));
+            moduleManager.getUserActionListeners().forEach(
+                    listener -> moduleExecutor.execute(listener, () -> listener.onChannelClose(removed.toPrivateChannel())));
+        });
     }
 
-    public synchronized void onServerCreate(ServerObject serverObject) {
-        final Server server = new ServerImpl(client, serverObject);
-        client.addServer(server);
-        moduleManager.getInitializers().forEach(listener -> Wrapper.wrap(listener::onServerDetected, server));
+    public void onChannelDelete(ChannelObject channelObject) {
+        lanes.execute(channelKey(channelObject.getId()), () -> {
+            final Channel removed = client.getChannelById(channelObject.getId());
+            if(removed.isPrivate()) {
+                client.removeChannel(removed);
+                return;
+            }
+            ((ServerImpl) removed.toServerChannel().getServer()).removeChannel(removed.toServerChannel());
+            client.namesChanged();
+            moduleManager.getServerListeners().forEach(
+                    listener -> moduleExecutor.execute(listener, () -> listener.onChannelDelete(removed.toServerChannel())));
+        });
     }
 
-    public synchronized void onServerDelete(String id) {
-        final ServerImpl server = (ServerImpl) client.getServerById(id);
-        if(server != null) {
-            server.disable();
-            moduleManager.getInitializers().forEach(listener -> Wrapper.wrap(listener::onServerDelete, server));
-            client.clearServer(server);
-        }
+    public void onServerCreate(ServerObject serverObject) {
+        lanes.execute(serverObject.getId(), () -> {
+            final Server server = new ServerImpl(client, serverObject);
+            client.addServer(server);
+            moduleManager.getInitializers().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onServerDetected(server)));
+        });
     }
 
-    public synchronized void onServerUpdate(ServerObject serverObject) {
-        // NOTICE: deserialize is incomplete, see https://discordapp.com/developers/docs/resources/guild#guild-object
-        final ServerImpl server = (ServerImpl) client.getServerById(serverObject.getId());
-        if(server == null) {
-            logger.warn("No server found to be updated, skipping.");
-            return;
-        }
-        server.update(serverObject);
-        moduleManager.getInitializers().forEach(listener -> Wrapper.wrap(listener::onServerUpdate, server));
+    public void onServerDelete(String id) {
+        lanes.execute(id, () -> {
+            final ServerImpl server = (ServerImpl) client.getServerById(id);
+            if(server != null) {
+                server.disable();
+                moduleManager.getInitializers().forEach(listener ->
+                        moduleExecutor.execute(listener, () -> listener.onServerDelete(server)));
+                client.clearServer(server);
+            }
+        });
     }
 
-    public synchronized void onChannelPins(String channelId) {
-        final Channel channel = client.getChannelById(channelId);
-        if(channel == null) return;
-        moduleManager.getMessageListeners().forEach(listener -> Wrapper.wrap(listener::onPinsChange, channel));
+    public void onServerUpdate(ServerObject serverObject) {
+        lanes.execute(serverObject.getId(), () -> {
+            // NOTICE: deserialize is incomplete, see https://discordapp.com/developers/docs/resources/guild#guild-object
+            final ServerImpl server = (ServerImpl) client.getServerById(serverObject.getId());
+            if(server == null) {
+                logger.warn("No server found to be updated, skipping.");
+                return;
+            }
+            server.update(serverObject);
+            moduleManager.getInitializers().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onServerUpdate(server)));
+        });
     }
 
-    public synchronized void onServerMemberAdd(ServerMemberAddResponse memberObject) {
-        final ServerImpl server = (ServerImpl) client.getServerById(memberObject.getGuildId());
-        if(server == null) {
-            logger.warn("No server found to be updated with new member, skipping.");
-            return;
-        }
-        if(server.getMemberById(memberObject.getUser().getId()) != null) {
-            logger.debug("Member already associated with server, skipping.");
-            return;
-        }
-        Member member = server.addMember(memberObject);
-        moduleManager.getServerListeners().forEach(listener -> Wrapper.wrap(listener::onMemberAdd, member));
+    public void onChannelPins(String channelId) {
+        lanes.execute(channelKey(channelId), () -> {
+            final Channel channel = client.getChannelById(channelId);
+            if(channel == null) return;
+            moduleManager.getMessageListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onPinsChange(channel)));
+        });
     }
 
-    public synchronized void onServerMemberRemove(ServerMemberRemoveResponse memberObject) {
-        final ServerImpl server = (ServerImpl) client.getServerById(memberObject.getGuildId());
-        if(server == null) {
-            logger.warn("No server found to be updated with new member, skipping.");
-            return;
-        }
-        if(server.getMemberById(memberObject.getUser().getId()) == null) {
-            logger.debug("Member already not in server, skipping.");
-            return;
-        }
-        final User user = client.getUser(memberObject.getUser().getId());
-        server.removeMember(user);
-        moduleManager.getServerListeners().forEach(listener -> Wrapper.wrap(listener::onMemberRemove, user));
+    public void onServerMemberAdd(ServerMemberAddResponse memberObject) {
+        lanes.execute(memberObject.getGuildId(), () -> {
+            final ServerImpl server = (ServerImpl) client.getServerById(memberObject.getGuildId());
+            if(server == null) {
+                logger.warn("No server found to be updated with new member, skipping.");
+                return;
+            }
+            if(server.hasMember(memberObject.getUser().getId())) {
+                logger.debug("Member already associated with server, skipping.");
+                return;
+            }
+            Member member = server.addMember(memberObject);
+            server.namesChanged();
+            moduleManager.getServerListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onMemberAdd(member)));
+        });
     }
 
-    public synchronized void onServerMemberUpdate(ServerMemberUpdateResponse memberObject) {
-        final ServerImpl server = (ServerImpl) client.getServerById(memberObject.getGuildId());
-        if(server == null) {
-            logger.warn("No server found to be updated with new member, skipping.");
-            return;
-        }
-        if(server.getMemberById(memberObject.getUser().getId()) == null) {
-            logger.debug("No member in server, skipping.");
-            return;
-        }
-        final Member updated = server.updateMember(memberObject);
-        moduleManager.getServerListeners().forEach(listener -> Wrapper.wrap(listener::onMemberUpdate, updated));
+    public void onServerMemberRemove(ServerMemberRemoveResponse memberObject) {
+        lanes.execute(memberObject.getGuildId(), () -> {
+            final ServerImpl server = (ServerImpl) client.getServerById(memberObject.getGuildId());
+            if(server == null) {
+                logger.warn("No server found to be updated with new member, skipping.");
+                return;
+            }
+            if(!server.hasMember(memberObject.getUser().getId())) {
+                logger.debug("Member already not in server, skipping.");
+                return;
+            }
+            final MemberImpl removed = server.removeMember(memberObject.getUser().getId());
+            if(removed == null) return;
+            final User user = removed.getUser();
+            server.namesChanged();
+            moduleManager.getServerListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onMemberRemove(user)));
+        });
     }
 
-    public synchronized void onServerMemberChunk(ServerMemberChunkResponse chunkObject) {
-        final ServerImpl server = (ServerImpl) client.getServerById(chunkObject.getGuildId());
-        if(server == null) {
-            logger.warn("No server found to be updated with new member, skipping.");
-            return;
-        }
-        final List<Member> newMembers = new ArrayList<>();
-        Arrays.stream(chunkObject.getMembers()).forEach(memberObject -> {
-            Member member = server.addMember(memberObject);
-            newMembers.add(member);
+    public void onServerMemberUpdate(ServerMemberUpdateResponse memberObject) {
+        lanes.execute(memberObject.getGuildId(), () -> {
+            final ServerImpl server = (ServerImpl) client.getServerById(memberObject.getGuildId());
+            if(server == null) {
+                logger.warn("No server found to be updated with new member, skipping.");
+                return;
+            }
+            if(!server.hasMember(memberObject.getUser().getId())) {
+                logger.debug("No member in server, skipping.");
+                return;
+            }
+            final Member updated = server.updateMember(memberObject);
+            server.namesChanged();
+            moduleManager.getServerListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onMemberUpdate(updated)));
         });
-        final List<Member> immutable = Collections.unmodifiableList(newMembers);
-        moduleManager.getServerListeners().forEach(listener -> Wrapper.wrap(listener::onMemberChunk, immutable));
     }
 
-    public synchronized void onRoleCreate(ServerRoleResponse roleObject) {
-        final ServerImpl server = (ServerImpl) client.getServerById(roleObject.getGuildId());
-        if(server == null) {
-            logger.warn("No server found to be updated for role, skipping.");
-            return;
-        }
-        final Role newRole = server.addRole(roleObject.getRole());
-        moduleManager.getServerListeners().forEach(listener -> Wrapper.wrap(listener::onRoleCreate, newRole));
+    public void onServerMemberChunk(ServerMemberChunkResponse chunkObject) {
+        lanes.execute(chunkObject.getGuildId(), () -> {
+            final ServerImpl server = (ServerImpl) client.getServerById(chunkObject.getGuildId());
+            if(server == null) {
+                logger.warn("No server found to be updated with new member, skipping.");
+                return;
+            }
+            final List<Member> immutable = server.addMembers(chunkObject.getMembers());
+            server.namesChanged();
+            moduleManager.getServerListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onMemberChunk(immutable)));
+        });
     }
 
-    public synchronized void onRoleUpdate(ServerRoleResponse roleObject) {
-        final ServerImpl server = (ServerImpl) client.getServerById(roleObject.getGuildId());
-        if(server == null) {
-            logger.warn("No server found to be updated for role, skipping.");
-            return;
-        }
-        final Role role = server.getRoleById(roleObject.getRole().getId());
-        if(role == null) {
-            logger.warn("No server found to be updated for role, creating a new one instead.");
+    public void onRoleCreate(ServerRoleResponse roleObject) {
+        lanes.execute(roleObject.getGuildId(), () -> {
+            final ServerImpl server = (ServerImpl) client.getServerById(roleObject.getGuildId());
+            if(server == null) {
+                logger.warn("No server found to be updated for role, skipping.");
+                return;
+            }
             final Role newRole = server.addRole(roleObject.getRole());
-            moduleManager.getServerListeners().forEach(listener -> Wrapper.wrap(listener::onRoleUpdate, newRole));
-        }
-        else {
-            server.updateRoleResponse((RoleImpl) role, roleObject.getRole());
-            moduleManager.getServerListeners().forEach(listener -> Wrapper.wrap(listener::onRoleUpdate, role));
-        }
+            moduleManager.getServerListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onRoleCreate(newRole)));
+        });
     }
 
-    public synchronized void onRoleDelete(ServerRoleDeleteResponse roleObject) {
-        final ServerImpl server = (ServerImpl) client.getServerById(roleObject.getGuildId());
-        if(server == null) {
-            logger.warn("No server found to be updated for role, skipping.");
-            return;
-        }
-        Role role = server.removeRole(roleObject.getRoleId());
-        moduleManager.getServerListeners().forEach(listener -> Wrapper.wrap(listener::onRoleDelete, role));
+    public void onRoleUpdate(ServerRoleResponse roleObject) {
+        lanes.execute(roleObject.getGuildId(), () -> {
+            final ServerImpl server = (ServerImpl) client.getServerById(roleObject.getGuildId());
+            if(server == null) {
+                logger.warn("No server found to be updated for role, skipping.");
+                return;
+            }
+            final Role role = server.getRoleById(roleObject.getRole().getId());
+            if(role == null) {
+                logger.warn("No server found to be updated for role, creating a new one instead.");
+                final Role newRole = server.addRole(roleObject.getRole());
+                moduleManager.getServerListeners().forEach(listener ->
+                        moduleExecutor.execute(listener, () -> listener.onRoleUpdate(newRole)));
+            }
+            else {
+                server.updateRoleResponse((RoleImpl) role, roleObject.getRole());
+                server.namesChanged();
+                moduleManager.getServerListeners().forEach(listener ->
+                        moduleExecutor.execute(listener, () -> listener.onRoleUpdate(role)));
+            }
+        });
     }
 
-    public synchronized void onPresenceChange(PresenceUpdateResponse presenceObject) {
-        final PresenceUpdate update = new PresenceUpdateImpl(client, presenceObject);
-        moduleManager.getUserActionListeners().forEach(listener -> Wrapper.wrap(listener::onPresenceChange, update));
+    public void onRoleDelete(ServerRoleDeleteResponse roleObject) {
+        lanes.execute(roleObject.getGuildId(), () -> {
+            final ServerImpl server = (ServerImpl) client.getServerById(roleObject.getGuildId());
+            if(server == null) {
+                logger.warn("No server found to be updated for role, skipping.");
+                return;
+            }
+            Role role = server.removeRole(roleObject.getRoleId());
+            if(role == null) {
+                logger.debug("Role already not in server, skipping.");
+                return;
+            }
+            server.namesChanged();
+            moduleManager.getServerListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onRoleDelete(role)));
+        });
     }
 
-    public synchronized void onTypingStart(TypingStartResponse typingStartResponse) {
-        final TypingStartedImpl event = new TypingStartedImpl(client, typingStartResponse);
-        moduleManager.getUserActionListeners()
-                .forEach(listener -> Wrapper.wrap(listener::onTypingStart, event));
+    public void onPresenceChange(PresenceUpdateResponse presenceObject) {
+        lanes.execute(presenceObject.getGuildId(), () -> {
+            final PresenceUpdate update = new PresenceUpdateImpl(client, presenceObject);
+            moduleManager.getUserActionListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onPresenceChange(update)));
+        });
     }
 
-    public synchronized void onUserUpdate(UserObject updated) {
-        User user = client.getUser(updated.getId());
-        if(user == null) {
-            final UserImpl newUser = new UserImpl(client, updated);
-            client.addUser(newUser);
-            user = newUser;
-        }
-        else {
-            ((UserImpl) user).update(updated);
-        }
-        final User finalUser = user;
-        moduleManager.getUserActionListeners().forEach(listener -> Wrapper.wrap(listener::onUserUpdate, finalUser));
+    public void onTypingStart(TypingStartResponse typingStartResponse) {
+        lanes.execute(channelKey(typingStartResponse.getChannelId()), () -> {
+            final TypingStartedImpl event = new TypingStartedImpl(client, typingStartResponse);
+            moduleManager.getUserActionListeners()
+                    .forEach(listener -> moduleExecutor.execute(listener, () -> listener.onTypingStart(event)));
+        });
     }
 
-    public synchronized void onMessageUpdate(MessageObject messageObject) {
-        final String id = messageObject.getId();
-        final String channelId = messageObject.getChannelId();
-        final ChannelBase channel = (ChannelBase) client.getChannelById(channelId);
-        if(channel == null) {
-            logger.warn("Unknown channel has received message update event, skipping.");
-            return;
-        }
-        MessageImpl message;
-        if(channel.hasCachedMessage(id)) {
-            message = (MessageImpl) channel.getMessage(id);
-            message.update(messageObject);
-        }
-        else {
-            message = (MessageImpl) channel.getMessage(id);
-        }
-        if(messageObject.getAuthor() != null) {
-            if (ignoreBotMessages && messageObject.getAuthor().isBot()) {
-                logger.debug("Skipping a bot message.");
+    public void onUserUpdate(UserObject updated) {
+        lanes.execute(null, () -> {
+            User user = client.getUser(updated.getId());
+            if(user == null) {
+                final UserImpl newUser = new UserImpl(client, updated);
+                client.addUser(newUser);
+                user = newUser;
+            }
+            else {
+                ((UserImpl) user).update(updated);
+                client.namesChanged();
+            }
+            final User finalUser = user;
+            moduleManager.getUserActionListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onUserUpdate(finalUser)));
+        });
+    }
+
+    public void onMessageUpdate(MessageObject messageObject) {
+        lanes.execute(channelKey(messageObject.getGuildId(), messageObject.getChannelId()), () -> {
+            final String id = messageObject.getId();
+            final String channelId = messageObject.getChannelId();
+            final ChannelBase channel = (ChannelBase) client.getChannelById(channelId);
+            if(channel == null) {
+                logger.warn("Unknown channel has received message update event, skipping.");
                 return;
             }
-            if (ignoreOwnMessages && messageObject.getAuthor().equals(client.getMyUser())) {
-                logger.debug("Skipping own message.");
+            final MessageImpl cached = channel.getCachedMessage(id);
+            if(cached != null) {
+                cached.update(messageObject);
+            }
+            final MessageImpl message = cached != null ? cached : (MessageImpl) channel.getMessage(id);
+            if(message == null) {
+                logger.warn("Updated message couldn't be retrieved, skipping.");
                 return;
             }
-        }
-        moduleManager.getMessageListeners().forEach(listener -> Wrapper.wrap(listener::onMessageUpdate, message));
+            if(messageObject.getAuthor() != null) {
+                if (ignoreBotMessages && messageObject.getAuthor().isBot()) {
+                    logger.debug("Skipping a bot message.");
+                    return;
+                }
+                if (ignoreOwnMessages && messageObject.getAuthor().equals(client.getMyUser())) {
+                    logger.debug("Skipping own message.");
+                    return;
+                }
+            }
+            moduleManager.getMessageListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onMessageUpdate(message)));
+        });
     }
 
-    public synchronized void onMessageDelete(MessageDeleteResponse messageObject) {
+    public void onMessageDelete(MessageDeleteResponse messageObject) {
         final MessageDeleteBulkResponse converted = new MessageDeleteBulkResponse();
         converted.setChannelId(messageObject.getChannelId());
         converted.setIds(new String[] {messageObject.getId()});
         onMessageDeleteBulk(converted);
     }
 
-    public synchronized void onMessageDeleteBulk(MessageDeleteBulkResponse messagesObject) {
-        final List<DeletedMessage> messageList =
-                stream(messagesObject.getIds())
-                .map(id -> new DeletedMessageImpl(client, id, messagesObject.getChannelId()))
-                .collect(Collectors.toList());
-        for (DeletedMessage deletedMessage : messageList) {
-            ChannelBase channel = (ChannelBase) deletedMessage.getChannel();
-            if(channel != null) channel.removeCachedMessage(deletedMessage.getId());
-        }
-        moduleManager.getMessageListeners().forEach(listener -> Wrapper.wrap(listener::onMessageDelete, messageList));
+    public void onMessageDeleteBulk(MessageDeleteBulkResponse messagesObject) {
+        lanes.execute(channelKey(messagesObject.getChannelId()), () -> {
+            final List<DeletedMessage> messageList =
+                    stream(messagesObject.getIds())
+                    .map(id -> new DeletedMessageImpl(client, id, messagesObject.getChannelId()))
+                    .collect(Collectors.toList());
+            for (DeletedMessage deletedMessage : messageList) {
+                ChannelBase channel = (ChannelBase) deletedMessage.getChannel();
+                if(channel != null) channel.removeCachedMessage(deletedMessage.getId());
+            }
+            moduleManager.getMessageListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onMessageDelete(messageList)));
+        });
     }
 
-    public synchronized void onMessage(MessageObject messageObject) {
-        final MessageImpl message = new MessageImpl(client, messageObject);
-        final ChannelBase channelBase = (ChannelBase) message.getChannel();
-        channelBase.cacheMessage(message);
-        channelBase.messageArrived(message);
+    public void onMessage(MessageObject messageObject) {
+        lanes.execute(channelKey(messageObject.getGuildId(), messageObject.getChannelId()), () -> {
+            final MessageImpl message = new MessageImpl(client, messageObject);
+            final ChannelBase channelBase = (ChannelBase) message.getChannel();
+            channelBase.cacheMessage(message);
+            channelBase.messageArrived(message);
 
-        if(ignoreBotMessages && messageObject.getAuthor().isBot()) {
-            logger.debug("Skipping a bot message.");
-            return;
-        }
-        if(ignoreOwnMessages && messageObject.getAuthor().equals(client.getMyUser())) {
-            logger.debug("Skipping your own message.");
-            return;
-        }
-        if(message.getRawText().trim().equals(helpCommand)) {
-            message.getChannel().sendMessage(moduleManager.generateCommandList());
-            return;
-        }
-        if(message.getRawText().startsWith(helpCommand)) {
-            final String[] parts = message.getRawText().split(" ", 2);
-            final String name = parts[1];
-            final MessageListener listener = moduleManager.getMessageListener(name);
-            if(listener == null) {
-                message.getChannel().sendMessage("Unknown command `" + name + "`.");
+            if(ignoreBotMessages && messageObject.getAuthor().isBot()) {
+                logger.debug("Skipping a bot message.");
+                return;
             }
-            else {
-                message.getChannel().sendMessage(listener.getDescription());
+            if(ignoreOwnMessages && messageObject.getAuthor().equals(client.getMyUser())) {
+                logger.debug("Skipping your own message.");
+                return;
+            }
+            final String text = message.getRawText();
+            if(isCommand(text, helpCommand)) {
+                final String name = text.substring(helpCommand.length()).trim();
+                if(name.isEmpty()) {
+                    message.getChannel().sendMessage(moduleManager.generateCommandList());
+                    return;
+                }
+                final MessageListener listener = moduleManager.getMessageListener(name);
+                if(listener == null) {
+                    message.getChannel().sendMessage("Unknown command `" + name + "`.");
+                }
+                else {
+                    message.getChannel().sendMessage(listener.getDescription());
+                }
+                return;
             }
-            return;
-        }
 
-        final Optional<MessageListener> foundListener = moduleManager.getMessageListeners().stream()
-                .filter(listener -> {
-                    try {
-                        return listener.matchMessage(message);
-                    } catch (Exception e) {
-                        logger.warn("Matching message threw an exception.", e);
+            // The listener handling the command gets the message, unless a listener called before it takes it
+            final MessageListener routedListener = moduleManager.routeCommand(text);
+            MessageListener foundListener = null;
+            for(MessageListener listener : moduleManager.getMatchingListeners()) {
+                if(routedListener != null && !moduleManager.isCalledBefore(listener, routedListener)) break;
+                try {
+                    if(listener.matchMessage(message)) {
+                        foundListener = listener;
+                        break;
                     }
-                    return false;
-                })
-                .findFirst();
-
-        foundListener.ifPresent(listener -> Wrapper.wrap(listener::onMessage, message));
+                }
+                catch (Exception e) {
+                    logger.warn("Matching message threw an exception.", e);
+                }
+            }
+            if(foundListener == null) {
+                foundListener = routedListener;
+            }
+            if(foundListener != null) {
+                final MessageListener listener = foundListener;
+                moduleExecutor.execute(listener, () -> listener.onMessage(message));
+            }
+        });
     }
 
-    public synchronized void onReactionAdd(ReactionUpdateResponse reactionObject) {
-        final ChannelBase channel = (ChannelBase) client.getChannelById(reactionObject.getChannelId());
-        if(channel == null) {
-            // Not a tracked channel, message not tracked either
-            return;
-        }
-        final Emoji emoji = Emoji.getByUnicode(reactionObject.getEmoji().getName());
-        if(emoji == null) {
-            logger.debug("Unknown emoji " + reactionObject.getEmoji().getName() + ", skipping.");
-            return;
-        }
+    public void onReactionAdd(ReactionUpdateResponse reactionObject) {
+        lanes.execute(channelKey(reactionObject.getChannelId()), () -> {
+            final ChannelBase channel = (ChannelBase) client.getChannelById(reactionObject.getChannelId());
+            if(channel == null) {
+                // Not a tracked channel, message not tracked either
+                return;
+            }
+            final Emoji emoji = Emoji.getByUnicode(reactionObject.getEmoji().getName());
+            if(emoji == null) {
+                logger.debug("Unknown emoji " + reactionObject.getEmoji().getName() + ", skipping.");
+                return;
+            }
 
-        ReactionImpl reaction = channel.addReaction(reactionObject, emoji);
-        User user = client.getUser(reactionObject.getUserId());
-        moduleManager.getMessageListeners().forEach(listener -> Wrapper2.wrap(listener::onReactionAdd, reaction, user));
+            ReactionImpl reaction = channel.addReaction(reactionObject, emoji);
+            if(reaction == null) {
+                logger.warn("Reaction belongs to a message, which couldn't be retrieved, skipping.");
+                return;
+            }
+            User user = client.getUser(reactionObject.getUserId());
+            moduleManager.getMessageListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onReactionAdd(reaction, user)));
+        });
     }
 
-    public synchronized void onReactionRemove(ReactionUpdateResponse reactionObject) {
-        final ChannelBase channel = (ChannelBase) client.getChannelById(reactionObject.getChannelId());
-        if(channel == null) {
-            // Not a tracked channel, message not tracked either
-            return;
-        }
-        final Emoji emoji = Emoji.getByUnicode(reactionObject.getEmoji().getName());
-        if(emoji == null) {
-            logger.debug("Unknown emoji " + reactionObject.getEmoji().getName() + ", skipping.");
-            return;
-        }
+    public void onReactionRemove(ReactionUpdateResponse reactionObject) {
+        lanes.execute(channelKey(reactionObject.getChannelId()), () -> {
+            final ChannelBase channel = (ChannelBase) client.getChannelById(reactionObject.getChannelId());
+            if(channel == null) {
+                // Not a tracked channel, message not tracked either
+                return;
+            }
+            final Emoji emoji = Emoji.getByUnicode(reactionObject.getEmoji().getName());
+            if(emoji == null) {
+                logger.debug("Unknown emoji " + reactionObject.getEmoji().getName() + ", skipping.");
+                return;
+            }
 
-        ReactionImpl reaction = channel.removeReaction(reactionObject, emoji);
-        User user = client.getUser(reactionObject.getUserId());
-        moduleManager.getMessageListeners().forEach(listener -> Wrapper2.wrap(listener::onReactionRemove, reaction, user));
+            ReactionImpl reaction = channel.removeReaction(reactionObject, emoji);
+            if(reaction == null) {
+                logger.warn("Reaction belongs to a message, which couldn't be retrieved, skipping.");
+                return;
+            }
+            User user = client.getUser(reactionObject.getUserId());
+            moduleManager.getMessageListeners().forEach(listener ->
+                    moduleExecutor.execute(listener, () -> listener.onReactionRemove(reaction, user)));
+        });
     }
 }
@@ -0,0 +1,221 @@
+package cz.salmelu.discord.implementation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>Runs listener callbacks of the modules.</p>
+ * <p>In the inline mode, the callbacks are run directly by the thread processing the event.
+ * Otherwise, they are passed to an executor, so that a module blocking in its callback (e.g. waiting for
+ * a REST call) doesn't stall the event processing. The executor uses virtual threads if the JVM supports them,
+ * or a bounded thread pool.</p>
+ * <p>Every module can have at most a limited amount of callbacks queued or running at once. When the limit is
+ * reached, the dispatching thread waits, so a slow module can't flood the executor.
+ * The waiting is tracked in module statistics.</p>
+ */
+class ModuleExecutor {
+
+    /**
+     * Possible execution modes of the callbacks.
+     */
+    enum Mode {
+        /** Callbacks run on the dispatching thread */
+        INLINE,
+        /** Callbacks run in a bounded thread pool */
+        POOL,
+        /** Callbacks run in virtual threads, if available */
+        VIRTUAL
+    }
+
+    /**
+     * Execution statistics of a single module.
+     */
+    static final class ModuleStats {
+        private final Semaphore permits;
+        private final AtomicLong submitted = new AtomicLong();
+        private final AtomicLong completed = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong throttled = new AtomicLong();
+        private final AtomicLong throttledTime = new AtomicLong();
+        private final AtomicInteger pending = new AtomicInteger();
+
+        private ModuleStats(int limit) {
+            this.permits = limit > 0 ? new Semaphore(limit) : null;
+        }
+
+        /** @return the amount of submitted callbacks */
+        long getSubmitted() {
+            return submitted.get();
+        }
+
+        /** @return the amount of finished callbacks, including failed ones */
+        long getCompleted() {
+            return completed.get();
+        }
+
+        /** @return the amount of callbacks that threw an exception */
+        long getFailed() {
+            return failed.get();
+        }
+
+        /** @return how many times the dispatching thread had to wait for the module */
+        long getThrottled() {
+            return throttled.get();
+        }
+
+        /** @return total time in milliseconds the dispatching thread waited for the module */
+        long getThrottledTime() {
+            return throttledTime.get();
+        }
+
+        /** @return the amount of callbacks currently queued or running */
+        int getPending() {
+            return pending.get();
+        }
+
+        @Override
+        public String toString() {
+            return "submitted = " + getSubmitted() + ", completed = " + getCompleted() + ", failed = " + getFailed()
+                    + ", pending = " + getPending() + ", throttled = " + getThrottled()
+                    + " (" + getThrottledTime() + " ms)";
+        }
+    }
+
+    private static final Logger logger = LoggerFactory.getLogger(ModuleExecutor.class.getSimpleName());
+
+    private final ExecutorService executor;
+    private final int moduleLimit;
+    private final Map<Object, ModuleStats> stats = new ConcurrentHashMap<>();
+
+    /**
+     * Creates a new executor.
+     * @param mode execution mode
+     * @param threads size of the thread pool, used in pool mode or if virtual threads are not available
+     * @param moduleLimit maximum amount of queued or running callbacks per module, 0 for no limit
+     */
+    ModuleExecutor(Mode mode, int threads, int moduleLimit) {
+        this.moduleLimit = moduleLimit;
+        if(mode == Mode.INLINE) {
+            executor = null;
+            return;
+        }
+        ExecutorService created = null;
+        if(mode == Mode.VIRTUAL) {
+            created = createVirtualExecutor();
+            if(created == null) {
+                logger.warn("Virtual threads are not supported by this JVM, using a thread pool.");
+            }
+        }
+        if(created == null) {
+            final AtomicInteger counter = new AtomicInteger();
+            created = Executors.newFixedThreadPool(Math.max(threads, 1), runnable -> {
+                final Thread thread = new Thread(runnable, "Module-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        executor = created;
+    }
+
+    /**
+     * Tries to create an executor with virtual threads. They are available since Java 21.
+     * @return virtual thread executor, or null if not supported
+     */
+    private static ExecutorService createVirtualExecutor() {
+        try {
+            final Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        }
+        catch (ReflectiveOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Runs a callback of a module. Any exception thrown by the callback is logged.
+     * @param module module owning the callback
+     * @param callback executed callback
+     */
+    void execute(Object module, Runnable callback) {
+        final ModuleStats moduleStats = stats.computeIfAbsent(module, m -> new ModuleStats(moduleLimit));
+        moduleStats.submitted.incrementAndGet();
+
+        if(executor == null) {
+            run(moduleStats, callback);
+            return;
+        }
+
+        if(moduleStats.permits != null && !moduleStats.permits.tryAcquire()) {
+            // Backpressure, wait for the module to finish some of its work
+            moduleStats.throttled.incrementAndGet();
+            final long start = System.currentTimeMillis();
+            moduleStats.permits.acquireUninterruptibly();
+            moduleStats.throttledTime.addAndGet(System.currentTimeMillis() - start);
+        }
+        moduleStats.pending.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    run(moduleStats, callback);
+                }
+                finally {
+                    moduleStats.pending.decrementAndGet();
+                    if(moduleStats.permits != null) moduleStats.permits.release();
+                }
+            });
+        }
+        catch (RejectedExecutionException e) {
+            moduleStats.pending.decrementAndGet();
+            if(moduleStats.permits != null) moduleStats.permits.release();
+            logger.warn("Module callback was rejected, the executor is stopped.");
+        }
+    }
+
+    /**
+     * Runs the callback and updates the statistics.
+     * @param moduleStats statistics of the module
+     * @param callback executed callback
+     */
+    private void run(ModuleStats moduleStats, Runnable callback) {
+        try {
+            callback.run();
+        }
+        catch (Exception e) {
+            moduleStats.failed.incrementAndGet();
+            logger.warn("A module threw an exception.", e);
+        }
+        finally {
+            moduleStats.completed.incrementAndGet();
+        }
+    }
+
+    /**
+     * Logs the execution statistics of all the modules with some callbacks run.
+     */
+    void logStats() {
+        stats.forEach((module, moduleStats) ->
+                logger.info("Module " + module.getClass().getName() + ": " + moduleStats));
+    }
+
+    /**
+     * Stops the executor, letting already submitted callbacks finish, and logs the module statistics.
+     */
+    void stop() {
+        if(executor != null) {
+            executor.shutdown();
+            try {
+                executor.awaitTermination(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                logger.warn("Interrupted while waiting for module callbacks to finish.");
+            }
+        }
+        logStats();
+    }
+}
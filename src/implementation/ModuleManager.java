@@ -21,6 +21,11 @@ class ModuleManager {
     private final HashMap<Class<?>, Object> modules = new HashMap<>();
     private final List<Initializer> initializers = new ArrayList<>();
     private final List<MessageListener> messageListeners = new ArrayList<>();
+    /** Listeners without declared commands, which match the messages themselves */
+    private final List<MessageListener> matchingListeners = new ArrayList<>();
+    private CommandRouter<MessageListener> commandRouter = new CommandRouter<>();
+    /** Positions of the message listeners in the order they are called */
+    private final Map<MessageListener, Integer> listenerOrder = new IdentityHashMap<>();
     private final HashMap<String, MessageListener> messageListenersByName = new HashMap<>();
     private final List<UserActionListener> actionListeners = new ArrayList<>();
     private final List<ServerListener> serverListeners = new ArrayList<>();
@@ -80,6 +85,32 @@ class ModuleManager {
         modules.put(moduleClass, module);
         logger.info("Module " + moduleClass.getCanonicalName() + " loaded.");
         messageListeners.sort(Comparator.comparingInt(MessageListener::getPriority));
+        buildCommandRouter();
+    }
+
+    /**
+     * Registers the commands of message listeners, in the same order the listeners are called.
+     */
+    private void buildCommandRouter() {
+        final CommandRouter<MessageListener> router = new CommandRouter<>();
+        matchingListeners.clear();
+        listenerOrder.clear();
+        for(MessageListener listener : messageListeners) {
+            listenerOrder.put(listener, listenerOrder.size());
+            final Collection<String> commands = listener.getCommands();
+            if(commands == null || commands.isEmpty()) {
+                matchingListeners.add(listener);
+                continue;
+            }
+            for(String command : commands) {
+                final MessageListener registered = router.register(command, listener);
+                if(registered != null && registered != listener) {
+                    logger.warn("Command " + command + " of " + listener.getName() + " is already handled by "
+                            + registered.getName() + ".");
+                }
+            }
+        }
+        commandRouter = router;
     }
 
     void loadModules(List<String> moduleList) throws IllegalArgumentException {
@@ -109,6 +140,33 @@ class ModuleManager {
         return messageListeners;
     }
 
+    /**
+     * Gets the listeners, which didn't declare any commands.
+     * @return list of listeners matching the messages themselves
+     */
+    List<MessageListener> getMatchingListeners() {
+        return matchingListeners;
+    }
+
+    /**
+     * Finds the listener handling the command the text starts with.
+     * @param text message text
+     * @return listener, or null if the text doesn't start with any declared command
+     */
+    MessageListener routeCommand(String text) {
+        return commandRouter.route(text);
+    }
+
+    /**
+     * Checks if a listener is called before another one, by their priorities and the order they were loaded.
+     * @param listener first listener
+     * @param other second listener
+     * @return true if the first listener is called before the second one
+     */
+    boolean isCalledBefore(MessageListener listener, MessageListener other) {
+        return listenerOrder.get(listener) < listenerOrder.get(other);
+    }
+
     MessageListener getMessageListener(String name) {
         return messageListenersByName.get(name);
     }
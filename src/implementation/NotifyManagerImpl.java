@@ -8,28 +8,41 @@ import java.time.LocalDateTime;
 import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.util.*;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * <p>Implementation of the notify manager.</p>
+ * <p>The notifications are scheduled in a {@link TimingWheel}, so adding and removing them takes constant time
+ * regardless of how many are scheduled. A single notifier thread advances the wheel and hands the expired
+ * notifications to a bounded pool of callback threads, so a slow callback doesn't delay the others.
+ * When the pool's queue is full, the notifier waits for the pool to catch up.</p>
+ * <p>The delay between the scheduled time of a notification and the start of its callback
+ * is tracked in the notification statistics.</p>
+ */
 public class NotifyManagerImpl implements NotifyManager {
 
-    private static int handleUID = 1;
     private final static long MAX_SLEEP_TIME = 60 * 60 * 1000;
+    /** Resolution of the scheduling in milliseconds */
+    private final static long TICK_LENGTH = 10;
 
-    private class Notification {
-        long timestamp;
+    private class Notification extends TimingWheel.Timer {
         Callback callback;
         Object object;
-        NotificationHandle handle;
     }
 
     private class NotificationHandleImpl implements NotificationHandle {
         long uid;
+        /** The notification, used to cancel it directly */
+        final Notification notification;
 
-        NotificationHandleImpl(long uid) {
+        NotificationHandleImpl(long uid, Notification notification) {
             this.uid = uid;
+            this.notification = notification;
         }
 
         @Override
@@ -47,6 +60,64 @@ public class NotifyManagerImpl implements NotifyManager {
         }
     }
 
+    /**
+     * Statistics of the notifications.
+     */
+    static final class NotifyStats {
+        private final AtomicLong added = new AtomicLong();
+        private final AtomicLong removed = new AtomicLong();
+        private final AtomicLong fired = new AtomicLong();
+        private final AtomicLong totalLag = new AtomicLong();
+        private final AtomicLong maxLag = new AtomicLong();
+        private final AtomicLong throttled = new AtomicLong();
+
+        private NotifyStats() {}
+
+        private void recordLag(long lag) {
+            fired.incrementAndGet();
+            totalLag.addAndGet(lag);
+            maxLag.accumulateAndGet(lag, Math::max);
+        }
+
+        /** @return the amount of added notifications */
+        long getAdded() {
+            return added.get();
+        }
+
+        /** @return the amount of notifications removed before they fired */
+        long getRemoved() {
+            return removed.get();
+        }
+
+        /** @return the amount of notifications whose callbacks were started */
+        long getFired() {
+            return fired.get();
+        }
+
+        /** @return average delay in milliseconds between the scheduled time and the start of the callback */
+        long getAverageLag() {
+            final long count = fired.get();
+            return count == 0 ? 0 : totalLag.get() / count;
+        }
+
+        /** @return the longest delay in milliseconds between the scheduled time and the start of a callback */
+        long getMaxLag() {
+            return maxLag.get();
+        }
+
+        /** @return how many times the notifier thread had to wait, because the pool's queue was full */
+        long getThrottled() {
+            return throttled.get();
+        }
+
+        @Override
+        public String toString() {
+            return "added = " + getAdded() + ", removed = " + getRemoved() + ", fired = " + getFired()
+                    + ", lag = " + getAverageLag() + " ms average, " + getMaxLag() + " ms max"
+                    + ", throttled = " + getThrottled();
+        }
+    }
+
     private volatile boolean running = false;
 
     private Thread notifierThread;
@@ -55,15 +126,17 @@ public class NotifyManagerImpl implements NotifyManager {
 
     private static final Logger logger = LoggerFactory.getLogger(NotifyManagerImpl.class.getSimpleName());
 
-    private final PriorityQueue<Notification> notificationQueue =
-            new PriorityQueue<>((n1, n2) -> {
-                if(n1.timestamp < n2.timestamp) return -1;
-                else if(n1.timestamp > n2.timestamp) return 1;
-                else return 0;
-            });
-    private final Map<NotificationHandle, Notification> notificationMap = new HashMap<>();
+    private final TimingWheel<Notification> wheel = new TimingWheel<>(TICK_LENGTH, System.currentTimeMillis());
+    /** Time the notifier thread wakes up at, guarded by the lock */
+    private long wakeTime = Long.MAX_VALUE;
+    private long handleUID = 1;
+    private final NotifyStats stats = new NotifyStats();
     private Dispatcher dispatcher;
 
+    private int callbackThreads = 2;
+    private int callbackQueueSize = 1000;
+    private ThreadPoolExecutor callbackExecutor;
+
     NotifyManagerImpl() {
         queueLock = new ReentrantLock();
         queueCondition = queueLock.newCondition();
@@ -73,16 +146,56 @@ public class NotifyManagerImpl implements NotifyManager {
         this.dispatcher = dispatcher;
     }
 
+    /**
+     * Sets the pool running the notification callbacks. Must be set before the manager is started.
+     * @param threads amount of threads running the callbacks
+     * @param queueSize maximum amount of callbacks waiting for a thread
+     */
+    void setCallbackExecutor(int threads, int queueSize) {
+        this.callbackThreads = Math.max(threads, 1);
+        this.callbackQueueSize = Math.max(queueSize, 1);
+    }
+
+    /**
+     * Logs the statistics of the notifications, including the scheduling lag.
+     */
+    void logStats() {
+        logger.info("Notifications: " + stats);
+    }
+
     public void start() {
+        final AtomicInteger counter = new AtomicInteger();
+        callbackExecutor = new ThreadPoolExecutor(callbackThreads, callbackThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(callbackQueueSize), runnable -> {
+                    final Thread thread = new Thread(runnable, "Notification-" + counter.getAndIncrement());
+                    thread.setDaemon(true);
+                    return thread;
+                }, (runnable, executor) -> {
+                    // Backpressure, wait for the pool to catch up instead of running a possibly slow callback here
+                    if(executor.isShutdown()) return;
+                    stats.throttled.incrementAndGet();
+                    try {
+                        executor.getQueue().put(runnable);
+                    }
+                    catch (InterruptedException e) {
+                        logger.warn("Interrupted while waiting for a notification callback thread.");
+                    }
+                });
         running = true;
-        notifierThread = new Thread(this::run);
+        notifierThread = new Thread(this::run, "Notifier");
         notifierThread.start();
     }
 
     public void stop() {
-        running = false;
-        if(notifierThread != null) {
+        queueLock.lock();
+        try {
+            running = false;
             queueCondition.signalAll();
+        }
+        finally {
+            queueLock.unlock();
+        }
+        if(notifierThread != null) {
             try {
                 notifierThread.join();
             }
@@ -90,6 +203,16 @@ public class NotifyManagerImpl implements NotifyManager {
                 logger.warn("Interrupted notifier joining.");
             }
         }
+        if(callbackExecutor != null) {
+            callbackExecutor.shutdown();
+            try {
+                callbackExecutor.awaitTermination(5, TimeUnit.SECONDS);
+            }
+            catch (InterruptedException e) {
+                logger.warn("Interrupted while waiting for notification callbacks to finish.");
+            }
+        }
+        logStats();
     }
 
     @Override
@@ -104,18 +227,23 @@ public class NotifyManagerImpl implements NotifyManager {
 
     @Override
     public NotificationHandle addNotification(Object o, Callback callback, long when) {
+        final Notification notification = new Notification();
+        notification.callback = callback;
+        notification.deadline = when;
+        notification.object = o;
         queueLock.lock();
         try {
-            final Notification notification = new Notification();
-            notification.callback = callback;
-            notification.timestamp = when;
-            notification.object = o;
-            notification.handle = new NotificationHandleImpl(++handleUID);
-            notificationQueue.add(notification);
-            notificationMap.put(notification.handle, notification);
-            logger.debug("Added a new notification scheduled at " + when + ".");
-            queueCondition.signal();
-            return notification.handle;
+            wheel.add(notification);
+            stats.added.incrementAndGet();
+            if(logger.isDebugEnabled()) {
+                logger.debug("Added a new notification scheduled at " + when + ".");
+            }
+            // Wake the notifier only if it would sleep past this notification
+            if(when < wakeTime) {
+                wakeTime = when;
+                queueCondition.signal();
+            }
+            return new NotificationHandleImpl(++handleUID, notification);
         }
         finally {
             queueLock.unlock();
@@ -124,11 +252,11 @@ public class NotifyManagerImpl implements NotifyManager {
 
     @Override
     public void removeNotification(NotificationHandle handle) {
+        if(!(handle instanceof NotificationHandleImpl)) return;
         queueLock.lock();
         try {
-            final Notification notification = notificationMap.get(handle);
-            if(notification != null) {
-                notificationQueue.remove(notification);
+            if(wheel.remove(((NotificationHandleImpl) handle).notification)) {
+                stats.removed.incrementAndGet();
                 logger.debug("Removed a notification.");
             }
         }
@@ -138,37 +266,36 @@ public class NotifyManagerImpl implements NotifyManager {
     }
 
     private void run() {
-        long sleepTime;
+        final List<Notification> processNotification = new ArrayList<>();
         while(running) {
-            final long currentTime = System.currentTimeMillis();
-            final List<Notification> processNotification = new ArrayList<>();
-            logger.debug("Running notification loop.");
-
-            // Take everything needed from queue
+            // Take everything expired from the wheel
             queueLock.lock();
-            Notification next = notificationQueue.peek();
-            while (next != null && next.timestamp <= currentTime) {
-                processNotification.add(next);
-                notificationQueue.poll();
-                notificationMap.remove(next.handle);
-                next = notificationQueue.peek();
+            try {
+                final long currentTime = System.currentTimeMillis();
+                wheel.advance(currentTime, processNotification);
+                wakeTime = Math.min(wheel.nextDeadline(), currentTime + MAX_SLEEP_TIME);
+            }
+            finally {
+                queueLock.unlock();
             }
-            queueLock.unlock();
 
-            logger.debug("Found " + processNotification.size() + " notifications.");
+            if(!processNotification.isEmpty()) {
+                logger.debug("Found " + processNotification.size() + " notifications.");
+            }
             // Process notifications
-            processNotification.forEach(notification ->
-                    dispatcher.fireNotification(notification.callback, notification.object));
+            processNotification.forEach(notification -> callbackExecutor.execute(() -> {
+                stats.recordLag(Math.max(System.currentTimeMillis() - notification.deadline, 0));
+                dispatcher.fireNotification(notification.callback, notification.object);
+            }));
+            processNotification.clear();
 
-            // Schedule next
+            // Sleep until the next notification, or until an earlier one is added
             queueLock.lock();
-            Notification nextSchedule = notificationQueue.peek();
-            sleepTime = MAX_SLEEP_TIME; // 1 hour
-            if(nextSchedule != null && nextSchedule.timestamp - currentTime < MAX_SLEEP_TIME) {
-                sleepTime = nextSchedule.timestamp - currentTime;
-            }
             try {
-                queueCondition.await(sleepTime, TimeUnit.MILLISECONDS);
+                final long sleepTime = wakeTime - System.currentTimeMillis();
+                if(running && sleepTime > 0) {
+                    queueCondition.await(sleepTime, TimeUnit.MILLISECONDS);
+                }
             }
             catch (InterruptedException e) {
                 logger.debug("Interrupted notifier waiting.");
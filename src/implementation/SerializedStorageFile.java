@@ -0,0 +1,110 @@
+package cz.salmelu.discord.implementation;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Snapshot of a storage saved with Java serialization, in a file named <code>class::name</code>.</p>
+ * <p>The file starts with a header containing the generation of the snapshot and the checksum of the serialized
+ * map, which is verified when the file is loaded. When a new snapshot is written, the previous one is kept
+ * as a backup in <code>class::name.bak</code>. Files saved by older versions contain only the serialized map,
+ * or a header without the checksum, and are still loaded.</p>
+ */
+final class SerializedStorageFile {
+
+    private static final int MAGIC = 0x44534e50;
+    private static final byte VERSION_NO_CHECKSUM = 1;
+    private static final byte VERSION = 2;
+
+    private SerializedStorageFile() {}
+
+    /**
+     * Gets the path of the backup of a snapshot.
+     * @param path path of the snapshot
+     * @return path of the backup
+     */
+    static Path getBackupPath(Path path) {
+        return path.resolveSibling(path.getFileName() + ".bak");
+    }
+
+    /**
+     * Writes a new snapshot atomically, keeping the previous one as a backup.
+     * @param path path of the snapshot
+     * @param generation generation of the snapshot
+     * @param data serialized map of the storage
+     * @throws IOException if the snapshot can't be written
+     */
+    static void write(Path path, long generation, byte[] data) throws IOException {
+        final CRC32 crc = new CRC32();
+        crc.update(data, 0, data.length);
+        StorageFiles.writeAtomically(path, getBackupPath(path), stream -> {
+            final DataOutputStream out = new DataOutputStream(stream);
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeLong(generation);
+            out.writeInt((int) crc.getValue());
+            out.write(data);
+            out.flush();
+        });
+    }
+
+    /**
+     * Reads only the generation of a snapshot.
+     * @param path path of the snapshot
+     * @return generation, 0 for snapshots without a header
+     * @throws IOException if the file can't be read
+     */
+    static long readGeneration(Path path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            if(in.readInt() != MAGIC) return 0;
+            in.readByte();
+            return in.readLong();
+        }
+    }
+
+    /**
+     * Reads a snapshot and verifies its checksum.
+     * @param path path of the snapshot
+     * @return loaded snapshot
+     * @throws IOException if the snapshot can't be read or is damaged
+     * @throws ClassNotFoundException if a class of a stored value is not known
+     */
+    @SuppressWarnings("unchecked")
+    static StorageSnapshot read(Path path) throws IOException, ClassNotFoundException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(path)))) {
+            in.mark(4);
+            long generation = 0;
+            InputStream data = in;
+            if(in.readInt() == MAGIC) {
+                final byte version = in.readByte();
+                if(version != VERSION && version != VERSION_NO_CHECKSUM) {
+                    throw new IOException("Unknown storage file version.");
+                }
+                generation = in.readLong();
+                if(version == VERSION) {
+                    final int checksum = in.readInt();
+                    final long length = Files.size(path) - 17;
+                    if(length < 0 || length > Integer.MAX_VALUE) {
+                        throw new IOException("Damaged storage file " + path);
+                    }
+                    final byte[] bytes = new byte[(int) length];
+                    in.readFully(bytes);
+                    final CRC32 crc = new CRC32();
+                    crc.update(bytes, 0, bytes.length);
+                    if((int) crc.getValue() != checksum) {
+                        throw new IOException("Damaged storage file " + path);
+                    }
+                    data = new ByteArrayInputStream(bytes);
+                }
+            }
+            else {
+                in.reset();
+            }
+            final ObjectInputStream ois = new ObjectInputStream(data);
+            return new StorageSnapshot(generation, (Map<String, Object>) ois.readObject());
+        }
+    }
+}
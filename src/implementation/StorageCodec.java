@@ -0,0 +1,42 @@
+package cz.salmelu.discord.implementation;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>Converts values of a storage to bytes and back, for the binary storage format.</p>
+ * <p>Codecs are registered in {@link StorageCodecs}. Every codec has a unique id, which is saved with the values
+ * it encoded, so the values are always decoded by the same codec.</p>
+ */
+interface StorageCodec {
+
+    /**
+     * Gets the id of the codec, saved with the encoded values.
+     * @return unique id
+     */
+    byte getId();
+
+    /**
+     * Checks if the codec can encode given value.
+     * @param value stored value, not null
+     * @return true if the value can be encoded
+     */
+    boolean canEncode(Object value);
+
+    /**
+     * Encodes the value.
+     * @param value stored value, accepted by {@link #canEncode(Object)}
+     * @param out output for the encoded value
+     * @throws IOException if the value can't be encoded
+     */
+    void encode(Object value, DataOutput out) throws IOException;
+
+    /**
+     * Decodes a value.
+     * @param buffer buffer containing exactly the encoded value
+     * @return decoded value
+     * @throws IOException if the value can't be decoded
+     */
+    Object decode(ByteBuffer buffer) throws IOException;
+}
@@ -0,0 +1,263 @@
+package cz.salmelu.discord.implementation;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * <p>Registry of the codecs used by the binary storage format.</p>
+ * <p>Common simple values, strings, numbers and lists of strings, have compact codecs.
+ * Any other value is stored with Java serialization.</p>
+ */
+final class StorageCodecs {
+
+    private static final StorageCodec[] byId = new StorageCodec[256];
+    /** Codecs tried for new values, in the order of registration */
+    private static final List<StorageCodec> codecs = new CopyOnWriteArrayList<>();
+    private static final StorageCodec SERIALIZED = new SerializedCodec();
+
+    static {
+        register(new StringCodec());
+        register(new IntegerCodec());
+        register(new LongCodec());
+        register(new BooleanCodec());
+        register(new DoubleCodec());
+        register(new StringListCodec());
+        byId[SERIALIZED.getId() & 0xFF] = SERIALIZED;
+    }
+
+    private StorageCodecs() {}
+
+    /**
+     * Registers a new codec. The codec is used for the values it accepts, unless an earlier registered
+     * codec accepts them too.
+     * @param codec registered codec
+     * @throws IllegalArgumentException if a codec with the same id is already registered
+     */
+    static synchronized void register(StorageCodec codec) {
+        final int id = codec.getId() & 0xFF;
+        if(byId[id] != null) {
+            throw new IllegalArgumentException("Storage codec with id " + id + " is already registered.");
+        }
+        byId[id] = codec;
+        codecs.add(codec);
+    }
+
+    /**
+     * Finds the codec for a value.
+     * @param value stored value, not null
+     * @return codec encoding the value
+     */
+    static StorageCodec forValue(Object value) {
+        for(StorageCodec codec : codecs) {
+            if(codec.canEncode(value)) return codec;
+        }
+        return SERIALIZED;
+    }
+
+    /**
+     * Gets the codec with given id.
+     * @param id codec id
+     * @return codec, or null if there is no such codec
+     */
+    static StorageCodec byId(byte id) {
+        return byId[id & 0xFF];
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeString(String value, DataOutput out) throws IOException {
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    /**
+     * Any serializable value, using Java serialization.
+     */
+    private static final class SerializedCodec implements StorageCodec {
+        @Override
+        public byte getId() {
+            return 0;
+        }
+
+        @Override
+        public boolean canEncode(Object value) {
+            return value instanceof Serializable;
+        }
+
+        @Override
+        public void encode(Object value, DataOutput out) throws IOException {
+            out.write(StorageJournal.serialize(value));
+        }
+
+        @Override
+        public Object decode(ByteBuffer buffer) throws IOException {
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            try (ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+                return ois.readObject();
+            }
+            catch (ClassNotFoundException e) {
+                throw new IOException("Unknown class of a stored value.", e);
+            }
+        }
+    }
+
+    private static final class StringCodec implements StorageCodec {
+        @Override
+        public byte getId() {
+            return 1;
+        }
+
+        @Override
+        public boolean canEncode(Object value) {
+            return value instanceof String;
+        }
+
+        @Override
+        public void encode(Object value, DataOutput out) throws IOException {
+            out.write(((String) value).getBytes(StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public Object decode(ByteBuffer buffer) {
+            final byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static final class IntegerCodec implements StorageCodec {
+        @Override
+        public byte getId() {
+            return 2;
+        }
+
+        @Override
+        public boolean canEncode(Object value) {
+            return value instanceof Integer;
+        }
+
+        @Override
+        public void encode(Object value, DataOutput out) throws IOException {
+            out.writeInt((Integer) value);
+        }
+
+        @Override
+        public Object decode(ByteBuffer buffer) {
+            return buffer.getInt();
+        }
+    }
+
+    private static final class LongCodec implements StorageCodec {
+        @Override
+        public byte getId() {
+            return 3;
+        }
+
+        @Override
+        public boolean canEncode(Object value) {
+            return value instanceof Long;
+        }
+
+        @Override
+        public void encode(Object value, DataOutput out) throws IOException {
+            out.writeLong((Long) value);
+        }
+
+        @Override
+        public Object decode(ByteBuffer buffer) {
+            return buffer.getLong();
+        }
+    }
+
+    private static final class BooleanCodec implements StorageCodec {
+        @Override
+        public byte getId() {
+            return 4;
+        }
+
+        @Override
+        public boolean canEncode(Object value) {
+            return value instanceof Boolean;
+        }
+
+        @Override
+        public void encode(Object value, DataOutput out) throws IOException {
+            out.writeBoolean((Boolean) value);
+        }
+
+        @Override
+        public Object decode(ByteBuffer buffer) {
+            return buffer.get() != 0;
+        }
+    }
+
+    private static final class DoubleCodec implements StorageCodec {
+        @Override
+        public byte getId() {
+            return 5;
+        }
+
+        @Override
+        public boolean canEncode(Object value) {
+            return value instanceof Double;
+        }
+
+        @Override
+        public void encode(Object value, DataOutput out) throws IOException {
+            out.writeDouble((Double) value);
+        }
+
+        @Override
+        public Object decode(ByteBuffer buffer) {
+            return buffer.getDouble();
+        }
+    }
+
+    /**
+     * Array lists containing only strings, such as lists of ids.
+     */
+    private static final class StringListCodec implements StorageCodec {
+        @Override
+        public byte getId() {
+            return 6;
+        }
+
+        @Override
+        public boolean canEncode(Object value) {
+            if(value.getClass() != ArrayList.class) return false;
+            for(Object element : (ArrayList<?>) value) {
+                if(!(element instanceof String)) return false;
+            }
+            return true;
+        }
+
+        @Override
+        public void encode(Object value, DataOutput out) throws IOException {
+            final ArrayList<?> list = (ArrayList<?>) value;
+            out.writeInt(list.size());
+            for(Object element : list) {
+                writeString((String) element, out);
+            }
+        }
+
+        @Override
+        public Object decode(ByteBuffer buffer) {
+            final int size = buffer.getInt();
+            final ArrayList<String> list = new ArrayList<>(size);
+            for(int i = 0; i < size; i++) {
+                list.add(readString(buffer));
+            }
+            return list;
+        }
+    }
+}
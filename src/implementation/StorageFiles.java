@@ -0,0 +1,92 @@
+package cz.salmelu.discord.implementation;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * <p>Crash-safe writing of storage files.</p>
+ * <p>A file is never written in place. The contents are written into a temporary file, which is synced
+ * to the disk and then renamed over the target, so the target always contains either the complete old
+ * or the complete new contents, even if the application is killed while saving.</p>
+ */
+final class StorageFiles {
+
+    /**
+     * Writes the contents of a file.
+     */
+    interface Content {
+        /**
+         * @param out output of the file
+         * @throws IOException if the contents can't be written
+         */
+        void write(OutputStream out) throws IOException;
+    }
+
+    private StorageFiles() {}
+
+    /**
+     * Gets the path of the temporary file used while writing the target.
+     * @param target written file
+     * @return path of the temporary file
+     */
+    static Path getTemporaryPath(Path target) {
+        return target.resolveSibling(target.getFileName() + ".tmp");
+    }
+
+    /**
+     * Writes a file atomically.
+     * @param target written file
+     * @param backup path the previous version of the file is moved to, or null to just replace it
+     * @param content writer of the contents
+     * @throws IOException if the file can't be written, the target is not changed then
+     */
+    static void writeAtomically(Path target, Path backup, Content content) throws IOException {
+        final Path temporary = getTemporaryPath(target);
+        try (FileOutputStream file = new FileOutputStream(temporary.toFile())) {
+            final OutputStream out = new BufferedOutputStream(file);
+            content.write(out);
+            out.flush();
+            file.getFD().sync();
+        }
+        catch (IOException e) {
+            Files.deleteIfExists(temporary);
+            throw e;
+        }
+        if (backup != null && Files.exists(target)) {
+            move(target, backup);
+        }
+        move(temporary, target);
+        syncDirectory(target);
+    }
+
+    private static void move(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE);
+        }
+        catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Syncs the directory of a file, so that the renames are on the disk too.
+     * Not all systems support this, it's skipped on those.
+     * @param file file in the directory
+     */
+    static void syncDirectory(Path file) {
+        try (FileChannel directory = FileChannel.open(file.toAbsolutePath().getParent(), StandardOpenOption.READ)) {
+            directory.force(true);
+        }
+        catch (IOException ignored) {
+            // Directories can't be synced on this system
+        }
+    }
+}
@@ -1,24 +1,59 @@
 package cz.salmelu.discord.implementation;
 
 import cz.salmelu.discord.Storage;
+import org.slf4j.LoggerFactory;
 
+import java.io.IOException;
 import java.io.Serializable;
-import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReentrantLock;
 
 public class StorageImpl implements Storage, Serializable {
     final Map<String, Object> storedObjects;
+    /** Log of the changes between the snapshots */
+    final transient StorageJournal journal;
     private Lock lock = new ReentrantLock();
+    /** Incremented with every change, the storage needs to be saved if it differs from the saved version */
+    private final AtomicLong version = new AtomicLong();
+    private volatile long savedVersion = 0;
+    /** Notified about every change */
+    private final transient Runnable changeListener;
 
-    StorageImpl() {
-        storedObjects = Collections.synchronizedMap(new HashMap<>());
+    StorageImpl(Map<String, Object> map, StorageJournal journal, Runnable changeListener) {
+        storedObjects = map;
+        this.journal = journal;
+        this.changeListener = changeListener;
     }
 
-    StorageImpl(Map<String, Object> map) {
-        storedObjects = map;
+    private void changed() {
+        version.incrementAndGet();
+        changeListener.run();
+    }
+
+    /**
+     * Gets the current version of the storage.
+     * @return version, incremented with every change
+     */
+    long getVersion() {
+        return version.get();
+    }
+
+    /**
+     * Marks a version of the storage as saved.
+     * @param savedVersion version contained in the saved snapshot
+     */
+    void setSavedVersion(long savedVersion) {
+        this.savedVersion = savedVersion;
+    }
+
+    /**
+     * Checks if the storage changed since it was last saved.
+     * @return true if the storage needs to be saved
+     */
+    boolean isChanged() {
+        return version.get() != savedVersion;
     }
 
     @Override
@@ -29,26 +64,96 @@ public class StorageImpl implements Storage, Serializable {
     @Override
     @SuppressWarnings("unchecked")
     public <T extends Serializable> T getValue(String name) {
-        return (T) storedObjects.get(name);
+        final Object value = storedObjects.get(name);
+        if(value instanceof BinaryStorageFile.MappedValue) {
+            synchronized (storedObjects) {
+                return (T) resolve(name);
+            }
+        }
+        return (T) value;
+    }
+
+    /**
+     * Decodes a value still kept in a mapped segment and replaces it in the map. Must be called with the map locked.
+     * @param name name of the value
+     * @return decoded value, or null if it can't be decoded
+     */
+    private Object resolve(String name) {
+        final Object value = storedObjects.get(name);
+        if(!(value instanceof BinaryStorageFile.MappedValue)) return value;
+        try {
+            final Object decoded = ((BinaryStorageFile.MappedValue) value).decode();
+            storedObjects.put(name, decoded);
+            return decoded;
+        }
+        catch (IOException e) {
+            LoggerFactory.getLogger(getClass().getSimpleName()).error("Value " + name + " can't be decoded.", e);
+            return null;
+        }
+    }
+
+    /**
+     * Decodes all the values still kept in a mapped segment. Must be called with the map locked.
+     * Values which can't be decoded are dropped, so that the rest of the storage can still be serialized.
+     */
+    void resolveAll() {
+        for(String name : storedObjects.keySet().toArray(new String[0])) {
+            if(resolve(name) == null && storedObjects.get(name) instanceof BinaryStorageFile.MappedValue) {
+                storedObjects.remove(name);
+                LoggerFactory.getLogger(getClass().getSimpleName())
+                        .warn("Value " + name + " can't be decoded, it's dropped from the storage.");
+            }
+        }
     }
 
     @Override
     public <T extends Serializable> void setValue(String name, T value) {
-        storedObjects.put(name, value);
+        // The map is locked while logging, so the log has the changes in the same order as the map
+        synchronized (storedObjects) {
+            storedObjects.put(name, value);
+            if(journal.isEnabled()) {
+                try {
+                    journal.set(name, StorageJournal.serialize(value));
+                }
+                catch (IOException e) {
+                    LoggerFactory.getLogger(getClass().getSimpleName())
+                            .warn("Value " + name + " can't be serialized.", e);
+                }
+            }
+        }
+        changed();
     }
 
     @Override
     public void removeValue(String name) {
-        storedObjects.remove(name);
+        synchronized (storedObjects) {
+            storedObjects.remove(name);
+            if(journal.isEnabled()) {
+                journal.remove(name);
+            }
+        }
+        changed();
     }
 
     @Override
-    public synchronized void lock() {
+    public void lock() {
         lock.lock();
     }
 
+    /**
+     * Unlocks the storage. The values could have been changed in place while it was locked,
+     * so the storage is considered changed.
+     */
     @Override
-    public synchronized void unlock() {
+    public void unlock() {
+        changed();
+        lock.unlock();
+    }
+
+    /**
+     * Unlocks the storage locked only for reading, without considering it changed.
+     */
+    void unlockUnchanged() {
         lock.unlock();
     }
 }
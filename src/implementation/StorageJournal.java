@@ -0,0 +1,327 @@
+package cz.salmelu.discord.implementation;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+/**
+ * <p>Append-only log of the changes of a single storage.</p>
+ * <p>Every {@link StorageImpl#setValue(String, Serializable)} and {@link StorageImpl#removeValue(String)}
+ * is written to the end of the log and synced to the disk before the call returns, so the change survives
+ * a crash of the application or of the whole system, even if no snapshot of the storage was saved since.
+ * Every record has a checksum, a record torn by a crash is dropped when the log is replayed.</p>
+ * <p>The logs are numbered by generations, in files named <code>storage.log.generation</code>.
+ * When a snapshot is taken, the current log is closed and the next changes go to a log of the next generation,
+ * so the snapshot can be written without holding the storage. The snapshot remembers the first generation
+ * it doesn't contain. The logs are kept until the next snapshot is written, so the previous snapshot,
+ * kept as a backup, can still be brought up to date if the last one is damaged.</p>
+ */
+class StorageJournal {
+
+    private static final int MAGIC = 0x44534a4c;
+    private static final int HEADER_SIZE = 12;
+    private static final byte OP_SET = 1;
+    private static final byte OP_REMOVE = 2;
+
+    private final Path directory;
+    private final String prefix;
+    private final boolean enabled;
+    private long generation = 0;
+    /** Generation of the last written snapshot, the logs older than it are not needed */
+    private long snapshotGeneration = 0;
+    /** Current log, opened when the first change is written into it */
+    private FileChannel channel = null;
+    private long size = 0;
+
+    private final Logger logger = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    /**
+     * Creates a journal of a storage.
+     * @param storageFile path of the storage's snapshot file
+     * @param enabled if false, no changes are logged, the journal only replays and deletes the existing logs
+     */
+    StorageJournal(Path storageFile, boolean enabled) {
+        this.directory = storageFile.toAbsolutePath().getParent();
+        this.prefix = storageFile.getFileName().toString() + ".log.";
+        this.enabled = enabled;
+    }
+
+    /**
+     * Checks if the changes are logged.
+     * @return true if the changes are logged
+     */
+    boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Finds the files of a storage numbered by generations.
+     * @param directory directory of the storage
+     * @param prefix common prefix of the files, followed by the generation
+     * @return paths of the files, sorted by their generations
+     * @throws IOException if the directory can't be read
+     */
+    static TreeMap<Long, Path> findGenerations(Path directory, String prefix) throws IOException {
+        final TreeMap<Long, Path> files = new TreeMap<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory)) {
+            for (Path path : stream) {
+                final String name = path.getFileName().toString();
+                if (!name.startsWith(prefix)) continue;
+                try {
+                    files.put(Long.parseLong(name.substring(prefix.length())), path);
+                }
+                catch (NumberFormatException ignored) {
+                    // Not numbered
+                }
+            }
+        }
+        return files;
+    }
+
+    /**
+     * Finds all the logs of the storage.
+     * @return paths of the logs, sorted by their generations
+     * @throws IOException if the directory can't be read
+     */
+    private TreeMap<Long, Path> findLogs() throws IOException {
+        return findGenerations(directory, prefix);
+    }
+
+    /**
+     * Replays the logs not contained in the snapshot and prepares the journal for new changes.
+     * @param snapshotGeneration first generation not contained in the loaded snapshot, 0 if there is no snapshot
+     * @param target contents of the snapshot, the changes are applied to it
+     * @throws IOException if the logs can't be read
+     */
+    synchronized void open(long snapshotGeneration, Map<String, Object> target) throws IOException {
+        generation = snapshotGeneration;
+        this.snapshotGeneration = snapshotGeneration;
+        Path last = null;
+        long lastLength = 0;
+        for (Map.Entry<Long, Path> log : findLogs().tailMap(snapshotGeneration).entrySet()) {
+            generation = log.getKey();
+            last = log.getValue();
+            lastLength = replay(log.getValue(), log.getKey(), target);
+        }
+        if (last != null && enabled) {
+            // Continue the last log, dropping a torn record at its end
+            channel = FileChannel.open(last, StandardOpenOption.WRITE);
+            if (lastLength < HEADER_SIZE) {
+                channel.truncate(0);
+                writeHeader();
+            }
+            else {
+                channel.truncate(lastLength);
+                channel.position(lastLength);
+                size = lastLength;
+            }
+        }
+    }
+
+    /**
+     * Applies the changes from a log.
+     * @param log path of the log
+     * @param logGeneration generation of the log
+     * @param target changed map
+     * @return length of the valid part of the log
+     * @throws IOException if the log can't be read
+     */
+    private long replay(Path log, long logGeneration, Map<String, Object> target) throws IOException {
+        final long fileSize = Files.size(log);
+        long valid = 0;
+        int records = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(log)))) {
+            if (in.readInt() != MAGIC || in.readLong() != logGeneration) {
+                logger.warn("Ignoring invalid storage log " + log);
+                return 0;
+            }
+            valid = HEADER_SIZE;
+            final CRC32 crc = new CRC32();
+            while (true) {
+                final int length = in.readInt();
+                final int checksum = in.readInt();
+                if (length <= 0 || length > fileSize - valid - 8) break;
+                final byte[] payload = new byte[length];
+                in.readFully(payload);
+                crc.reset();
+                crc.update(payload, 0, length);
+                if ((int) crc.getValue() != checksum) break;
+                apply(payload, target);
+                valid += 8 + length;
+                records++;
+            }
+        }
+        catch (EOFException e) {
+            // The end of the log, possibly a torn record
+        }
+        catch (ClassNotFoundException e) {
+            throw new IOException("Unknown class in storage log " + log, e);
+        }
+        logger.debug("Replayed " + records + " changes from " + log);
+        return valid;
+    }
+
+    /**
+     * Applies a single change.
+     * @param payload record of the change
+     * @param target changed map
+     */
+    private static void apply(byte[] payload, Map<String, Object> target) throws IOException, ClassNotFoundException {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        final byte op = in.readByte();
+        final byte[] key = new byte[in.readInt()];
+        in.readFully(key);
+        final String name = new String(key, StandardCharsets.UTF_8);
+        if (op == OP_SET) {
+            try (ObjectInputStream ois = new ObjectInputStream(in)) {
+                target.put(name, ois.readObject());
+            }
+        }
+        else if (op == OP_REMOVE) {
+            target.remove(name);
+        }
+    }
+
+    /**
+     * Serializes a value for the log.
+     * @param value stored value
+     * @return serialized value
+     * @throws IOException if the value can't be serialized
+     */
+    static byte[] serialize(Object value) throws IOException {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(value);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Logs a new value.
+     * @param name name of the value
+     * @param value serialized value
+     */
+    synchronized void set(String name, byte[] value) {
+        append(OP_SET, name, value);
+    }
+
+    /**
+     * Logs a removed value.
+     * @param name name of the value
+     */
+    synchronized void remove(String name) {
+        append(OP_REMOVE, name, null);
+    }
+
+    private void append(byte op, String name, byte[] value) {
+        if (!enabled) return;
+        final byte[] key = name.getBytes(StandardCharsets.UTF_8);
+        final int length = 1 + 4 + key.length + (value == null ? 0 : value.length);
+        final ByteBuffer buffer = ByteBuffer.allocate(8 + length);
+        buffer.putInt(length).putInt(0).put(op).putInt(key.length).put(key);
+        if (value != null) buffer.put(value);
+        final CRC32 crc = new CRC32();
+        crc.update(buffer.array(), 8, length);
+        buffer.putInt(4, (int) crc.getValue());
+        buffer.flip();
+        try {
+            Path created = null;
+            if (channel == null) {
+                final Path log = directory.resolve(prefix + generation);
+                if (Files.notExists(log)) created = log;
+                channel = FileChannel.open(log,
+                        StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+                writeHeader();
+            }
+            while (buffer.hasRemaining()) {
+                size += channel.write(buffer);
+            }
+            channel.force(false);
+            if (created != null) {
+                // A new log must be in its directory too
+                StorageFiles.syncDirectory(created);
+            }
+        }
+        catch (IOException e) {
+            logger.warn("Failed logging a change of " + name + ", it will be saved with the next snapshot.", e);
+        }
+    }
+
+    private void writeHeader() throws IOException {
+        final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putLong(generation);
+        header.flip();
+        channel.position(0);
+        while (header.hasRemaining()) {
+            channel.write(header);
+        }
+        size = HEADER_SIZE;
+    }
+
+    /**
+     * Closes the current log and starts a new generation. Must be called while the storage can't change,
+     * together with capturing the snapshot.
+     * @return the first generation not contained in the snapshot
+     */
+    synchronized long rotate() {
+        closeChannel();
+        return ++generation;
+    }
+
+    /**
+     * Marks a snapshot as written and deletes the logs contained in the previous snapshot,
+     * which becomes the backup.
+     * @param snapshotGeneration first generation not contained in the written snapshot
+     * @return generation of the previous snapshot, the files of older snapshots are not needed anymore
+     */
+    synchronized long snapshotSaved(long snapshotGeneration) {
+        final long previous = this.snapshotGeneration;
+        this.snapshotGeneration = snapshotGeneration;
+        try {
+            for (Map.Entry<Long, Path> log : findLogs().headMap(previous).entrySet()) {
+                Files.deleteIfExists(log.getValue());
+            }
+        }
+        catch (IOException e) {
+            logger.warn("Failed deleting old storage logs.", e);
+        }
+        return previous;
+    }
+
+    /**
+     * Gets the size of the current log.
+     * @return size in bytes
+     */
+    synchronized long size() {
+        return channel == null ? 0 : size;
+    }
+
+    /**
+     * Closes the current log. It's opened again if another change is logged.
+     */
+    synchronized void close() {
+        closeChannel();
+    }
+
+    private void closeChannel() {
+        if (channel == null) return;
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            logger.warn("Failed closing storage log.", e);
+        }
+        channel = null;
+        size = 0;
+    }
+}
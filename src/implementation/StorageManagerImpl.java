@@ -6,9 +6,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.*;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 
 public class StorageManagerImpl {
 
@@ -44,12 +44,30 @@ public class StorageManagerImpl {
         }
     }
 
+    /**
+     * Formats of the storage snapshots.
+     */
+    enum Format {
+        /** The whole storage saved with Java serialization */
+        SERIALIZED,
+        /** Compact binary format in memory-mapped segments, see {@link BinaryStorageFile} */
+        BINARY
+    }
+
     private final HashMap<NamePair, StorageImpl> storageMap = new HashMap<>();
     private final String storagePath;
+    private boolean journaling = true;
+    private Format format = Format.SERIALIZED;
 
     private final Thread savingThread;
-    private static final int SLEEP_TIME = 5 * 60 * 1000;
-    private boolean savingRunning;
+    private volatile boolean savingRunning;
+    /** Set when the manager is stopped, nothing is saved after the final save */
+    private boolean stopped = false;
+    /** Time in milliseconds between the first unsaved change and saving it */
+    private volatile long saveDelay = 30 * 1000;
+    /** Set when a storage changes, cleared by the saving thread before it saves the changed storages */
+    private volatile boolean changesPending = false;
+    private final Object saveSignal = new Object();
 
     private final Logger logger = LoggerFactory.getLogger(getClass().getSimpleName());
 
@@ -60,16 +78,23 @@ public class StorageManagerImpl {
         }
         this.storagePath = storagePath;
         savingThread = new Thread(() -> {
-            while(savingRunning) {
-                saveAll();
-                try {
-                    Thread.sleep(SLEEP_TIME);
-                }
-                catch (InterruptedException ignored) {
-
+            try {
+                while(savingRunning) {
+                    synchronized (saveSignal) {
+                        while(savingRunning && !changesPending) {
+                            saveSignal.wait();
+                        }
+                    }
+                    // Let the changes coming shortly after the first one be saved together
+                    Thread.sleep(saveDelay);
+                    changesPending = false;
+                    saveAll();
                 }
             }
-        });
+            catch (InterruptedException ignored) {
+                // Stopped
+            }
+        }, "StorageSaver");
         savingRunning = true;
         savingThread.start();
     }
@@ -81,70 +106,216 @@ public class StorageManagerImpl {
 
     synchronized Storage getStorageClassed(Class<?> clazz, String name) {
         NamePair pair = new NamePair(clazz, name);
-        if(!storageMap.containsKey(pair)) {
-            if(!load(pair)) {
-                storageMap.put(pair, new StorageImpl());
-            }
+        return storageMap.computeIfAbsent(pair, this::load);
+    }
+
+    /**
+     * Wakes the saving thread after a storage changed.
+     */
+    private void storageChanged() {
+        if(changesPending) return;
+        synchronized (saveSignal) {
+            changesPending = true;
+            saveSignal.notifyAll();
         }
-        return storageMap.get(pair);
     }
-    
+
+    /**
+     * Sets the time between a change of a storage and saving it. All the changes made meanwhile are saved together.
+     * @param saveDelay delay in milliseconds
+     */
+    void setSaveDelay(long saveDelay) {
+        this.saveDelay = saveDelay;
+    }
+
+    /**
+     * Sets whether the changes of the storages are logged as they happen. Must be set before any storage is loaded.
+     * @param journaling true to log the changes, false to save them only with the snapshots
+     */
+    void setJournaling(boolean journaling) {
+        this.journaling = journaling;
+    }
+
+    /**
+     * Sets the format of saved snapshots. Snapshots in both formats can be loaded.
+     * @param format used format
+     */
+    void setFormat(Format format) {
+        this.format = format;
+    }
+
+    private String getFilename(NamePair pair) {
+        return storagePath + pair.getInnerClass().getName() + "::" + pair.getInnerName();
+    }
+
+    /**
+     * <p>Saves a snapshot of the storage.</p>
+     * <p>The storage is held only while its contents are encoded into memory and its log is rotated,
+     * the snapshot is written to the disk after the storage is released.</p>
+     * <p>The snapshot is written atomically and the previous snapshot is kept as a backup, together with the logs
+     * written since. Older snapshots and logs, in either format, are deleted once the new snapshot is written.</p>
+     * @param pair identifier of the storage
+     */
     private void save(NamePair pair) {
         final StorageImpl storage = storageMap.get(pair);
         if(storage == null) return;
 
-        final String filename = storagePath + pair.getInnerClass().getName() + "::" + pair.getInnerName();
-        ObjectOutputStream oos = null;
+        final Object data;
+        final long generation;
+        final long version;
         try {
             storage.lock();
-            oos = new ObjectOutputStream(new FileOutputStream(new File(filename)));
-            oos.writeObject(storage.storedObjects);
+            synchronized (storage.storedObjects) {
+                version = storage.getVersion();
+                if(format == Format.BINARY) {
+                    data = BinaryStorageFile.capture(storage.storedObjects);
+                }
+                else {
+                    storage.resolveAll();
+                    data = StorageJournal.serialize(storage.storedObjects);
+                }
+                generation = storage.journal.rotate();
+            }
         }
         catch(IOException e) {
             logger.warn("Failed saving storage of class " + pair.getInnerClass().getName(), e);
+            return;
         }
         finally {
-            if(oos != null) {
-                try {
-                    oos.close();
-                }
-                catch (IOException ignored) {
+            storage.unlockUnchanged();
+        }
 
+        final Path path = Paths.get(getFilename(pair));
+        try {
+            if(format == Format.BINARY) {
+                @SuppressWarnings("unchecked")
+                final List<BinaryStorageFile.Entry> entries = (List<BinaryStorageFile.Entry>) data;
+                BinaryStorageFile.write(BinaryStorageFile.getSegmentPath(path, generation), generation, entries);
+            }
+            else {
+                SerializedStorageFile.write(path, generation, (byte[]) data);
+            }
+        }
+        catch(IOException e) {
+            logger.warn("Failed saving storage of class " + pair.getInnerClass().getName(), e);
+            return;
+        }
+        storage.setSavedVersion(version);
+        deleteOldSnapshots(path, storage.journal.snapshotSaved(generation));
+    }
+
+    /**
+     * Deletes the snapshots older than the backup. Mapped segments may still be in use by the storage,
+     * but they are never changed, so they can be deleted.
+     * @param path path of the storage's file
+     * @param backupGeneration generation of the snapshot kept as a backup
+     */
+    private void deleteOldSnapshots(Path path, long backupGeneration) {
+        try {
+            for(Path serialized : Arrays.asList(path, SerializedStorageFile.getBackupPath(path))) {
+                if(Files.exists(serialized) && SerializedStorageFile.readGeneration(serialized) < backupGeneration) {
+                    Files.deleteIfExists(serialized);
                 }
             }
-            storage.unlock();
+            final TreeMap<Long, Path> segments = findSegments(path);
+            for(Path segment : segments.headMap(backupGeneration).values()) {
+                Files.deleteIfExists(segment);
+            }
+        }
+        catch(IOException e) {
+            logger.warn("Failed deleting old storage files.", e);
         }
     }
 
+    private TreeMap<Long, Path> findSegments(Path path) throws IOException {
+        return StorageJournal.findGenerations(
+                path.toAbsolutePath().getParent(), path.getFileName() + BinaryStorageFile.SEGMENT_INFIX);
+    }
+
+    /**
+     * Saves all the storages changed since they were last saved.
+     */
     synchronized void saveAll() {
-        logger.info( "Saving all storages...");
+        if(stopped) return;
+        int saved = 0;
         for (Map.Entry<NamePair, StorageImpl> classEntry : storageMap.entrySet()) {
-            save(classEntry.getKey());
+            if(classEntry.getValue().isChanged()) {
+                save(classEntry.getKey());
+                saved++;
+            }
         }
-        logger.info( "Done.");
+        logger.debug("Saved " + saved + " of " + storageMap.size() + " storages.");
     }
 
-    @SuppressWarnings("unchecked")
-    private boolean load(NamePair pair) {
-        final String filename = storagePath + pair.getInnerClass().getName() + "::" + pair.getInnerName();
-        if(!Files.exists(Paths.get(filename))) {
+    /**
+     * <p>Loads the last valid snapshot of a storage and replays the changes logged after it.</p>
+     * <p>Both formats are loaded, regardless of the format used for saving. The snapshots are tried from the newest,
+     * including the backup and a snapshot left in a temporary file by a crash, and the first one which passes
+     * its checksum is used. Snapshots saved by older versions, without a header or a checksum, are loaded too.</p>
+     * @param pair identifier of the storage
+     * @return loaded storage, empty if it was never saved
+     */
+    private StorageImpl load(NamePair pair) {
+        final String filename = getFilename(pair);
+        final Path path = Paths.get(filename);
+        final StorageJournal journal = new StorageJournal(path, journaling);
+
+        final List<Map.Entry<Long, Path>> candidates = new ArrayList<>();
+        try {
+            candidates.addAll(findSegments(path).entrySet());
+        }
+        catch(IOException e) {
+            logger.warn("Failed listing storage segments of class " + pair.getInnerClass().getName(), e);
+        }
+        for(Path serialized : Arrays.asList(path, StorageFiles.getTemporaryPath(path),
+                SerializedStorageFile.getBackupPath(path))) {
+            if(!Files.exists(serialized)) continue;
+            try {
+                candidates.add(new AbstractMap.SimpleEntry<>(SerializedStorageFile.readGeneration(serialized), serialized));
+            }
+            catch(IOException e) {
+                logger.warn("Ignoring unreadable storage file " + serialized, e);
+            }
+        }
+        // Stable sort, for equal generations the files are tried in the order they were added
+        candidates.sort((first, second) -> Long.compare(second.getKey(), first.getKey()));
+
+        StorageSnapshot snapshot = null;
+        for(Map.Entry<Long, Path> candidate : candidates) {
+            try {
+                if(candidate.getValue().getFileName().toString().contains(BinaryStorageFile.SEGMENT_INFIX)) {
+                    snapshot = BinaryStorageFile.read(candidate.getValue());
+                }
+                else {
+                    snapshot = SerializedStorageFile.read(candidate.getValue());
+                }
+                break;
+            }
+            catch(IOException e) {
+                logger.warn("Failed loading storage file " + candidate.getValue() + ", trying an older one.", e);
+            }
+            catch (ClassNotFoundException e) {
+                logger.error("Exception when loading a class.", e);
+            }
+        }
+
+        if(snapshot == null) {
             logger.info("Storage file of " + pair.getInnerClass().getName() + " not found.");
-            return false;
+            snapshot = new StorageSnapshot(0, Collections.synchronizedMap(new HashMap<>()));
         }
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(filename))) {
-            final StorageImpl storage = new StorageImpl((Map<String, Object>) ois.readObject());
-            storageMap.put(pair, storage);
-            return true;
+
+        try {
+            journal.open(snapshot.generation, snapshot.entries);
         }
         catch(IOException e) {
-            logger.warn("Failed loading storage of class " + pair.getInnerClass().getName(), e);
+            logger.warn("Failed replaying storage log of class " + pair.getInnerClass().getName(), e);
         }
-        catch (ClassNotFoundException e) {
-            logger.error("Exception when loading a class.", e);
-        }
-        return false;
+        return new StorageImpl(snapshot.entries, journal, this::storageChanged);
     }
 
+    /**
+     * Stops the saving thread, saves the changed storages for the last time and closes their logs.
+     */
     public void stop() {
         savingRunning = false;
         savingThread.interrupt();
@@ -154,5 +325,12 @@ public class StorageManagerImpl {
         catch (InterruptedException e) {
             e.printStackTrace();
         }
+        synchronized (this) {
+            saveAll();
+            stopped = true;
+            for(StorageImpl storage : storageMap.values()) {
+                storage.journal.close();
+            }
+        }
     }
 }
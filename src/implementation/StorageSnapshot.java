@@ -0,0 +1,17 @@
+package cz.salmelu.discord.implementation;
+
+import java.util.Map;
+
+/**
+ * A loaded snapshot of a storage.
+ */
+final class StorageSnapshot {
+    /** The first generation of {@link StorageJournal} logs not contained in the snapshot */
+    final long generation;
+    final Map<String, Object> entries;
+
+    StorageSnapshot(long generation, Map<String, Object> entries) {
+        this.generation = generation;
+        this.entries = entries;
+    }
+}
@@ -0,0 +1,207 @@
+package cz.salmelu.discord.implementation;
+
+import java.util.List;
+
+/**
+ * <p>Hierarchical timing wheel, a scheduler of timers with constant time insertion and cancellation.</p>
+ * <p>The time is divided into ticks. The wheel has several levels of 64 slots, a slot of the lowest level
+ * spans a single tick and a slot of every higher level spans the whole lower level. A timer is put into
+ * the lowest level which reaches its deadline. When a level finishes its rotation, the next slot of the level
+ * above is cascaded, its timers are redistributed to the lower levels, until they reach the lowest level
+ * and expire. Timers beyond the reach of the highest level stay in it and are cascaded repeatedly.</p>
+ * <p>Every slot is an intrusive doubly linked list of timers, so a timer can be removed without searching.
+ * Empty ticks are skipped, the wheel only processes the ticks with some timers to expire or cascade.</p>
+ * <p>The wheel is not thread safe, it must be guarded by its owner.</p>
+ * @param <T> type of the scheduled timers
+ */
+final class TimingWheel<T extends TimingWheel.Timer> {
+
+    private static final int BITS = 6;
+    private static final int SLOTS = 1 << BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+    /** The farthest tick reachable by the highest level */
+    private static final long MAX_DELTA = (1L << (BITS * LEVELS)) - 1;
+
+    /**
+     * A timer scheduled in the wheel.
+     */
+    static class Timer {
+        /** Time in milliseconds when the timer expires */
+        long deadline;
+        private long expiryTick;
+        /** Index of the slot containing the timer, -1 if it's not scheduled */
+        private int slot = -1;
+        private Timer previous;
+        private Timer next;
+
+        /**
+         * Checks if the timer is scheduled in a wheel.
+         * @return true if the timer neither expired nor was removed
+         */
+        boolean isScheduled() {
+            return slot >= 0;
+        }
+    }
+
+    private final long tickLength;
+    private final Timer[] slots = new Timer[LEVELS * SLOTS];
+    /** The next tick to be processed */
+    private long currentTick;
+    private int size = 0;
+
+    /**
+     * Creates an empty wheel.
+     * @param tickLength length of a tick in milliseconds
+     * @param now current time in milliseconds
+     */
+    TimingWheel(long tickLength, long now) {
+        this.tickLength = tickLength;
+        this.currentTick = now / tickLength;
+    }
+
+    /**
+     * Gets the amount of scheduled timers.
+     * @return amount of timers
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * Schedules a timer to expire at its deadline. Timers with a deadline in the past expire with the next tick.
+     * @param timer scheduled timer, not scheduled in any wheel
+     */
+    void add(T timer) {
+        final Timer scheduled = timer;
+        // Rounded up, so a timer never expires before its deadline
+        scheduled.expiryTick = Math.floorDiv(scheduled.deadline + tickLength - 1, tickLength);
+        insert(scheduled);
+        size++;
+    }
+
+    /**
+     * Removes a scheduled timer.
+     * @param timer removed timer
+     * @return true if the timer was removed, false if it already expired or wasn't scheduled
+     */
+    boolean remove(T timer) {
+        final Timer scheduled = timer;
+        if(!scheduled.isScheduled()) return false;
+        unlink(scheduled);
+        size--;
+        return true;
+    }
+
+    /**
+     * Processes all the ticks up to the current time.
+     * @param now current time in milliseconds
+     * @param expired output for the expired timers, ordered by the ticks they expired in
+     */
+    void advance(long now, List<T> expired) {
+        final long target = now / tickLength;
+        long tick;
+        while((tick = nextEventTick()) <= target) {
+            currentTick = tick;
+            processTick(expired);
+        }
+        // Nothing to do in the skipped ticks
+        if(currentTick <= target) currentTick = target + 1;
+    }
+
+    /**
+     * Gets the time of the next tick with some timers to expire or cascade.
+     * @return time in milliseconds, or {@link Long#MAX_VALUE} if there are no timers
+     */
+    long nextDeadline() {
+        final long tick = nextEventTick();
+        return tick == Long.MAX_VALUE ? tick : tick * tickLength;
+    }
+
+    private void insert(Timer timer) {
+        final long delta = timer.expiryTick - currentTick;
+        int index;
+        if(delta < 0) {
+            index = (int) (currentTick & MASK);
+        }
+        else {
+            int level = 0;
+            while(level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1))) {
+                level++;
+            }
+            final long tick = delta > MAX_DELTA ? currentTick + MAX_DELTA : timer.expiryTick;
+            index = level * SLOTS + (int) ((tick >> (BITS * level)) & MASK);
+        }
+        final Timer head = slots[index];
+        timer.previous = null;
+        timer.next = head;
+        if(head != null) head.previous = timer;
+        slots[index] = timer;
+        timer.slot = index;
+    }
+
+    private void unlink(Timer timer) {
+        if(timer.previous != null) timer.previous.next = timer.next;
+        else slots[timer.slot] = timer.next;
+        if(timer.next != null) timer.next.previous = timer.previous;
+        timer.previous = null;
+        timer.next = null;
+        timer.slot = -1;
+    }
+
+    /**
+     * Cascades the higher levels if the lower ones finished their rotations and expires the timers of the tick.
+     */
+    @SuppressWarnings("unchecked")
+    private void processTick(List<T> expired) {
+        if((currentTick & MASK) == 0) {
+            for(int level = 1; level < LEVELS; level++) {
+                final int index = (int) ((currentTick >> (BITS * level)) & MASK);
+                cascade(level * SLOTS + index);
+                if(index != 0) break;
+            }
+        }
+        final int index = (int) (currentTick & MASK);
+        while(slots[index] != null) {
+            final Timer timer = slots[index];
+            unlink(timer);
+            size--;
+            expired.add((T) timer);
+        }
+        currentTick++;
+    }
+
+    private void cascade(int index) {
+        Timer timer = slots[index];
+        slots[index] = null;
+        while(timer != null) {
+            final Timer next = timer.next;
+            insert(timer);
+            timer = next;
+        }
+    }
+
+    /**
+     * Finds the first tick, not before the current one, which has some timers to expire or cascade.
+     * All the ticks before it can be skipped.
+     * @return the tick, or {@link Long#MAX_VALUE} if there are no timers
+     */
+    private long nextEventTick() {
+        if(size == 0) return Long.MAX_VALUE;
+        long next = Long.MAX_VALUE;
+        for(int level = 0; level < LEVELS; level++) {
+            final int shift = BITS * level;
+            // The first slot of the level not cascaded yet
+            final long start = (currentTick + (1L << shift) - 1) >> shift;
+            for(int k = 0; k < SLOTS; k++) {
+                final long tick = (start + k) << shift;
+                if(tick >= next) break;
+                if(slots[level * SLOTS + (int) ((start + k) & MASK)] != null) {
+                    next = tick;
+                    break;
+                }
+            }
+        }
+        return next;
+    }
+}
@@ -0,0 +1,221 @@
+package cz.salmelu.discord.implementation.json.reflector;
+
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * <p>Precompiled mapping between a single {@link MappedObject} class and its JSON form.</p>
+ * <p>The codec is built only once per class. It scans the class methods, computes the JSON field names
+ * and prepares method handles and value converters for all of them, so that reading and writing
+ * the objects doesn't need any reflection lookups.</p>
+ */
+class ObjectCodec {
+
+    /**
+     * A single field mapping, a JSON field name together with accessor and value converter.
+     */
+    private static final class Property {
+        private final String name;
+        private final MethodHandle accessor;
+        private final Function<Object, Object> converter;
+        private final Function<JSONTokener, Object> streamConverter;
+
+        private Property(String name, MethodHandle accessor, Function<Object, Object> converter,
+                         Function<JSONTokener, Object> streamConverter) {
+            this.name = name;
+            this.accessor = accessor;
+            this.converter = converter;
+            this.streamConverter = streamConverter;
+        }
+    }
+
+    private final Class<?> clazz;
+    private final MethodHandle constructor;
+    private final Property[] setters;
+    private final Property[] getters;
+    private final Map<String, Property> settersByName = new HashMap<>();
+
+    ObjectCodec(Class<?> clazz, Reader reader, Writer writer) {
+        this.clazz = clazz;
+        final MethodHandles.Lookup lookup = MethodHandles.lookup();
+        final List<Property> setterList = new ArrayList<>();
+        final List<Property> getterList = new ArrayList<>();
+
+        try {
+            // We work with classic Java methods: isXY, getXY and setXY
+            for(Method method : clazz.getDeclaredMethods()) {
+                if(method.isSynthetic() || Modifier.isStatic(method.getModifiers())) continue;
+                final String methodName = method.getName();
+                if(methodName.startsWith("set") && method.getParameterCount() == 1) {
+                    method.setAccessible(true);
+                    final MethodHandle handle = lookup.unreflect(method)
+                            .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                    final Class<?> type = method.getParameterTypes()[0];
+                    setterList.add(new Property(camelToSnake(methodName.substring(3)), handle,
+                            reader.createConverter(type), reader.createStreamConverter(type)));
+                }
+                else if((methodName.startsWith("get") || methodName.startsWith("is"))
+                        && method.getParameterCount() == 0) {
+                    // The field name is dependant on method name too
+                    method.setAccessible(true);
+                    final MethodHandle handle = lookup.unreflect(method)
+                            .asType(MethodType.methodType(Object.class, Object.class));
+                    getterList.add(new Property(
+                            camelToSnake(methodName.substring(methodName.startsWith("is") ? 2 : 3)), handle,
+                            writer.createConverter(method.getReturnType()), null));
+                }
+            }
+        }
+        catch (IllegalAccessException e) {
+            throw new IllegalArgumentException("Class " + clazz.getName() + " has inaccessible methods.", e);
+        }
+
+        MethodHandle constructorHandle = null;
+        try {
+            constructorHandle = lookup.findConstructor(clazz, MethodType.methodType(void.class))
+                    .asType(MethodType.methodType(Object.class));
+        }
+        catch (NoSuchMethodException | IllegalAccessException e) {
+            // Only serialization is possible then
+        }
+        this.constructor = constructorHandle;
+        this.setters = setterList.toArray(new Property[setterList.size()]);
+        this.getters = getterList.toArray(new Property[getterList.size()]);
+        for(Property setter : setters) {
+            settersByName.put(setter.name, setter);
+        }
+    }
+
+    /**
+     * Creates a new instance of the class, checking it has a usable constructor.
+     * @return new instance
+     * @throws Throwable any exception thrown by the constructor
+     */
+    private Object newInstance() throws Throwable {
+        if(constructor == null) {
+            throw new IllegalArgumentException("Class " + clazz.getName() + " has no accessible default constructor.");
+        }
+        return (Object) constructor.invokeExact();
+    }
+
+    /**
+     * Creates a new instance of the class and fills it with the values from JSON object.
+     * @param object serialized JSON object
+     * @return deserialized object
+     */
+    Object read(JSONObject object) {
+        try {
+            final Object result = newInstance();
+            for(Property setter : setters) {
+                final Object value = object.opt(setter.name);
+                if(value == null || value.equals(JSONObject.NULL)) continue;
+                setter.accessor.invokeExact(result, setter.converter.apply(value));
+            }
+            return result;
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * <p>Creates a new instance of the class and fills it with the values read directly from the tokener.</p>
+     * <p>The tokener must be positioned before the opening brace of a JSON object. The whole object is consumed,
+     * unknown fields are skipped without being parsed into JSON values.</p>
+     * @param tokener tokener with serialized JSON object
+     * @return deserialized object
+     */
+    Object read(JSONTokener tokener) {
+        try {
+            final Object result = newInstance();
+            if(tokener.nextClean() != '{') {
+                throw tokener.syntaxError("A JSONObject text must begin with '{'");
+            }
+            if(tokener.nextClean() == '}') {
+                return result;
+            }
+            tokener.back();
+            char c;
+            do {
+                final String key = Serializer.readKey(tokener);
+                final Property setter = settersByName.get(key);
+                if(setter == null) {
+                    Serializer.skip(tokener);
+                }
+                else {
+                    final Object value = setter.streamConverter.apply(tokener);
+                    if(value != null) {
+                        setter.accessor.invokeExact(result, value);
+                    }
+                }
+                c = tokener.nextClean();
+            } while(c == ',');
+            if(c != '}') {
+                throw tokener.syntaxError("Expected a ',' or '}'");
+            }
+            return result;
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Writes all the fields of an object into a JSON object.
+     * @param written object being serialized
+     * @param json resulting JSON object
+     */
+    void write(Object written, JSONObject json) {
+        try {
+            for(Property getter : getters) {
+                final Object converted = getter.converter.apply((Object) getter.accessor.invokeExact(written));
+                if(converted != null) {
+                    json.put(getter.name, converted);
+                }
+            }
+        }
+        catch (RuntimeException | Error e) {
+            throw e;
+        }
+        catch (Throwable t) {
+            throw new RuntimeException(t);
+        }
+    }
+
+    /**
+     * Converts Java's camel case into JSON (and Discord's) convention, called snake case.
+     * @param str String in CamelCase
+     * @return equivalent in snake_case
+     */
+    private static String camelToSnake(String str) {
+        StringBuilder builder = new StringBuilder(str.length() + 10);
+        builder.append(Character.toLowerCase(str.charAt(0)));
+        for(int i = 1; i < str.length(); i++) {
+            final char c = str.charAt(i);
+            if(Character.isUpperCase(c)) {
+                builder.append('_').append(Character.toLowerCase(c));
+            }
+            else {
+                builder.append(c);
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -2,16 +2,18 @@ package cz.salmelu.discord.implementation.json.reflector;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
 import java.lang.reflect.Array;
-import java.lang.reflect.Method;
 import java.time.OffsetDateTime;
 import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.Optional;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
- * Reads a JSONObject and creates a matching instance of Java object.
+ * Creates converters, which turn JSON values into matching instances of Java objects.
  */
 class Reader {
     private final Serializer serializer;
@@ -21,85 +23,118 @@ class Reader {
     }
 
     /**
-     * Reads a value into a single class field.
-     * @param result object being created
-     * @param method used setter
-     * @param value JSON value for the object
+     * <p>Creates a converter for a single class field.</p>
+     * <p>The converter takes a JSON value and returns an object which can be used as a parameter to the setter.
+     * It is created only once per field, so all type decisions are done here and not while reading.</p>
+     * @param type parameter type of the setter
+     * @return converter for the field
      */
-    void readField(Object result, Method method, Object value) {
-        final Class<?> type = method.getParameterTypes()[0];
-        try {
-            if (value.equals(JSONObject.NULL)) {
-                return;
-            }
-            else if(type.isArray()) {
-                final ArrayList<Object> values = new ArrayList<>();
+    Function<Object, Object> createConverter(Class<?> type) {
+        if(type.isArray()) {
+            final Class<?> componentType = type.getComponentType();
+            final Function<Object, Object> component = createSingleConverter(componentType);
+            return value -> {
                 final JSONArray valueArray = (JSONArray) value;
-
-                if(valueArray.length() == 0) {
-                    // Empty array
-                    method.invoke(result, Array.newInstance(type.getComponentType(), 0));
-                    return;
+                final Object array = Array.newInstance(componentType, valueArray.length());
+                for(int i = 0; i < valueArray.length(); i++) {
+                    final Object item = valueArray.get(i);
+                    Array.set(array, i, item.equals(JSONObject.NULL) ? null : component.apply(item));
                 }
+                return array;
+            };
+        }
+        return createSingleConverter(type);
+    }
 
-                valueArray.forEach(v -> values.add(readSingleValue(type.getComponentType(), v)));
-                Object[] array = values.toArray((Object[]) Array.newInstance(type.getComponentType(), values.size()));
-                method.invoke(result, type.cast(array));
-            }
-            else {
-                method.invoke(result, readSingleValue(type, value));
-            }
+    /**
+     * <p>Creates a streaming converter for a single class field.</p>
+     * <p>The converter reads the field value directly from the tokener. Nested mapped objects and their arrays
+     * are bound straight into Java objects, other values are read as simple JSON values and converted.</p>
+     * @param type parameter type of the setter
+     * @return streaming converter for the field, returns null for JSON nulls
+     */
+    Function<JSONTokener, Object> createStreamConverter(Class<?> type) {
+        if(type.isArray()) {
+            final Class<?> componentType = type.getComponentType();
+            final Function<JSONTokener, Object> component = createSingleStreamConverter(componentType);
+            return tokener -> {
+                if(Serializer.readNull(tokener)) return null;
+                if(tokener.nextClean() != '[') {
+                    throw tokener.syntaxError("A JSONArray text must start with '['");
+                }
+                final List<Object> values = new ArrayList<>();
+                if(tokener.nextClean() != ']') {
+                    tokener.back();
+                    char c;
+                    do {
+                        values.add(component.apply(tokener));
+                        c = tokener.nextClean();
+                    } while(c == ',');
+                    if(c != ']') {
+                        throw tokener.syntaxError("Expected a ',' or ']'");
+                    }
+                }
+                final Object array = Array.newInstance(componentType, values.size());
+                for(int i = 0; i < values.size(); i++) {
+                    Array.set(array, i, values.get(i));
+                }
+                return array;
+            };
         }
-        catch(Exception e) {
-            throw new RuntimeException(e);
+        return createSingleStreamConverter(type);
+    }
+
+    /**
+     * Creates a streaming converter of a single JSON value.
+     * @param type needed object class
+     * @return streaming value converter
+     */
+    private Function<JSONTokener, Object> createSingleStreamConverter(Class<?> type) {
+        if (MappedObject.class.isAssignableFrom(type)) {
+            // we need to recurse, without creating the JSONObject
+            return tokener -> Serializer.readNull(tokener) ? null : serializer.deserialize(tokener, type);
         }
+        final Function<Object, Object> converter = createSingleConverter(type);
+        return tokener -> {
+            final Object value = tokener.nextValue();
+            return value.equals(JSONObject.NULL) ? null : converter.apply(value);
+        };
     }
 
     /**
-     * Reads a single JSON value and converts it into an object which can be used as a parameter to the setter.
+     * Creates a converter of a single JSON value.
      * @param type needed object class
-     * @param value read value
-     * @return converted value
+     * @return value converter
      */
-    private Object readSingleValue(Class<?> type, Object value) {
+    private Function<Object, Object> createSingleConverter(Class<?> type) {
         if (type.equals(int.class) || type.equals(Integer.class)) {
-            return value;
+            return value -> ((Number) value).intValue();
         }
         else if (type.equals(long.class) || type.equals(Long.class)) {
-            return value;
+            return value -> ((Number) value).longValue();
         }
         else if (type.equals(boolean.class) || type.equals(Boolean.class)) {
-            return value;
+            return value -> value;
         }
         else if (type.equals(String.class)) {
-            return value;
+            return value -> value;
         }
         else if (type.isEnum()) {
-            Optional<?> optional = Arrays.stream(type.getEnumConstants()).filter(en -> {
-                try {
-                    MappedName annotation = type.getField(en.toString()).getAnnotation(MappedName.class);
-                    if(annotation != null) {
-                        return value.equals(annotation.value());
-                    }
-                    else {
-                        return value.equals(en.toString());
-                    }
-                }
-                catch (NoSuchFieldException e) {
-                    return value.equals(en.toString());
-                }
-            }).findFirst();
-            return optional.orElse(null);
+            final Map<Object, Object> constants = new HashMap<>();
+            for(Object en : type.getEnumConstants()) {
+                constants.put(Serializer.getEnumName(type, en), en);
+            }
+            return constants::get;
         }
         else if (type.equals(OffsetDateTime.class)) {
-            return OffsetDateTime.parse(value.toString());
+            return value -> OffsetDateTime.parse(value.toString());
         }
         else if (MappedObject.class.isAssignableFrom(type)) {
             // we need to recurse
-            return serializer.deserialize((JSONObject) value, type);
+            return value -> serializer.deserialize((JSONObject) value, type);
         }
         else {
             throw new IllegalArgumentException("The field requested cannot be set as it is an unknown type. " + type.getName());
         }
     }
-}
\ No newline at end of file
+}
@@ -1,11 +1,14 @@
 package cz.salmelu.discord.implementation.json.reflector;
 
 import org.json.JSONObject;
+import org.json.JSONTokener;
 
-import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
- * Converts Java objects into {@link JSONObject} and vice-versa.
+ * <p>Converts Java objects into {@link JSONObject} and vice-versa.</p>
+ * <p>The mapping of every class is compiled only once into an {@link ObjectCodec} and cached afterwards.</p>
  */
 public class Serializer {
 
@@ -13,33 +16,40 @@ public class Serializer {
     private final Reader reader;
     /** Write Object into JSON */
     private final Writer writer;
+    /** Compiled codecs for already processed classes */
+    private final Map<Class<?>, ObjectCodec> codecs = new ConcurrentHashMap<>();
 
     public Serializer() {
         reader = new Reader(this);
         writer = new Writer(this);
     }
 
+    /**
+     * Finds a compiled codec for given class, or creates one if the class wasn't used yet.
+     * @param clazz mapped class
+     * @return codec for the class
+     */
+    private ObjectCodec getCodec(Class<?> clazz) {
+        ObjectCodec codec = codecs.get(clazz);
+        if(codec == null) {
+            // Nested classes are resolved lazily by the converters, so this never recurses
+            codec = codecs.computeIfAbsent(clazz, c -> new ObjectCodec(c, reader, writer));
+        }
+        return codec;
+    }
+
     /**
      * Serializes given object into JSON fields and returns created JSON object.
      * @param object object being serialized
      * @return serialized object
      */
     public JSONObject serialize(Object object) {
-        final JSONObject json = new JSONObject();
-        final Class<?> clazz = object.getClass();
-
         if(!MappedObject.class.isAssignableFrom(object.getClass())) {
             throw new IllegalArgumentException("Cannot serialize class that is not an instance of MappedObject.");
         }
 
-        // We work with classic Java methods: isXY and getXY
-        for(Method method : clazz.getDeclaredMethods()) {
-            final String methodName = method.getName();
-            if(!methodName.startsWith("get") && !methodName.startsWith("is")) continue;
-            // The field name is dependant on method name too
-            final String fieldName = camelToSnake(methodName.substring(methodName.startsWith("is") ? 2 : 3));
-            writer.writeField(object, json, fieldName, method);
-        }
+        final JSONObject json = new JSONObject();
+        getCodec(object.getClass()).write(object, json);
         return json;
     }
 
@@ -51,41 +61,125 @@ public class Serializer {
      * @return deserialized object
      */
     public <T> T deserialize(JSONObject object, Class<T> clazz) {
-        try {
-            final T result = clazz.newInstance();
-            for(Method method : clazz.getDeclaredMethods()) {
-                final String methodName = method.getName();
-                if(!methodName.startsWith("set")) continue;
-                final String fieldName = camelToSnake(methodName.substring(3));
-                if(object.has(fieldName)) {
-                    reader.readField(result, method, object.get(fieldName));
+        return clazz.cast(getCodec(clazz).read(object));
+    }
+
+    /**
+     * <p>Deserializes a JSON object directly from a tokener, without building the intermediate {@link JSONObject}.</p>
+     * <p>The tokener must be positioned before the opening brace of the object. The whole object is consumed.</p>
+     * @param tokener tokener with serialized JSON object
+     * @param clazz instance of {@link Class} of the expected object
+     * @param <T> type of result
+     * @return deserialized object
+     */
+    public <T> T deserialize(JSONTokener tokener, Class<T> clazz) {
+        return clazz.cast(getCodec(clazz).read(tokener));
+    }
+
+    /**
+     * Reads a key of a JSON object together with the following colon.
+     * @param tokener tokener positioned before the key
+     * @return read key
+     */
+    public static String readKey(JSONTokener tokener) {
+        final char c = tokener.nextClean();
+        if(c != '"' && c != '\'') {
+            throw tokener.syntaxError("A JSONObject key must be a string");
+        }
+        final String key = tokener.nextString(c);
+        if(tokener.nextClean() != ':') {
+            throw tokener.syntaxError("Expected a ':' after a key");
+        }
+        return key;
+    }
+
+    /**
+     * Skips a single JSON value in the tokener. Objects, arrays and strings are only scanned, not parsed.
+     * @param tokener tokener positioned before the skipped value
+     */
+    public static void skip(JSONTokener tokener) {
+        char c = tokener.nextClean();
+        if(c == '"' || c == '\'') {
+            skipString(tokener, c);
+        }
+        else if(c == '{' || c == '[') {
+            int depth = 1;
+            while(depth > 0) {
+                c = tokener.next();
+                switch(c) {
+                    case 0:
+                        throw tokener.syntaxError("Unterminated JSON value");
+                    case '"':
+                    case '\'':
+                        skipString(tokener, c);
+                        break;
+                    case '{':
+                    case '[':
+                        ++depth;
+                        break;
+                    case '}':
+                    case ']':
+                        --depth;
+                        break;
+                    default:
+                        break;
                 }
             }
-            return result;
         }
-        catch (InstantiationException | IllegalAccessException e) {
-            e.printStackTrace();
+        else {
+            // Literals are short, let the tokener process them
+            tokener.back();
+            tokener.nextValue();
         }
-        return null;
     }
 
     /**
-     * Converts Java's camel case into JSON (and Discord's) convention, called snake case.
-     * @param str String in CamelCase
-     * @return equivalent in snake_case
+     * Skips the rest of a JSON string.
+     * @param tokener tokener positioned after the opening quote
+     * @param quote used quote character
      */
-    private String camelToSnake(String str) {
-        StringBuilder builder = new StringBuilder(str.length() + 10);
-        builder.append(Character.toLowerCase(str.charAt(0)));
-        for(int i = 1; i < str.length(); i++) {
-            final char c = str.charAt(i);
-            if(Character.isUpperCase(c)) {
-                builder.append('_').append(Character.toLowerCase(c));
+    private static void skipString(JSONTokener tokener, char quote) {
+        char c;
+        while((c = tokener.next()) != quote) {
+            if(c == 0 || c == '\n' || c == '\r') {
+                throw tokener.syntaxError("Unterminated string");
+            }
+            if(c == '\\') {
+                tokener.next();
             }
-            else {
-                builder.append(c);
+        }
+    }
+
+    /**
+     * Checks if the next JSON value in the tokener is null. If it is, the null is consumed.
+     * @param tokener tokener positioned before a value
+     * @return true if a null was read
+     */
+    static boolean readNull(JSONTokener tokener) {
+        final char c = tokener.nextClean();
+        tokener.back();
+        if(c == 'n') {
+            tokener.nextValue();
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the serialized name of an enum constant, respecting {@link MappedName} annotation.
+     * @param type enum class
+     * @param constant enum constant
+     * @return serialized name
+     */
+    static String getEnumName(Class<?> type, Object constant) {
+        try {
+            MappedName annotation = type.getField(((Enum<?>) constant).name()).getAnnotation(MappedName.class);
+            if(annotation != null) {
+                return annotation.value();
             }
         }
-        return builder.toString();
+        catch (NoSuchFieldException ignored) {
+        }
+        return constant.toString();
     }
 }
@@ -1,16 +1,15 @@
 package cz.salmelu.discord.implementation.json.reflector;
 
+import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
 import java.time.OffsetDateTime;
-import java.util.Arrays;
-import java.util.Collection;
-import java.util.stream.Collectors;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
 
 /**
- * Serializes an instance of a Java object into a {@link JSONObject}.
+ * Creates converters, which turn Java objects into values writable by {@link JSONObject}.
  */
 class Writer {
 
@@ -21,83 +20,66 @@ class Writer {
     }
 
     /**
-     * Writes a single field into the serializer.
-     * @param written object being written
-     * @param json resulting json object
-     * @param fieldName name of written field
-     * @param method getter for the field
+     * <p>Creates a converter for a single class field.</p>
+     * <p>The converter takes a value returned by the getter and returns an object writable by JSONObject.
+     * If the converter returns null, the field is skipped.</p>
+     * @param type return type of the getter
+     * @return converter for the field
      */
-    void writeField(Object written, JSONObject json, String fieldName, Method method) {
-        final Class<?> type = method.getReturnType();
-        try {
-            if(type.isArray()) {
-                // we have an array, we need to make our own list and concatenate them
-                final Object[] results = (Object[]) method.invoke(written);
-                if(results != null) {
-                    final Collection<Object> strings = Arrays.stream(results).map(o
-                            -> writeSingleField(written, type.getComponentType())).collect(Collectors.toList());
-                    json.put(fieldName, strings);
+    Function<Object, Object> createConverter(Class<?> type) {
+        if(type.isArray()) {
+            // we have an array, we need to make our own list and concatenate them
+            final Function<Object, Object> component = createSingleConverter(type.getComponentType());
+            return written -> {
+                if(written == null) return null;
+                final JSONArray array = new JSONArray();
+                for(Object o : (Object[]) written) {
+                    array.put(component.apply(o));
                 }
-            }
-            else {
-                // It's a single object, process
-                final Object result = method.invoke(written);
-                final Object converted = writeSingleField(result, type);
-                json.put(fieldName, converted);
-            }
-        }
-        catch (IllegalAccessException | InvocationTargetException e) {
-            e.printStackTrace();
+                return array;
+            };
         }
+        return createSingleConverter(type);
     }
 
     /**
-     * Converts an object into another object, that is writable by JSONObject.
-     * @param written object being converted
+     * Creates a converter, which converts an object into another object, that is writable by JSONObject.
      * @param type type of converted object
-     * @return converted object
+     * @return value converter
      */
-    private Object writeSingleField(Object written, Class<?> type) {
-        if(written == null) {
-            return JSONObject.NULL;
-        }
+    private Function<Object, Object> createSingleConverter(Class<?> type) {
+        final Function<Object, Object> converter;
         if(type.equals(Integer.class) || type.equals(int.class)) {
-            return written;
+            converter = written -> written;
         }
         else if(type.equals(Long.class) || type.equals(long.class)) {
-            return written;
+            converter = written -> written;
         }
         else if(type.equals(Boolean.class) || type.equals(boolean.class)) {
-            return written;
+            converter = written -> written;
         }
         else if(type.equals(String.class)) {
-            return written;
+            converter = written -> written;
         }
         else if(type.isEnum()) {
             // Handle with caution, we may have a different name
-            try {
-                MappedName annotation = type.getField(written.toString()).getAnnotation(MappedName.class);
-                if(annotation != null) {
-                    return annotation.value();
-                }
-                else {
-                    return written.toString();
-                }
-            }
-            catch (NoSuchFieldException e) {
-                return written.toString();
+            final Map<Object, String> names = new HashMap<>();
+            for(Object en : type.getEnumConstants()) {
+                names.put(en, Serializer.getEnumName(type, en));
             }
+            converter = names::get;
         }
         else if(type.equals(OffsetDateTime.class)) {
-            return written.toString();
+            converter = Object::toString;
         }
         else if(MappedObject.class.isAssignableFrom(type)) {
             // Another MappedObject inside, recursion
-            return serializer.serialize(written);
+            converter = serializer::serialize;
         }
         else {
             throw new IllegalArgumentException("Invalid type " + type.getName() + " encountered.");
         }
+        return written -> written == null ? JSONObject.NULL : converter.apply(written);
     }
 
 }
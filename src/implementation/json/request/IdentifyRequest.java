@@ -7,6 +7,7 @@ public class IdentifyRequest implements MappedObject {
     IdentifyRequestProperties properties;
     boolean compress;
     int largeThreshold;
+    Integer[] shard;
 
     public String getToken() {
         return token;
@@ -39,4 +40,12 @@ public class IdentifyRequest implements MappedObject {
     public void setLargeThreshold(int largeThreshold) {
         this.largeThreshold = largeThreshold;
     }
+
+    public Integer[] getShard() {
+        return shard;
+    }
+
+    public void setShard(Integer[] shard) {
+        this.shard = shard;
+    }
 }
@@ -8,6 +8,7 @@ import java.time.OffsetDateTime;
 public class MessageObject implements MappedObject {
     private String id;
     private String channelId;
+    private String guildId;
     private Integer type;
     private UserObject author;
     private String content;
@@ -40,6 +41,14 @@ public class MessageObject implements MappedObject {
         this.channelId = channelId;
     }
 
+    public String getGuildId() {
+        return guildId;
+    }
+
+    public void setGuildId(String guildId) {
+        this.guildId = guildId;
+    }
+
     public UserObject getAuthor() {
         return author;
     }
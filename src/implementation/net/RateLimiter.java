@@ -1,33 +1,117 @@
 package cz.salmelu.discord.implementation.net;
 
 import cz.salmelu.discord.implementation.net.rest.Endpoint;
+import cz.salmelu.discord.implementation.net.rest.HttpMethod;
 
 import java.util.ArrayDeque;
 import java.util.Deque;
-import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * <p>A special helper class to track sent requests and stall them.</p>
  * <p>Discord implements rate limits to prevent abusing bot applications and prevent spam.
  * The framework tracks user's application's requests and limits the rate before the request is even sent.</p>
+ * <p>REST limits are tracked in buckets keyed by the request method, the route and its major parameter
+ * (channel or server id). Once Discord tells us the bucket a route belongs to, routes sharing the bucket
+ * share the limits too. Buckets which were not used for a while are thrown away.</p>
  *
  * @see <a href="https://discordapp.com/developers/docs/topics/rate-limits">https://discordapp.com/developers/docs/topics/rate-limits</a></p>
  */
 public class RateLimiter {
 
     /**
-     * A holding class for value pair.
+     * <p>Rate limit state of a single bucket.</p>
+     * <p>The state is immutable and replaced atomically, so the threads sending requests never block each other.</p>
      */
-    private class ResetRemainPair {
-        /** timestamp when the limit is reset */
-        long reset;
+    private static final class BucketState {
+        /** how many requests are allowed in one interval, 0 if not known yet */
+        final int limit;
         /** how many more requests can we send before we hit the limit */
-        int remaining;
+        final int remaining;
+        /** timestamp when the limit is reset */
+        final long reset;
+        /** length of the interval, 0 if not known yet */
+        final long window;
 
-        public ResetRemainPair(long reset, int remaining) {
-            this.reset = reset;
+        BucketState(int limit, int remaining, long reset, long window) {
+            this.limit = limit;
             this.remaining = remaining;
+            this.reset = reset;
+            this.window = window;
+        }
+    }
+
+    /**
+     * A token bucket tracking the limits of a route and a major parameter.
+     */
+    private static final class Bucket {
+        private final AtomicReference<BucketState> state =
+                new AtomicReference<>(new BucketState(0, 0, 0, 0));
+        private volatile long lastUsed = System.currentTimeMillis();
+
+        /**
+         * <p>Takes a token from the bucket.</p>
+         * <p>Once the limit resets, the bucket is refilled if its limit and interval are known. Otherwise
+         * the limiter approves one request, but stalls others for a predefined time. This prevents
+         * spamming the server until we know the actual limit.</p>
+         * @param now current time
+         * @return 0 if the request can be sent, or the minimum amount of time to wait before next try
+         */
+        long acquire(long now) {
+            lastUsed = now;
+            while(true) {
+                final BucketState current = state.get();
+                final BucketState next;
+                if(current.remaining > 0) {
+                    next = new BucketState(current.limit, current.remaining - 1, current.reset, current.window);
+                }
+                else if(current.reset > now) {
+                    return current.reset - now;
+                }
+                else if(current.limit > 0 && current.window > 0) {
+                    next = new BucketState(current.limit, current.limit - 1, now + current.window, current.window);
+                }
+                else {
+                    next = new BucketState(current.limit, 0, now + REQUEST_DEFAULT_WAIT, current.window);
+                }
+                if(state.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * Updates the bucket with the data received from the server.
+         * Responses to older requests can come late, they can't increase the remaining amount in the same interval.
+         * @param now current time
+         * @param limit amount of requests allowed in the interval, 0 if not known
+         * @param remaining remaining requests allowed
+         * @param reset new reset timestamp
+         * @param window length of the interval, 0 if not known
+         */
+        void update(long now, int limit, int remaining, long reset, long window) {
+            lastUsed = now;
+            state.updateAndGet(current -> {
+                final int newLimit = limit > 0 ? limit : current.limit;
+                // The first request of an interval sees its full length
+                final long newWindow = Math.max(window, current.window);
+                final boolean sameInterval = current.reset > now && Math.abs(current.reset - reset) < RESET_TOLERANCE;
+                final int newRemaining = sameInterval ? Math.min(current.remaining, remaining) : remaining;
+                return new BucketState(newLimit, newRemaining, Math.max(reset, sameInterval ? current.reset : 0),
+                        newWindow);
+            });
+        }
+
+        /**
+         * Checks if the bucket can be thrown away.
+         * @param now current time
+         * @return true if the bucket wasn't used for a while and its limit was already reset
+         */
+        boolean isIdle(long now) {
+            return now - lastUsed > BUCKET_IDLE_TIMEOUT && state.get().reset <= now;
         }
     }
 
@@ -35,33 +119,33 @@ public class RateLimiter {
     private static final long REQUEST_INTERVAL = 60 * 1000; // a minute
     private static final long GAME_UPDATES_PER_INTERVAL = 4; // again 5, but better be safe
     private static final long REQUEST_DEFAULT_WAIT = 500; // how long do we limit for unknown endpoints
+    private static final long IDENTIFY_INTERVAL = 5500; // actually 5 seconds, one identify per concurrency bucket
+    private static final long RESET_TOLERANCE = 1000; // resets closer than this belong to the same interval
+    private static final long BUCKET_IDLE_TIMEOUT = 10 * 60 * 1000; // unused buckets are thrown away after this
+    private static final long BUCKET_SWEEP_INTERVAL = 60 * 1000; // how often we look for unused buckets
 
     /** We remember last X messages for gateway (timestamps) */
     private final Deque<Long> gatewayGuard;
     /** Same for presence updates */
     private final Deque<Long> gameGuard;
-    /** A simple lock for endpoint maps */
-    private final Object restGuard = new Object();
+    /** Timestamps when the identify buckets allow next identify */
+    private long[] identifyGuard = new long[1];
 
-    /** Limits for channel endpoints */
-    private final Map<String, ResetRemainPair> channelLimits;
-    /** Limits for server endpoints */
-    private final Map<String, ResetRemainPair> serverLimits;
-    /** Limits for generic endpoints */
-    private final Map<String, ResetRemainPair> endpointLimits;
+    /** Buckets of the REST endpoints, keyed by the bucket (or the route if not known) and the major parameter */
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    /** Bucket hashes sent by Discord, keyed by the request method and the route */
+    private final Map<String, String> bucketHashes = new ConcurrentHashMap<>();
+    /** Timestamp of the last search for unused buckets */
+    private final AtomicLong lastSweep = new AtomicLong(System.currentTimeMillis());
 
-    /** Discord also has a global limit, this is it; -1 means we are not limited */
+    /** Discord also has a global limit, this is the timestamp when it ends */
     private volatile long globalLimit;
 
     public RateLimiter() {
         gatewayGuard = new ArrayDeque<>();
         gameGuard = new ArrayDeque<>();
 
-        globalLimit = -1;
-
-        channelLimits = new HashMap<>();
-        serverLimits = new HashMap<>();
-        endpointLimits = new HashMap<>();
+        globalLimit = 0;
     }
 
     /**
@@ -129,127 +213,143 @@ public class RateLimiter {
     }
 
     /**
-     * <p>Check an endpoint map for an entry about its rate limits.</p>
-     * <p>The entry contains the amount of allowed requests remaining and the timestamp denoting when the limit resets.</p>
-     * <p>If the endpoint is not tracked yet, the limiter approves the requests but sets the reset to predefined constant.
-     * This prevents spamming the server until we know the actual limit.</p>
-     * @param map map containing the correct endpoint
-     * @param id checked endpoint id
-     * @return 0 if the request can be sent, or the minimum amount of time to wait before next try
+     * Sets how many shards can identify at the same time, as given by Discord.
+     * @param concurrency maximum identify concurrency
      */
-    private long checkEndpointMap(Map<String, ResetRemainPair> map, String id) {
-        if(map.containsKey(id)) {
-            final ResetRemainPair pair = map.get(id);
-            if(pair.remaining > 0) {
-                --pair.remaining;
-                return 0;
-            }
-            else {
-                final long reset = pair.reset - System.currentTimeMillis();
-                if(reset > 0) {
-                    return reset;
-                }
-                // We are reset but if another request comes, wait until we get information how long we have to wait
-                pair.reset = System.currentTimeMillis() + REQUEST_DEFAULT_WAIT;
-                return 0;
-            }
-        }
-        else {
-            // Allow first, stall second until we get some info about the limit
-            map.put(id, new ResetRemainPair(System.currentTimeMillis() + REQUEST_DEFAULT_WAIT, 0));
+    public void setIdentifyConcurrency(int concurrency) {
+        synchronized (gatewayGuard) {
+            identifyGuard = new long[Math.max(concurrency, 1)];
         }
-        return 0;
     }
 
     /**
-     * Removes global limit, if we already reached that time.
+     * <p>Checks if a shard can send an identify request.</p>
+     * <p>Shards are split into buckets by their id, only one shard in a bucket can identify in given interval.
+     * If denied, the shard shall call this method later again, before sending the request.</p>
+     * @param shardId id of the identifying shard
+     * @return 0 if the request can be sent, or the minimum amount of time to wait before next try
      */
-    private void updateGlobalLimit() {
-        if(globalLimit != -1) {
-            if(globalLimit >= System.currentTimeMillis()) {
-                globalLimit = -1;
+    public long checkIdentifyLimit(int shardId) {
+        synchronized (gatewayGuard) {
+            final int bucket = shardId % identifyGuard.length;
+            final long waitTime = identifyGuard[bucket] - System.currentTimeMillis();
+            if(waitTime > 0) {
+                return waitTime;
             }
+            // Approved, block the bucket for a while
+            identifyGuard[bucket] = System.currentTimeMillis() + IDENTIFY_INTERVAL;
+            return 0;
         }
     }
 
     /**
-     * <p>Checks if the client is allowed to send a request to given endpoint.</p>
-     * <p>If the request is not approved, the client shall wait and call the method again.</p>
+     * Gets the key of the route a request belongs to, before the route is mapped to a Discord bucket.
+     * @param method request method
      * @param endpoint destination
-     * @return 0 if the request is approved, amount of milliseconds to wait if it isn't
+     * @return route key
      */
-    public long checkLimit(Endpoint endpoint) {
-        synchronized (restGuard) {
-            updateGlobalLimit();
-            if (globalLimit != -1) {
-                final long retry = globalLimit - System.currentTimeMillis(); // we are limited globally
-                if (retry > 0) return retry;
-            }
-
-            // look what the endpoint is
-            if (endpoint.isChannel()) {
-                return checkEndpointMap(channelLimits, endpoint.getElement(1));
-            }
-            else if (endpoint.isServer()) {
-                // This wont work with the createServer(), but that feature is not needed for bots
-                return checkEndpointMap(serverLimits, endpoint.getElement(1));
-            }
-            else {
-                return checkEndpointMap(endpointLimits, endpoint.getBase());
-            }
-        }
+    private static String getRouteKey(HttpMethod method, Endpoint endpoint) {
+        return method.name() + ' ' + endpoint.getRoute();
     }
 
     /**
-     * Updates the endpoint map with new data.
-     * @param map updated map
-     * @param id endpoint id
-     * @param reset new reset timestamp
-     * @param remaining remaining requests allowed
+     * <p>Gets the key of the bucket tracking the limits of the request.</p>
+     * <p>If Discord told us which bucket the route belongs to, the bucket hash is used instead of the route.
+     * Requests with the same key share the rate limits.</p>
+     * @param method request method
+     * @param endpoint destination
+     * @return bucket key
      */
-    private void updateEndpointMap(Map<String, ResetRemainPair> map, String id, long reset, int remaining) {
-        map.put(id, new ResetRemainPair(reset, remaining));
+    public String getBucketKey(HttpMethod method, Endpoint endpoint) {
+        final String routeKey = getRouteKey(method, endpoint);
+        final String hash = bucketHashes.get(routeKey);
+        return (hash != null ? hash : routeKey) + ':' + endpoint.getMajorParameter();
     }
 
     /**
-     * Updates the endpoint map with new data.
+     * Gets the bucket for the request, creating it if it doesn't exist yet.
+     * @param method request method
      * @param endpoint destination
-     * @param reset new reset timestamp
-     * @param remaining remaining requests allowed
+     * @return tracked bucket
      */
-    private void updateLimitInner(Endpoint endpoint, long reset, int remaining) {
-        synchronized (restGuard) {
-            // look what the endpoint is
-            if (endpoint.isChannel()) {
-                updateEndpointMap(channelLimits, endpoint.getElement(1), reset, remaining);
-            }
-            else if (endpoint.isServer()) {
-                // This wont work with the createServer(), but that feature is not needed for bots
-                updateEndpointMap(serverLimits, endpoint.getElement(1), reset, remaining);
-            }
-            else {
-                updateEndpointMap(endpointLimits, endpoint.getBase(), reset, remaining);
+    private Bucket getBucket(HttpMethod method, Endpoint endpoint) {
+        return buckets.computeIfAbsent(getBucketKey(method, endpoint), k -> new Bucket());
+    }
+
+    /**
+     * <p>Throws away buckets, which were not used for a while and have no active limit.</p>
+     * <p>This runs at most once per {@link #BUCKET_SWEEP_INTERVAL}, by the thread which happens to check a limit.</p>
+     * @param now current time
+     */
+    private void evictIdleBuckets(long now) {
+        final long last = lastSweep.get();
+        if(now - last < BUCKET_SWEEP_INTERVAL || !lastSweep.compareAndSet(last, now)) {
+            return;
+        }
+        buckets.forEach((key, bucket) -> {
+            if(bucket.isIdle(now)) {
+                buckets.remove(key, bucket);
             }
+        });
+    }
+
+    /**
+     * <p>Checks if the client is allowed to send a request to given endpoint.</p>
+     * <p>If the request is not approved, the client shall wait and call the method again.</p>
+     * @param method request method
+     * @param endpoint destination
+     * @return 0 if the request is approved, amount of milliseconds to wait if it isn't
+     */
+    public long checkLimit(HttpMethod method, Endpoint endpoint) {
+        final long now = System.currentTimeMillis();
+        final long retry = globalLimit - now;
+        if(retry > 0) {
+            // we are limited globally
+            return retry;
         }
+        evictIdleBuckets(now);
+        return getBucket(method, endpoint).acquire(now);
     }
 
     /**
-     * Updates the endpoint map with new data.
+     * Updates the limits of an endpoint with the data received in the response headers.
+     * @param method request method
      * @param endpoint destination
-     * @param reset new reset timestamp
+     * @param bucketHash bucket the route belongs to, or null if not known
+     * @param limit amount of requests allowed in the interval
      * @param remaining remaining requests allowed
+     * @param resetAfter milliseconds until the limit resets
      */
-    public void updateLimit(Endpoint endpoint, long reset, int remaining) {
-        updateLimitInner(endpoint, reset * 1000, remaining);
+    public void updateLimit(HttpMethod method, Endpoint endpoint, String bucketHash, int limit, int remaining,
+                            long resetAfter) {
+        updateBucketHash(method, endpoint, bucketHash);
+        final long now = System.currentTimeMillis();
+        getBucket(method, endpoint).update(now, limit, remaining, now + resetAfter, resetAfter);
     }
 
     /**
      * The server sent Retry-After header, we clear the limit to block other requests.
+     * @param method request method
      * @param endpoint destination
+     * @param bucketHash bucket the route belongs to, or null if not known
      * @param retryAfter the amount of time to wait before next request
      */
-    public void updateLimitRetry(Endpoint endpoint, long retryAfter) {
-        updateLimitInner(endpoint, System.currentTimeMillis() + retryAfter, 0);
+    public void updateLimitRetry(HttpMethod method, Endpoint endpoint, String bucketHash, long retryAfter) {
+        updateBucketHash(method, endpoint, bucketHash);
+        final long now = System.currentTimeMillis();
+        getBucket(method, endpoint).update(now, 0, 0, now + retryAfter, 0);
+    }
+
+    /**
+     * Remembers the bucket a route belongs to. The amount of routes is limited, so the map doesn't need eviction.
+     * @param method request method
+     * @param endpoint destination
+     * @param bucketHash received bucket hash, or null
+     */
+    private void updateBucketHash(HttpMethod method, Endpoint endpoint, String bucketHash) {
+        if(bucketHash != null) {
+            bucketHashes.put(getRouteKey(method, endpoint), bucketHash);
+        }
     }
 
     /**
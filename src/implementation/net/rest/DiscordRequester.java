@@ -11,72 +11,125 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 /**
  * A requester for sending REST requests to Discord servers.
  */
 public class DiscordRequester {
 
+    /**
+     * The way the requests are sent over the network.
+     */
+    public enum Transport {
+        /** Separate connection pools for synchronous and asynchronous requests */
+        POOLED,
+        /** A few connections shared by all the requests */
+        SHARED
+    }
+
     private static final String LIB_URL = cz.salmelu.discord.DiscordModules.LIB_URL;
     private static final String LIB_VERSION = cz.salmelu.discord.DiscordModules.LIB_VERSION;
     private final String token;
     private final Serializer serializer;
     private final RateLimiter limiter;
     private final RestRequestSender sender;
+    private final RequestScheduler scheduler;
 
-    private boolean stopped = false;
+    private volatile boolean stopped = false;
 
     private final Logger logger = LoggerFactory.getLogger(getClass().getSimpleName());
 
     public DiscordRequester(String token, Serializer serializer, RateLimiter limiter) {
+        this(token, serializer, limiter, Transport.POOLED, 0);
+    }
+
+    /**
+     * Creates a requester sending the requests with given transport.
+     * @param token bot's token
+     * @param serializer serializer of sent objects
+     * @param limiter rate limiter
+     * @param transport used transport
+     * @param connections maximum amount of connections, used by the shared transport
+     */
+    public DiscordRequester(String token, Serializer serializer, RateLimiter limiter,
+                            Transport transport, int connections) {
+        this(token, serializer, limiter,
+                transport == Transport.SHARED ? new SharedTransport(connections) : new PooledTransport());
+    }
+
+    /**
+     * Creates a requester sending the requests with given transport.
+     * @param token bot's token
+     * @param serializer serializer of sent objects
+     * @param limiter rate limiter
+     * @param transport used transport
+     */
+    DiscordRequester(String token, Serializer serializer, RateLimiter limiter, RestTransport transport) {
         this.token = token;
         this.limiter = limiter;
         this.serializer = serializer;
-        this.sender = new RestRequestSender();
+        this.sender = new RestRequestSender(transport);
+        this.scheduler = new RequestScheduler(limiter);
     }
 
     /**
      * Blocks the thread until the request can be sent according to rate limits.
+     * @param method request method
      * @param endpoint endpoint the request targets
      */
-    private void waitForLimit(Endpoint endpoint) {
-        long waitFor = limiter.checkLimit(endpoint);
-        while(waitFor != 0) {
-            logger.info("Request to endpoint " + endpoint + " is being rate limited, " +
-                    "waiting for " + waitFor + " milliseconds.");
-            try {
-                Thread.sleep(waitFor);
+    private void waitForLimit(HttpMethod method, Endpoint endpoint) {
+        try {
+            scheduler.acquire(method, endpoint).join();
+        }
+        catch (CompletionException e) {
+            if(e.getCause() instanceof DiscordRequestException) {
+                throw (DiscordRequestException) e.getCause();
             }
-            catch (InterruptedException ignored) {}
-            waitFor = limiter.checkLimit(endpoint);
+            throw e;
         }
     }
 
     /**
      * Updates a rate limit with a new value, depending on received response from the servers.
+     * @param method request method
      * @param endpoint affected endpoint
      * @param response response from the servers
      */
-    void updateLimit(Endpoint endpoint, RestResponse response) {
+    void updateLimit(HttpMethod method, Endpoint endpoint, RestResponse response) {
+        if(response == null) return;
+        final String bucketHash = response.getFirstHeader("X-RateLimit-Bucket");
         if (response.getStatusCode() == 429) {
             // We've reached a limit, eww
-            final JSONObject retryResponse = new JSONObject(response.getResponseBody());
-            final boolean isGlobal = retryResponse.getBoolean("global");
+            final JSONObject retryResponse = response.getBodyAsObject();
+            final boolean isGlobal = retryResponse.optBoolean("global");
             final long retryAfter = retryResponse.getLong("retry_after");
             if(isGlobal) {
                 limiter.globalLimitExceeded(retryAfter);
             }
             else {
-                limiter.updateLimitRetry(endpoint, retryAfter);
+                limiter.updateLimitRetry(method, endpoint, bucketHash, retryAfter);
             }
             return;
         }
         // Check if we have a header with remaining limit, if so, update it
-        if(response.hasHeader("X-RateLimit-Limit")) {
+        if(response.hasHeader("X-RateLimit-Limit") && response.hasHeader("X-RateLimit-Remaining")) {
+            final int limit = Integer.parseInt(response.getFirstHeader("X-RateLimit-Limit"));
             final int remaining = Integer.parseInt(response.getFirstHeader("X-RateLimit-Remaining"));
-            final long reset = Long.parseLong(response.getFirstHeader("X-RateLimit-Reset"));
-            limiter.updateLimit(endpoint, reset, remaining);
+            final long resetAfter;
+            if(response.hasHeader("X-RateLimit-Reset-After")) {
+                resetAfter = (long) (Double.parseDouble(response.getFirstHeader("X-RateLimit-Reset-After")) * 1000);
+            }
+            else if(response.hasHeader("X-RateLimit-Reset")) {
+                // Absolute timestamp in seconds, relies on synchronized clocks
+                final long reset = (long) (Double.parseDouble(response.getFirstHeader("X-RateLimit-Reset")) * 1000);
+                resetAfter = Math.max(reset - System.currentTimeMillis(), 0);
+            }
+            else {
+                return;
+            }
+            limiter.updateLimit(method, endpoint, bucketHash, limit, remaining, resetAfter);
         }
     }
 
@@ -95,8 +148,9 @@ public class DiscordRequester {
                 break;
             case 304:
                 // Not modified, let's warn user something changed and the request was therefore invalid
-                if(response.getFirstHeader("Content-Type").equals("application/json")) {
-                    final JSONObject object = new JSONObject(response.getResponseBody());
+                final Object body = response.getBody();
+                if(body instanceof JSONObject) {
+                    final JSONObject object = (JSONObject) body;
                     logger.warn(object.getString("message"));
                     throw new DiscordRequestException(object.getString("message"), 304);
                 }
@@ -114,6 +168,7 @@ public class DiscordRequester {
      */
     public void stop() {
         this.stopped = true;
+        scheduler.stop();
         try {
             sender.shutdown();
         }
@@ -136,28 +191,47 @@ public class DiscordRequester {
      * Sends the request and updates relevant structures (rate limits).
      * @param endpoint targeted endpoint
      * @param request sent request
-     * @return reply to the response
+     * @return received response with already read body
      */
-    private String fireRequest(Endpoint endpoint, RestRequest request) {
+    private RestResponse fireRequest(Endpoint endpoint, RestRequest request) {
         RestResponse response = null;
         try {
             response = sender.sendRequest(request);
             throwRequestException(response);
         }
         finally {
-            updateLimit(endpoint, response);
+            updateLimit(request.getMethod(), endpoint, response);
         }
-        return response.getResponseBody();
+        return response;
     }
 
     /**
-     * Sends the request asynchronously. The structures are updated in a callback after the request is completed.
+     * <p>Sends the request asynchronously. The request waits for the rate limits without blocking the caller.</p>
+     * <p>The structures are updated in a callback after the request is completed.</p>
      * @param endpoint targeted endpoint
      * @param request sent request
      * @return future to process the reply later
      */
-    private Future<RequestResponse> fireRequestAsync(Endpoint endpoint, RestRequest request) {
-        return sender.sendAsyncRequest(request, endpoint, this);
+    private CompletableFuture<RequestResponse> fireRequestAsync(Endpoint endpoint, RestRequest request) {
+        return scheduler.acquire(request.getMethod(), endpoint)
+                .thenCompose(ignored -> sender.sendAsyncRequest(request, endpoint, this))
+                .exceptionally(e -> {
+                    final Throwable cause = e instanceof CompletionException ? e.getCause() : e;
+                    if(cause instanceof DiscordRequestException) {
+                        return new RequestResponseImpl((DiscordRequestException) cause);
+                    }
+                    logger.warn("Asynchronous request failed.", cause);
+                    return new RequestResponseImpl(new DiscordRequestException(cause.getMessage(), 500));
+                });
+    }
+
+    /**
+     * Creates a response for requests sent after the requester was stopped.
+     * @return already completed future with a failed response
+     */
+    private CompletableFuture<RequestResponse> stoppedResponse() {
+        return CompletableFuture.completedFuture(
+                new RequestResponseImpl(new DiscordRequestException("The requester was stopped.", 503)));
     }
 
     /**
@@ -165,16 +239,18 @@ public class DiscordRequester {
      * @param endpoint targeted endpoint
      * @return received reply
      */
-    private String getRequestImpl(Endpoint endpoint) {
+    private RestResponse getRequestImpl(Endpoint endpoint) {
         if(stopped) return null;
-        waitForLimit(endpoint);
+        waitForLimit(HttpMethod.GET, endpoint);
         logger.debug("Sending GET request to " + endpoint.getAddress());
 
         final RestRequest request = new RestRequest(HttpMethod.GET)
                 .setEndpoint(endpoint);
         fillHeaders(request);
-        final String response = fireRequest(endpoint, request);
-        logger.debug("Received response: " + response);
+        final RestResponse response = fireRequest(endpoint, request);
+        if(logger.isDebugEnabled()) {
+            logger.debug("Received response: " + response.getBody());
+        }
         return response;
     }
 
@@ -184,9 +260,9 @@ public class DiscordRequester {
      * @param s sent data
      * @return received reply
      */
-    private String postRequestImpl(Endpoint endpoint, String s) {
+    private RestResponse postRequestImpl(Endpoint endpoint, String s) {
         if(stopped) return null;
-        waitForLimit(endpoint);
+        waitForLimit(HttpMethod.POST, endpoint);
         logger.debug("Sending POST request to " + endpoint.getAddress() + "; attachment: " + s);
 
         final RestRequest request = new RestRequest(HttpMethod.POST)
@@ -202,9 +278,8 @@ public class DiscordRequester {
      * @param s sent data
      * @return future to collect the reply later
      */
-    private Future<RequestResponse> postRequestImplAsync(Endpoint endpoint, String s) {
-        if(stopped) return null;
-        waitForLimit(endpoint);
+    private CompletableFuture<RequestResponse> postRequestImplAsync(Endpoint endpoint, String s) {
+        if(stopped) return stoppedResponse();
         logger.debug("Sending asynchronous POST request to " + endpoint.getAddress() + "; attachment: " + s);
 
         final RestRequest request = new RestRequest(HttpMethod.POST)
@@ -220,9 +295,9 @@ public class DiscordRequester {
      * @param s sent data
      * @return received reply
      */
-    private String patchRequestImpl(Endpoint endpoint, String s) {
+    private RestResponse patchRequestImpl(Endpoint endpoint, String s) {
         if(stopped) return null;
-        waitForLimit(endpoint);
+        waitForLimit(HttpMethod.PATCH, endpoint);
         logger.debug("Sending PATCH request to " + endpoint.getAddress() + "; attachment: " + s);
 
         final RestRequest request = new RestRequest(HttpMethod.PATCH)
@@ -238,9 +313,8 @@ public class DiscordRequester {
      * @param s sent data
      * @return future to collect the reply later
      */
-    private Future<RequestResponse> patchRequestImplAsync(Endpoint endpoint, String s) {
-        if(stopped) return null;
-        waitForLimit(endpoint);
+    private CompletableFuture<RequestResponse> patchRequestImplAsync(Endpoint endpoint, String s) {
+        if(stopped) return stoppedResponse();
         logger.debug("Sending asynchronous PATCH request to " + endpoint.getAddress() + "; attachment: " + s);
 
         final RestRequest request = new RestRequest(HttpMethod.PATCH)
@@ -256,9 +330,9 @@ public class DiscordRequester {
      * @param s sent data
      * @return received reply
      */
-    private String putRequestImpl(Endpoint endpoint, String s) {
+    private RestResponse putRequestImpl(Endpoint endpoint, String s) {
         if(stopped) return null;
-        waitForLimit(endpoint);
+        waitForLimit(HttpMethod.PUT, endpoint);
         logger.debug("Sending PUT request to " + endpoint.getAddress() + "; attachment: " + s);
 
         final RestRequest request = new RestRequest(HttpMethod.PUT)
@@ -274,9 +348,8 @@ public class DiscordRequester {
      * @param s sent data
      * @return future to collect the reply later
      */
-    private Future<RequestResponse> putRequestImplAsync(Endpoint endpoint, String s) {
-        if(stopped) return null;
-        waitForLimit(endpoint);
+    private CompletableFuture<RequestResponse> putRequestImplAsync(Endpoint endpoint, String s) {
+        if(stopped) return stoppedResponse();
         logger.debug("Sending asynchronous PUT request to " + endpoint.getAddress() + "; attachment: " + s);
 
         final RestRequest request = new RestRequest(HttpMethod.PUT)
@@ -291,9 +364,9 @@ public class DiscordRequester {
      * @param endpoint targeted endpoint
      * @return received reply
      */
-    private String deleteRequestImpl(Endpoint endpoint) {
+    private RestResponse deleteRequestImpl(Endpoint endpoint) {
         if(stopped) return null;
-        waitForLimit(endpoint);
+        waitForLimit(HttpMethod.DELETE, endpoint);
         logger.debug("Sending DELETE request to " + endpoint.getAddress());
 
         final RestRequest request = new RestRequest(HttpMethod.DELETE)
@@ -307,9 +380,8 @@ public class DiscordRequester {
      * @param endpoint targeted endpoint
      * @return future to collect the reply later
      */
-    private Future<RequestResponse> deleteRequestImplAsync(Endpoint endpoint) {
-        if(stopped) return null;
-        waitForLimit(endpoint);
+    private CompletableFuture<RequestResponse> deleteRequestImplAsync(Endpoint endpoint) {
+        if(stopped) return stoppedResponse();
         logger.debug("Sending asynchronous DELETE request to " + endpoint.getAddress());
 
         final RestRequest request = new RestRequest(HttpMethod.DELETE)
@@ -324,8 +396,8 @@ public class DiscordRequester {
      * @return response in a JSON object
      */
     public JSONObject getRequestAsObject(Endpoint endpoint) {
-        String response = getRequestImpl(endpoint);
-        return response == null ? null : new JSONObject(response);
+        final RestResponse response = getRequestImpl(endpoint);
+        return response == null ? null : response.getBodyAsObject();
     }
 
     /**
@@ -334,8 +406,8 @@ public class DiscordRequester {
      * @return response in a JSON array
      */
     public JSONArray getRequestAsArray(Endpoint endpoint) {
-        String response = getRequestImpl(endpoint);
-        return response == null ? null : new JSONArray(response);
+        final RestResponse response = getRequestImpl(endpoint);
+        return response == null ? null : response.getBodyAsArray();
     }
 
     /**
@@ -370,8 +442,8 @@ public class DiscordRequester {
      * @return received reply
      */
     public JSONObject postRequestAsObject(Endpoint endpoint) {
-        String response = postRequestImpl(endpoint, null);
-        return response == null ? null : new JSONObject(response);
+        final RestResponse response = postRequestImpl(endpoint, null);
+        return response == null ? null : response.getBodyAsObject();
     }
 
     /**
@@ -381,8 +453,8 @@ public class DiscordRequester {
      * @return received reply
      */
     public JSONObject postRequestAsObject(Endpoint endpoint, JSONObject object) {
-        String response = postRequestImpl(endpoint,  object.toString());
-        return response == null ? null : new JSONObject(response);
+        final RestResponse response = postRequestImpl(endpoint, object.toString());
+        return response == null ? null : response.getBodyAsObject();
     }
 
     /**
@@ -400,7 +472,7 @@ public class DiscordRequester {
      * @param endpoint targeted endpoint.
      * @return future to check for potential problems
      */
-    public Future<RequestResponse> postRequestAsync(Endpoint endpoint) {
+    public CompletableFuture<RequestResponse> postRequestAsync(Endpoint endpoint) {
         return postRequestImplAsync(endpoint, null);
     }
 
@@ -410,7 +482,7 @@ public class DiscordRequester {
      * @param object attached object
      * @return future to check for potential problems
      */
-    public Future<RequestResponse> postRequestAsync(Endpoint endpoint, JSONObject object) {
+    public CompletableFuture<RequestResponse> postRequestAsync(Endpoint endpoint, JSONObject object) {
         return postRequestImplAsync(endpoint, object.toString());
     }
 
@@ -420,7 +492,7 @@ public class DiscordRequester {
      * @param object attached object
      * @return future to check for potential problems
      */
-    public Future<RequestResponse> postRequestAsync(Endpoint endpoint, MappedObject object) {
+    public CompletableFuture<RequestResponse> postRequestAsync(Endpoint endpoint, MappedObject object) {
         return postRequestAsync(endpoint, serializer.serialize(object));
     }
 
@@ -448,7 +520,7 @@ public class DiscordRequester {
      * @param object attached object
      * @return future to check for potential problems
      */
-    public Future<RequestResponse> patchRequestAsync(Endpoint endpoint, JSONObject object) {
+    public CompletableFuture<RequestResponse> patchRequestAsync(Endpoint endpoint, JSONObject object) {
         return patchRequestImplAsync(endpoint, object.toString());
     }
 
@@ -458,7 +530,7 @@ public class DiscordRequester {
      * @param object attached object
      * @return future to check for potential problems
      */
-    public Future<RequestResponse> patchRequestAsync(Endpoint endpoint, MappedObject object) {
+    public CompletableFuture<RequestResponse> patchRequestAsync(Endpoint endpoint, MappedObject object) {
         return patchRequestAsync(endpoint, serializer.serialize(object));
     }
 
@@ -493,7 +565,7 @@ public class DiscordRequester {
      * @param endpoint targeted endpoint.
      * @return future to check for potential problems
      */
-    public Future<RequestResponse> putRequestAsync(Endpoint endpoint) {
+    public CompletableFuture<RequestResponse> putRequestAsync(Endpoint endpoint) {
         return putRequestImplAsync(endpoint, null);
     }
 
@@ -503,7 +575,7 @@ public class DiscordRequester {
      * @param object attached object
      * @return future to check for potential problems
      */
-    public Future<RequestResponse> putRequestAsync(Endpoint endpoint, JSONObject object) {
+    public CompletableFuture<RequestResponse> putRequestAsync(Endpoint endpoint, JSONObject object) {
         return putRequestImplAsync(endpoint, object.toString());
     }
 
@@ -513,7 +585,7 @@ public class DiscordRequester {
      * @param object attached object
      * @return future to check for potential problems
      */
-    public Future<RequestResponse> putRequestAsync(Endpoint endpoint, MappedObject object) {
+    public CompletableFuture<RequestResponse> putRequestAsync(Endpoint endpoint, MappedObject object) {
         return putRequestAsync(endpoint, serializer.serialize(object));
     }
 
@@ -530,7 +602,7 @@ public class DiscordRequester {
      * @param endpoint targeted endpoint.
      * @return future to check for potential problems
      */
-    public Future<RequestResponse> deleteRequestAsync(Endpoint endpoint) {
+    public CompletableFuture<RequestResponse> deleteRequestAsync(Endpoint endpoint) {
         return deleteRequestImplAsync(endpoint);
     }
 }
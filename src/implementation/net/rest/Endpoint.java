@@ -8,6 +8,7 @@ import java.util.*;
 public class Endpoint {
     private static final String ADDR_BASE = "https://discordapp.com/api";
     private static final String ADDR_GATEWAY = ADDR_BASE + "/gateway";
+    private static final String ADDR_GATEWAY_BOT = ADDR_GATEWAY + "/bot";
     private static final String ADDR_CHANNEL = ADDR_BASE + "/channels";
     private static final String ADDR_SERVER = ADDR_BASE + "/guilds";
     private static final String ADDR_USER = ADDR_BASE + "/users";
@@ -15,6 +16,7 @@ public class Endpoint {
 
     public static final Endpoint BASE = new Endpoint(Collections.singletonList(ADDR_BASE));
     public static final Endpoint GATEWAY = new Endpoint(Collections.singletonList(ADDR_GATEWAY));
+    public static final Endpoint GATEWAY_BOT = new Endpoint(Collections.singletonList(ADDR_GATEWAY_BOT));
     public static final Endpoint CHANNEL = new Endpoint(Collections.singletonList(ADDR_CHANNEL));
     public static final Endpoint SERVER = new Endpoint(Collections.singletonList(ADDR_SERVER));
     public static final Endpoint USER = new Endpoint(Collections.singletonList(ADDR_USER));
@@ -24,6 +26,7 @@ public class Endpoint {
     private final String address;
     private final String suffix;
     private final String tail;
+    private final String route;
     private List<String> elements;
     private Map<String, String> params;
 
@@ -49,6 +52,7 @@ public class Endpoint {
             sb.append(elements.get(i));
         }
         this.suffix = sb.toString();
+        this.route = createRoute(elements);
 
         this.params = params == null ? new HashMap<>() : params;
         if(params != null) {
@@ -70,6 +74,44 @@ public class Endpoint {
         this.address = ab.toString();
     }
 
+    /**
+     * <p>Creates a route template of the endpoint, which is the address relative to the API base with all ids
+     * replaced by placeholders, e.g. {@code /channels/{id}/messages/{id}}.</p>
+     * <p>Discord shares the rate limits between the requests to the same route.</p>
+     * @param elements parts of the endpoint address
+     * @return route template
+     */
+    private static String createRoute(List<String> elements) {
+        final StringBuilder rb = new StringBuilder(elements.get(0).substring(ADDR_BASE.length()));
+        for(int i = 1; i < elements.size(); ++i) {
+            final String element = elements.get(i);
+            rb.append('/');
+            if(i > 1 && elements.get(i - 1).equals("reactions")) {
+                rb.append("{emoji}");
+            }
+            else if(isId(element)) {
+                rb.append("{id}");
+            }
+            else {
+                rb.append(element);
+            }
+        }
+        return rb.toString();
+    }
+
+    /**
+     * Checks if an element of the address is an id (a snowflake).
+     * @param element checked element
+     * @return true if the element consists only of digits
+     */
+    private static boolean isId(String element) {
+        if(element.isEmpty()) return false;
+        for(int i = 0; i < element.length(); ++i) {
+            if(!Character.isDigit(element.charAt(i))) return false;
+        }
+        return true;
+    }
+
     /**
      * Gets full endpoint address.
      * @return full endpoint address
@@ -112,6 +154,26 @@ public class Endpoint {
         return base;
     }
 
+    /**
+     * Gets the route template of the endpoint, which has all ids replaced by placeholders.
+     * @return route template
+     */
+    public String getRoute() {
+        return route;
+    }
+
+    /**
+     * <p>Gets the major parameter of the endpoint. This is the channel or server id the endpoint targets.</p>
+     * <p>Requests with different major parameters never share a rate limit.</p>
+     * @return major parameter, or an empty string if the endpoint has none
+     */
+    public String getMajorParameter() {
+        if((isChannel() || isServer()) && elements.size() > 1) {
+            return elements.get(1);
+        }
+        return "";
+    }
+
     /**
      * Gets the tail of the address. The tail are concatenated parameters, joined with &.
      * @return address tail
@@ -1,5 +1,8 @@
 package cz.salmelu.discord.implementation.net.rest;
 
-enum HttpMethod {
+/**
+ * HTTP methods used by the REST requests.
+ */
+public enum HttpMethod {
     GET, POST, PATCH, PUT, DELETE
 }
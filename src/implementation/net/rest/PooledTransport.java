@@ -0,0 +1,220 @@
+package cz.salmelu.discord.implementation.net.rest;
+
+import cz.salmelu.discord.DiscordRequestException;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * <p>The default transport, using a blocking client for synchronous requests and a non-blocking client
+ * for asynchronous requests.</p>
+ * <p>Each of the clients has its own connection pool, with up to 20 connections per host.</p>
+ * <p>The asynchronous futures are completed on separate callback threads, never on the I/O threads
+ * of the non-blocking client.</p>
+ */
+class PooledTransport implements RestTransport {
+
+    private final CloseableHttpClient restClient;
+    private final CloseableHttpAsyncClient asyncRestClient;
+    private final Thread monitor;
+    private final Thread asyncMonitor;
+    private final ExecutorService callbackExecutor = createCallbackExecutor();
+
+    PooledTransport() {
+        final RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(10000)
+                .setConnectionRequestTimeout(60000)
+                .setSocketTimeout(60000)
+                .build();
+
+        final PoolingHttpClientConnectionManager syncConnectionManager = new PoolingHttpClientConnectionManager();
+        syncConnectionManager.setMaxTotal(200);
+        syncConnectionManager.setDefaultMaxPerRoute(20);
+
+        // Runs in loop and closes dead connections
+        monitor = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        synchronized (this) {
+                            wait(10000);
+                            syncConnectionManager.closeExpiredConnections();
+                            syncConnectionManager.closeIdleConnections(60, TimeUnit.SECONDS);
+                        }
+                    }
+                }
+                catch (InterruptedException e) {
+                    // We are done;
+                }
+            }
+        };
+
+        // Initialize synchronous client
+        restClient = HttpClientBuilder.create()
+                .setDefaultRequestConfig(config)
+                .setConnectionManager(syncConnectionManager)
+                .build();
+        monitor.start();
+
+        // Now for the asynchronous
+        DefaultConnectingIOReactor ioReactor;
+        PoolingNHttpClientConnectionManager asyncConnectionManager;
+        try {
+            ioReactor = new DefaultConnectingIOReactor();
+            asyncConnectionManager = new PoolingNHttpClientConnectionManager(ioReactor);
+            asyncConnectionManager.setMaxTotal(200);
+            asyncConnectionManager.setDefaultMaxPerRoute(20);
+        }
+        catch (IOReactorException e) {
+            throw new RuntimeException(e);
+        }
+
+        asyncMonitor = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        synchronized (this) {
+                            wait(10000);
+                            // Close expired connections
+                            asyncConnectionManager.closeExpiredConnections();
+                            // Optionally, close connections
+                            // that have been idle longer than 30 sec
+                            asyncConnectionManager.closeIdleConnections(60, TimeUnit.SECONDS);
+                        }
+                    }
+                } catch (InterruptedException ex) {
+                    // terminate
+                }
+            }
+        };
+
+		asyncRestClient = HttpAsyncClientBuilder.create().setDefaultRequestConfig(config)
+                .setConnectionManager(asyncConnectionManager).build();
+    }
+
+    private void startAsyncClient() {
+        asyncRestClient.start();
+        asyncMonitor.start();
+    }
+
+    @Override
+    public void shutdown() throws IOException {
+        restClient.close();
+        monitor.interrupt();
+        asyncRestClient.close();
+        asyncMonitor.interrupt();
+        callbackExecutor.shutdown();
+    }
+
+    @Override
+    public RestResponse execute(RestRequest request) {
+        HttpResponse response;
+        final HttpRequestBase finalRequest = request.getFinalRequest();
+
+        try {
+            response = restClient.execute(finalRequest);
+            final RestResponse restResponse = new RestResponse(response);
+            // The body has to be read before the connection is released
+            restResponse.getBody();
+            return restResponse;
+        }
+        catch (IOException e) {
+            throw new DiscordRequestException("Unable to connect to Discord servers: " + e.getMessage(), 502);
+        }
+        finally {
+            finalRequest.releaseConnection();
+        }
+    }
+
+    @Override
+    public CompletableFuture<RestResponse> executeAsync(RestRequest request) {
+        final HttpRequestBase finalRequest = request.getFinalRequestAsync();
+        synchronized (asyncRestClient) {
+            if(!asyncRestClient.isRunning()) startAsyncClient();
+        }
+        final CompletableFuture<RestResponse> result = new CompletableFuture<>();
+        asyncRestClient.execute(finalRequest, createCallback(result, callbackExecutor));
+        return result;
+    }
+
+    /**
+     * Creates a pool of daemon threads completing the asynchronous futures.
+     * @return created pool
+     */
+    static ExecutorService createCallbackExecutor() {
+        final AtomicInteger counter = new AtomicInteger();
+        return Executors.newCachedThreadPool(runnable -> {
+            final Thread thread = new Thread(runnable, "RestCallback-" + counter.getAndIncrement());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * <p>Creates a callback completing the future with the response.</p>
+     * <p>The callback is called on an I/O thread of the non-blocking client. The future is completed on
+     * the given executor instead, because its dependent actions may send synchronous requests, which
+     * would otherwise block the I/O thread they wait for.</p>
+     * @param result completed future
+     * @param completions executor completing the future
+     * @return created callback
+     */
+    static FutureCallback<HttpResponse> createCallback(CompletableFuture<RestResponse> result, Executor completions) {
+        return new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse httpResponse) {
+                try {
+                    final RestResponse response = new RestResponse(httpResponse);
+                    completions.execute(() -> result.complete(response));
+                }
+                catch (RuntimeException e) {
+                    fail(e);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                fail(e);
+            }
+
+            @Override
+            public void cancelled() {
+                try {
+                    completions.execute(() -> result.cancel(false));
+                }
+                catch (RuntimeException e) {
+                    result.cancel(false);
+                }
+            }
+
+            private void fail(Exception e) {
+                try {
+                    completions.execute(() -> result.completeExceptionally(e));
+                }
+                catch (RuntimeException rejected) {
+                    // The transport is shutting down, nobody can block on this thread anymore
+                    result.completeExceptionally(e);
+                }
+            }
+        };
+    }
+}
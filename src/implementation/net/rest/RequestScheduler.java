@@ -0,0 +1,161 @@
+package cz.salmelu.discord.implementation.net.rest;
+
+import cz.salmelu.discord.DiscordRequestException;
+import cz.salmelu.discord.implementation.net.RateLimiter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * <p>Releases REST requests according to the rate limits.</p>
+ * <p>Requests waiting for a rate limit are parked in a queue of their bucket and released in the order they came,
+ * once the bucket resets. The releases are planned by a single scheduler thread, so no thread needs to sleep
+ * while waiting for a limit.</p>
+ */
+class RequestScheduler {
+
+    /**
+     * A request waiting for its rate limit.
+     */
+    private static final class PendingRequest {
+        final HttpMethod method;
+        final Endpoint endpoint;
+        final CompletableFuture<Void> permit = new CompletableFuture<>();
+
+        PendingRequest(HttpMethod method, Endpoint endpoint) {
+            this.method = method;
+            this.endpoint = endpoint;
+        }
+    }
+
+    /**
+     * Requests waiting for the same bucket.
+     */
+    private static final class BucketQueue {
+        final Deque<PendingRequest> pending = new ArrayDeque<>();
+        /** true if someone is already releasing the requests of this queue */
+        boolean draining = false;
+        /** true if the queue was removed from the map and must not be used anymore */
+        boolean removed = false;
+    }
+
+    private final RateLimiter limiter;
+    private final ScheduledExecutorService executor;
+    private final Map<String, BucketQueue> queues = new ConcurrentHashMap<>();
+    /** Set when the scheduler is stopped, no more requests are accepted then */
+    private volatile boolean stopped = false;
+    private final Logger logger = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    RequestScheduler(RateLimiter limiter) {
+        this.limiter = limiter;
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            final Thread thread = new Thread(runnable, "RestScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * <p>Requests a permission to send a request.</p>
+     * <p>If the rate limits allow it, the returned future is already completed.
+     * Otherwise, it completes once the request can be sent.</p>
+     * <p>If the scheduler is stopped, the returned future fails.</p>
+     * @param method request method
+     * @param endpoint targeted endpoint
+     * @return future completed when the request can be sent
+     */
+    CompletableFuture<Void> acquire(HttpMethod method, Endpoint endpoint) {
+        final PendingRequest request = new PendingRequest(method, endpoint);
+        if(stopped) {
+            request.permit.completeExceptionally(createStoppedException());
+            return request.permit;
+        }
+        final String key = limiter.getBucketKey(method, endpoint);
+        BucketQueue queue;
+        while(true) {
+            queue = queues.computeIfAbsent(key, k -> new BucketQueue());
+            synchronized (queue) {
+                if(stopped) {
+                    request.permit.completeExceptionally(createStoppedException());
+                    return request.permit;
+                }
+                if(queue.removed) continue;
+                queue.pending.add(request);
+                if(queue.draining) {
+                    // Someone else releases the queue
+                    return request.permit;
+                }
+                queue.draining = true;
+                break;
+            }
+        }
+        drain(key, queue);
+        return request.permit;
+    }
+
+    /**
+     * Releases waiting requests of a queue, until the queue is empty or the bucket runs out of requests.
+     * In the latter case, another release is planned to the time the bucket resets.
+     * @param key bucket key
+     * @param queue drained queue
+     */
+    private void drain(String key, BucketQueue queue) {
+        while(true) {
+            final PendingRequest request;
+            synchronized (queue) {
+                request = queue.pending.peekFirst();
+                if(request == null) {
+                    queue.draining = false;
+                    queue.removed = true;
+                    queues.remove(key, queue);
+                    return;
+                }
+            }
+
+            final long waitFor = limiter.checkLimit(request.method, request.endpoint);
+            if(waitFor > 0) {
+                logger.info("Request to endpoint " + request.endpoint.getAddress() + " is being rate limited, " +
+                        "waiting for " + waitFor + " milliseconds.");
+                try {
+                    executor.schedule(() -> drain(key, queue), waitFor, TimeUnit.MILLISECONDS);
+                }
+                catch (RejectedExecutionException e) {
+                    // Stopped, the waiting requests were already cancelled
+                }
+                return;
+            }
+
+            synchronized (queue) {
+                queue.pending.pollFirst();
+            }
+            request.permit.complete(null);
+        }
+    }
+
+    /**
+     * Stops the scheduler. All requests still waiting for a rate limit fail.
+     */
+    void stop() {
+        stopped = true;
+        executor.shutdownNow();
+        final DiscordRequestException exception = createStoppedException();
+        queues.forEach((key, queue) -> {
+            synchronized (queue) {
+                queue.pending.forEach(request -> request.permit.completeExceptionally(exception));
+                queue.pending.clear();
+                // Its planned release was cancelled with the executor
+                queue.draining = false;
+                queue.removed = true;
+                queues.remove(key, queue);
+            }
+        });
+    }
+
+    private DiscordRequestException createStoppedException() {
+        return new DiscordRequestException("The requester was stopped.", 503);
+    }
+}
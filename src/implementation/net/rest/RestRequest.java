@@ -34,6 +34,14 @@ class RestRequest {
         this.method = method;
     }
 
+    /**
+     * Gets the HTTP method of the request.
+     * @return used HTTP method
+     */
+    HttpMethod getMethod() {
+        return method;
+    }
+
     /**
      * Sets the endpoint of the request.
      * @param endpoint set endpoint
@@ -5,36 +5,53 @@ import org.apache.http.Header;
 import org.apache.http.HttpEntity;
 import org.apache.http.HttpResponse;
 import org.apache.http.StatusLine;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
 
-import java.io.ByteArrayOutputStream;
+import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
 /**
- * A response given by the Discord server to previously sent request.
+ * <p>A response given by the Discord server to previously sent request.</p>
+ * <p>Status and headers are available right away, so the rate limits can be updated without touching the body.
+ * The body is decoded at most once, when it's first requested, and the decoded value is shared by everyone
+ * reading it. JSON bodies are parsed directly from the decoded stream, without copying them
+ * into a byte array and a string first.</p>
  */
 class RestResponse {
 
-    private String responseBody;
     private final int statusCode;
     private final String statusText;
-    private final HashMap<String, List<String>> headers = new HashMap<>();
+    /** Header names are case insensitive */
+    private final Map<String, List<String>> headers = new TreeMap<>(String.CASE_INSENSITIVE_ORDER);
+    /** Entity with the body, cleared once the body is decoded */
+    private HttpEntity entity;
+    private Object body = null;
 
     private static final Pattern charsetPattern = Pattern.compile("(?i)\\bcharset=\\s*\"?([^\\s;\"]*)");
 
     /**
-     * Converts HTTP response into Rest response and extracts relevant data and request body.
+     * Converts HTTP response into Rest response and extracts the status and headers.
+     * The body is left in the entity until it's needed.
      * @param response received response
      */
     RestResponse(HttpResponse response) {
-        final HttpEntity entity = response.getEntity();
+        this.entity = response.getEntity();
 
         // Save the headers
         for (Header header : response.getAllHeaders()) {
@@ -47,35 +64,6 @@ class RestResponse {
         final StatusLine statusLine = response.getStatusLine();
         this.statusCode = statusLine.getStatusCode();
         this.statusText = statusLine.getReasonPhrase();
-
-        // Process body if there was any
-        if(entity != null) {
-            String charset = "UTF-8";
-
-            Header contentType = entity.getContentType();
-            if (contentType != null) {
-                String responseCharset = getCharset(contentType.getValue());
-                if (responseCharset != null && !responseCharset.trim().equals("")) {
-                    charset = responseCharset;
-                }
-            }
-
-            try {
-                byte[] rawBody;
-                InputStream responseInputStream = entity.getContent();
-                if (isGzipped(entity.getContentEncoding())) {
-                    responseInputStream = new GZIPInputStream(entity.getContent());
-                }
-                rawBody = getBytes(responseInputStream);
-                responseBody = new String(rawBody, charset);
-            }
-            catch (IOException e) {
-                throw new DiscordRequestException("Couldn't process response from the server.", 400);
-            }
-        }
-        else {
-            responseBody = null;
-        }
     }
 
     private static String getCharset(String contentType) {
@@ -92,26 +80,98 @@ class RestResponse {
         return value != null && value.toLowerCase().trim().equals("gzip");
     }
 
-    private static byte[] getBytes(InputStream is) throws IOException {
-        ByteArrayOutputStream bufferStream = new ByteArrayOutputStream();
+    /**
+     * Decodes the body from the entity. JSON objects and arrays are parsed while the body is being read,
+     * other bodies are kept as text.
+     * @param entity entity with the body
+     * @return parsed JSON value, text of the body, or null if the body is empty
+     * @throws IOException if the body can't be read
+     */
+    private static Object decode(HttpEntity entity) throws IOException {
+        Charset charset = StandardCharsets.UTF_8;
+        final Header contentType = entity.getContentType();
+        if (contentType != null) {
+            final String responseCharset = getCharset(contentType.getValue());
+            if (responseCharset != null && !responseCharset.trim().equals("")) {
+                try {
+                    charset = Charset.forName(responseCharset);
+                }
+                catch (IllegalArgumentException e) {
+                    throw new IOException("Unsupported charset " + responseCharset, e);
+                }
+            }
+        }
 
-        int read;
-        byte[] buffer = new byte[1024];
+        InputStream responseInputStream = entity.getContent();
+        if (isGzipped(entity.getContentEncoding())) {
+            responseInputStream = new GZIPInputStream(responseInputStream);
+        }
+        try (Reader reader = new BufferedReader(new InputStreamReader(responseInputStream, charset))) {
+            // Find the first meaningful character to see what the body contains
+            int first;
+            do {
+                reader.mark(1);
+                first = reader.read();
+            } while (first != -1 && Character.isWhitespace(first));
+            if (first == -1) return null;
+            reader.reset();
+
+            if (first == '{' || first == '[') {
+                return new JSONTokener(reader).nextValue();
+            }
+            final StringBuilder builder = new StringBuilder();
+            final char[] buffer = new char[1024];
+            int read;
+            while ((read = reader.read(buffer, 0, buffer.length)) != -1) {
+                builder.append(buffer, 0, read);
+            }
+            return builder.toString();
+        }
+    }
 
-        while ((read = is.read(buffer, 0, buffer.length)) != -1) {
-            bufferStream.write(buffer, 0, read);
+    /**
+     * <p>Gets the decoded HTTP response body. The body is read when this is called for the first time,
+     * later calls return the same value.</p>
+     * <p>Synchronous requests must read the body before their connection is released.</p>
+     * @return {@link JSONObject} or {@link JSONArray} for JSON bodies, string for other bodies,
+     * or null if there was no body
+     * @throws DiscordRequestException if the body couldn't be read
+     */
+    synchronized Object getBody() {
+        if (entity != null) {
+            try {
+                body = decode(entity);
+            }
+            catch (IOException e) {
+                throw new DiscordRequestException("Couldn't process response from the server.", 400);
+            }
+            finally {
+                entity = null;
+            }
         }
+        return body;
+    }
 
-        bufferStream.flush();
-        return bufferStream.toByteArray();
+    /**
+     * Gets the body as a JSON object.
+     * @return JSON object, or null if there was no body
+     * @throws JSONException if the body is not a JSON object
+     */
+    JSONObject getBodyAsObject() {
+        final Object value = getBody();
+        if (value == null || value instanceof JSONObject) return (JSONObject) value;
+        throw new JSONException("The response body is not a JSON object.");
     }
 
     /**
-     * Gets parsed HTTP response body.
-     * @return HTTP body
+     * Gets the body as a JSON array.
+     * @return JSON array, or null if there was no body
+     * @throws JSONException if the body is not a JSON array
      */
-    String getResponseBody() {
-        return responseBody;
+    JSONArray getBodyAsArray() {
+        final Object value = getBody();
+        if (value == null || value instanceof JSONArray) return (JSONArray) value;
+        throw new JSONException("The response body is not a JSON array.");
     }
 
     /**
@@ -165,6 +225,9 @@ class RestResponse {
      * @return matching {@link cz.salmelu.discord.RequestResponse}
      */
     RequestResponseImpl toRequestResponse() {
+        if(statusCode >= 300) {
+            return new RequestResponseImpl(new DiscordRequestException(statusText, statusCode));
+        }
         return new RequestResponseImpl(statusCode, statusText);
     }
 }
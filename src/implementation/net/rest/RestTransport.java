@@ -0,0 +1,35 @@
+package cz.salmelu.discord.implementation.net.rest;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * <p>Sends HTTP requests over the network and receives the responses.</p>
+ * <p>The transport knows nothing about Discord, it only delivers the requests to their URLs.
+ * Rate limits and errors are handled by {@link RestRequestSender} and {@link DiscordRequester},
+ * so a transport can be tested against any local HTTP server.</p>
+ */
+interface RestTransport {
+
+    /**
+     * Sends the request and waits for the response. The body of the response must be readable
+     * after this returns.
+     * @param request sent request
+     * @return received response
+     * @throws cz.salmelu.discord.DiscordRequestException if the server couldn't be reached
+     */
+    RestResponse execute(RestRequest request);
+
+    /**
+     * Sends the request without blocking the caller.
+     * @param request sent request
+     * @return future completed with the received response, or exceptionally if the server couldn't be reached
+     */
+    CompletableFuture<RestResponse> executeAsync(RestRequest request);
+
+    /**
+     * Closes all connections and stops the threads of the transport.
+     * @throws IOException if the connections couldn't be closed
+     */
+    void shutdown() throws IOException;
+}
@@ -0,0 +1,144 @@
+package cz.salmelu.discord.implementation.net.rest;
+
+import cz.salmelu.discord.DiscordRequestException;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpRequestBase;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClientBuilder;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.nio.reactor.IOReactorException;
+
+import java.io.IOException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * <p>A transport sending all the requests over a few long living connections.</p>
+ * <p>Synchronous and asynchronous requests share a single non-blocking client with a small connection pool.
+ * Requests above the amount of connections wait for a connection to be free, instead of opening new ones,
+ * so bursts of requests don't pay for new connections and TLS handshakes.
+ * The connections are kept open while they are used. They are plain HTTP/1.1 keep-alive connections,
+ * each carrying a single request at a time.</p>
+ * <p>The futures are completed on separate callback threads, so a synchronous request sent from a dependent
+ * action doesn't block the I/O thread it waits for. Synchronous requests give up after {@link #EXECUTE_TIMEOUT}
+ * milliseconds, even if the client never completes them. Cancelling a future aborts its request
+ * and releases the connection.</p>
+ */
+class SharedTransport implements RestTransport {
+
+    private static final int CONNECT_TIMEOUT = 10000;
+    private static final int CONNECTION_REQUEST_TIMEOUT = 60000;
+    private static final int SOCKET_TIMEOUT = 60000;
+    /** Longest time in milliseconds a synchronous request waits for its response */
+    static final long EXECUTE_TIMEOUT = CONNECT_TIMEOUT + CONNECTION_REQUEST_TIMEOUT + SOCKET_TIMEOUT + 10000;
+
+    private final CloseableHttpAsyncClient client;
+    private final Thread monitor;
+    private final ExecutorService callbackExecutor = PooledTransport.createCallbackExecutor();
+
+    /**
+     * Creates the transport and starts its client.
+     * @param connections maximum amount of open connections
+     */
+    SharedTransport(int connections) {
+        if(connections < 1) {
+            throw new IllegalArgumentException("At least one connection is needed.");
+        }
+        final RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(CONNECT_TIMEOUT)
+                .setConnectionRequestTimeout(CONNECTION_REQUEST_TIMEOUT)
+                .setSocketTimeout(SOCKET_TIMEOUT)
+                .build();
+
+        final PoolingNHttpClientConnectionManager connectionManager;
+        try {
+            connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor());
+            connectionManager.setMaxTotal(connections);
+            connectionManager.setDefaultMaxPerRoute(connections);
+        }
+        catch (IOReactorException e) {
+            throw new RuntimeException(e);
+        }
+
+        // Closes the connections the server won't keep alive anymore
+        monitor = new Thread("SharedTransportMonitor") {
+            @Override
+            public void run() {
+                try {
+                    while (!Thread.currentThread().isInterrupted()) {
+                        synchronized (this) {
+                            wait(10000);
+                            connectionManager.closeExpiredConnections();
+                            connectionManager.closeIdleConnections(5, TimeUnit.MINUTES);
+                        }
+                    }
+                }
+                catch (InterruptedException e) {
+                    // We are done
+                }
+            }
+        };
+        monitor.setDaemon(true);
+
+        client = HttpAsyncClientBuilder.create()
+                .setDefaultRequestConfig(config)
+                .setConnectionManager(connectionManager)
+                .build();
+        client.start();
+        monitor.start();
+    }
+
+    @Override
+    public RestResponse execute(RestRequest request) {
+        final CompletableFuture<RestResponse> future = executeAsync(request);
+        try {
+            return future.get(EXECUTE_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+        catch (ExecutionException e) {
+            final Throwable cause = e.getCause();
+            if(cause instanceof DiscordRequestException) {
+                throw (DiscordRequestException) cause;
+            }
+            if(cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new DiscordRequestException("Unable to connect to Discord servers: " + cause.getMessage(), 502);
+        }
+        catch (TimeoutException e) {
+            future.cancel(false);
+            throw new DiscordRequestException("The request timed out.", 504);
+        }
+        catch (InterruptedException e) {
+            future.cancel(false);
+            Thread.currentThread().interrupt();
+            throw new DiscordRequestException("Interrupted while waiting for the response.", 502);
+        }
+        catch (CancellationException e) {
+            throw new DiscordRequestException("The request was cancelled.", 502);
+        }
+    }
+
+    @Override
+    public CompletableFuture<RestResponse> executeAsync(RestRequest request) {
+        final CompletableFuture<RestResponse> result = new CompletableFuture<>();
+        final HttpRequestBase finalRequest = request.getFinalRequestAsync();
+        client.execute(finalRequest, PooledTransport.createCallback(result, callbackExecutor));
+        // Cancelling the result aborts the exchange too, so it doesn't keep holding a connection
+        result.whenComplete((response, e) -> {
+            if(result.isCancelled()) finalRequest.abort();
+        });
+        return result;
+    }
+
+    @Override
+    public void shutdown() throws IOException {
+        client.close();
+        monitor.interrupt();
+        callbackExecutor.shutdown();
+    }
+}
@@ -18,14 +18,10 @@ import org.json.JSONObject;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayInputStream;
-import java.io.InputStreamReader;
 import java.net.URI;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.stream.Collectors;
-import java.util.zip.InflaterInputStream;
+import java.util.zip.DataFormatException;
 
 /**
  * <p>A websocket to communicate with Discord Gateway.</p>
@@ -44,14 +40,19 @@ public class DiscordWebSocket extends WebSocketAdapter {
     private final String token;
 
     private ClientImpl discord;
+    private final ShardManager shards;
+    private final int shardId;
     private WebSocketClient client;
     private Session session = null;
     private HeartbeatGenerator heartbeatGenerator = new HeartbeatGenerator(this);
     private Thread heartbeatThread = null;
 
-    private Logger logger = LoggerFactory.getLogger(getClass().getSimpleName());
+    private Logger logger;
     private DiscordWebSocketState state = DiscordWebSocketState.CREATED;
     private Serializer serializer;
+    private GatewayDecoder decoder;
+    private final boolean transportCompression;
+    private final ZlibStreamInflater inflater;
     private Dispatcher dispatcher;
     private RateLimiter limiter;
 
@@ -63,12 +64,20 @@ public class DiscordWebSocket extends WebSocketAdapter {
     private int sequenceNumber = -1;
     private String sessionId = null;
 
-    public DiscordWebSocket(ClientImpl client, String token, Serializer serializer, Dispatcher dispatcher, RateLimiter limiter) {
+    public DiscordWebSocket(ClientImpl client, String token, Serializer serializer, Dispatcher dispatcher,
+                            RateLimiter limiter, boolean transportCompression, ShardManager shards, int shardId) {
         this.discord = client;
+        this.shards = shards;
+        this.shardId = shardId;
+        this.logger = LoggerFactory.getLogger(getClass().getSimpleName()
+                + (shards.getShardCount() > 1 ? "-" + shardId : ""));
+        this.transportCompression = transportCompression;
+        this.inflater = new ZlibStreamInflater(transportCompression);
         this.token = token;
         this.dispatcher = dispatcher;
         this.limiter = limiter;
         this.serializer = serializer;
+        this.decoder = new GatewayDecoder(serializer);
 
         this.state = DiscordWebSocketState.INITIALIZED;
     }
@@ -156,6 +165,9 @@ public class DiscordWebSocket extends WebSocketAdapter {
         if(session != null) {
             session.close(1000, "Gracefully ending.");
         }
+        synchronized (inflater) {
+            inflater.close();
+        }
         logger.info("Closed connection to socket.");
     }
 
@@ -167,6 +179,22 @@ public class DiscordWebSocket extends WebSocketAdapter {
         return state;
     }
 
+    /**
+     * Gets the id of the shard using this websocket.
+     * @return shard id
+     */
+    public int getShardId() {
+        return shardId;
+    }
+
+    /**
+     * Gets the latency of the connection, measured between the last heartbeat and its acknowledgement.
+     * @return latency in milliseconds, or -1 if not known yet
+     */
+    public long getLatency() {
+        return heartbeatGenerator.getLatency();
+    }
+
     /**
      * <p>Sends a message to the Gateway. The method is synchronized therefore it prevents
      * race conditions while sending the messages.</p>
@@ -262,6 +290,10 @@ public class DiscordWebSocket extends WebSocketAdapter {
     public void onWebSocketConnect(Session session) {
         logger.info("Connection to discord gateway was successfully opened.");
         this.session = session;
+        synchronized (inflater) {
+            // New connection starts a new compression context
+            inflater.reset();
+        }
     }
 
     @Override
@@ -299,17 +331,28 @@ public class DiscordWebSocket extends WebSocketAdapter {
 
     @Override
     public void onWebSocketText(String s) {
-        try {
+        if(logger.isDebugEnabled()) {
             logger.debug("Received a message: " + s);
-            JSONObject message = new JSONObject(s);
-            int op = message.getInt("op");
+        }
+        onMessage(s);
+    }
+
+    /**
+     * Processes a single message received from the gateway.
+     * @param s received message
+     */
+    private void onMessage(String s) {
+        try {
+            final GatewayPayload message = decoder.decode(s);
 
             // Process the message depending on OP code
-            switch (op) {
+            switch (message.getOp()) {
                 case DiscordSocketMessage.DISPATCH:
-                    sequenceNumber = message.getInt("s");
-                    heartbeatGenerator.updateSequence(sequenceNumber);
-                    dispatch(message.getJSONObject("d"), message.getString("t"));
+                    if(message.getSequence() != null) {
+                        sequenceNumber = message.getSequence();
+                        heartbeatGenerator.updateSequence(sequenceNumber);
+                    }
+                    dispatch(message);
                     break;
                 case DiscordSocketMessage.HEARTBEAT:
                     heartbeatGenerator.sendHeartbeat();
@@ -318,7 +361,7 @@ public class DiscordWebSocket extends WebSocketAdapter {
                     heartbeatGenerator.heartbeatAck();
                     break;
                 case DiscordSocketMessage.HELLO:
-                    final HelloResponse event = serializer.deserialize(message.getJSONObject("d"), HelloResponse.class);
+                    final HelloResponse event = message.getData(HelloResponse.class);
                     heartbeatGenerator.setInterval(event.getHeartbeatInterval());
                     heartbeatGenerator.resume(true);
                     if (state == DiscordWebSocketState.RECONNECTING) {
@@ -337,7 +380,7 @@ public class DiscordWebSocket extends WebSocketAdapter {
                     break;
                 case DiscordSocketMessage.INVALID_SESSION:
                     logger.warn("Invalid session event received.");
-                    final boolean resumable = message.getBoolean("d");
+                    final boolean resumable = Boolean.TRUE.equals(message.getRawData());
 
                     try {
                         Thread.sleep(3500);
@@ -350,7 +393,12 @@ public class DiscordWebSocket extends WebSocketAdapter {
                         resume();
                     }
                     else {
-                        discord.purgeData();
+                        if(shards.getShardCount() > 1) {
+                            discord.purgeShardData(shardId, shards.getShardCount());
+                        }
+                        else {
+                            discord.purgeData();
+                        }
                         logger.debug("Sending identify request.");
                         state = DiscordWebSocketState.CONNECTING;
                         identify();
@@ -367,11 +415,34 @@ public class DiscordWebSocket extends WebSocketAdapter {
 
     @Override
     public void onWebSocketBinary(byte[] bytes, int offset, int len) {
-        BufferedReader reader = new BufferedReader(
-                new InputStreamReader(
-                        new InflaterInputStream(
-                                new ByteArrayInputStream(bytes, offset, len))));
-        onWebSocketText(reader.lines().collect(Collectors.joining()));
+        final String message;
+        try {
+            synchronized (inflater) {
+                message = inflater.inflate(bytes, offset, len);
+            }
+        }
+        catch (DataFormatException e) {
+            if(inflater.isStream()) {
+                // The rest of the stream can't be decompressed, reconnect and resume with a new context
+                logger.warn("Received corrupted compressed stream, reconnecting.", e);
+                final Session current = session;
+                if(current != null) {
+                    current.close(4000, "Corrupted compressed stream.");
+                }
+            }
+            else {
+                logger.warn("Received corrupted compressed message, skipping.", e);
+            }
+            return;
+        }
+        if(message == null) {
+            // Not complete yet
+            return;
+        }
+        if(logger.isDebugEnabled()) {
+            logger.debug("Received a message: " + message);
+        }
+        onMessage(message);
     }
 
     /**
@@ -436,10 +507,25 @@ public class DiscordWebSocket extends WebSocketAdapter {
         properties.set$device(LIB_NAME);
         properties.set$browser(LIB_NAME);
 
+        // Only a limited amount of shards can identify at once
+        long wait = limiter.checkIdentifyLimit(shardId);
+        while(wait > 0) {
+            logger.debug("Identify is being rate limited, waiting for " + wait + " milliseconds.");
+            try {
+                Thread.sleep(wait);
+            }
+            catch (InterruptedException ignored) {}
+            wait = limiter.checkIdentifyLimit(shardId);
+        }
+
         final IdentifyRequest request = new IdentifyRequest();
         request.setToken(token);
         request.setProperties(properties);
-        request.setCompress(true);
+        if(shards.getShardCount() > 1) {
+            request.setShard(new Integer[] {shardId, shards.getShardCount()});
+        }
+        // Transport compression already compresses everything
+        request.setCompress(!transportCompression);
         request.setLargeThreshold(250);
 
         sendMessage(DiscordSocketMessage.IDENTIFY, request);
@@ -458,46 +544,48 @@ public class DiscordWebSocket extends WebSocketAdapter {
 
     /**
      * Dispatches an event for the listeners.
-     * @param data received gateway data
-     * @param type event type
+     * @param message received gateway message
      */
-    private void dispatch(JSONObject data, String type) {
+    private void dispatch(GatewayPayload message) {
         int channelType;
+        JSONObject data;
         try {
             if (state == DiscordWebSocketState.DISCONNECTING) return;
-            switch (type) {
+            switch (message.getType()) {
                 case "READY":
                     state = DiscordWebSocketState.READY;
-                    dispatchReady(data);
+                    dispatchReady(message.getJson());
                     break;
                 case "RESUMED":
                     state = DiscordWebSocketState.READY;
                     break;
                 case "CHANNEL_CREATE":
+                    data = message.getJson();
                     channelType = data.getInt("type");
                     if(channelType == Channel.ChannelType.PRIVATE || channelType == Channel.ChannelType.PRIVATE_GROUP)
-                        dispatcher.onChannelCreate(serializer.deserialize(data, PrivateChannelObject.class));
+                        dispatcher.onChannelCreate(message.getData(PrivateChannelObject.class));
                     else
-                        dispatcher.onChannelCreate(serializer.deserialize(data, ChannelObject.class));
+                        dispatcher.onChannelCreate(message.getData(ChannelObject.class));
                     break;
                 case "CHANNEL_UPDATE":
-                    dispatcher.onChannelUpdate(serializer.deserialize(data, ChannelObject.class));
+                    dispatcher.onChannelUpdate(message.getData(ChannelObject.class));
                     break;
                 case "CHANNEL_DELETE":
+                    data = message.getJson();
                     channelType = data.getInt("type");
                     if(channelType == Channel.ChannelType.PRIVATE || channelType == Channel.ChannelType.PRIVATE_GROUP)
-                        dispatcher.onChannelDelete(serializer.deserialize(data, PrivateChannelObject.class));
+                        dispatcher.onChannelDelete(message.getData(PrivateChannelObject.class));
                     else
-                        dispatcher.onChannelDelete(serializer.deserialize(data, ChannelObject.class));
+                        dispatcher.onChannelDelete(message.getData(ChannelObject.class));
                     break;
                 case "GUILD_CREATE":
-                    dispatcher.onServerCreate(serializer.deserialize(data, ServerObject.class));
+                    dispatcher.onServerCreate(message.getData(ServerObject.class));
                     break;
                 case "GUILD_DELETE":
-                    dispatcher.onServerDelete(data.getString("id"));
+                    dispatcher.onServerDelete(message.getJson().getString("id"));
                     break;
                 case "GUILD_UPDATE":
-                    dispatcher.onServerUpdate(serializer.deserialize(data, ServerObject.class));
+                    dispatcher.onServerUpdate(message.getData(ServerObject.class));
                     break;
                 case "GUILD_BAN_ADD":
                     // Ignored
@@ -512,55 +600,55 @@ public class DiscordWebSocket extends WebSocketAdapter {
                     // Ignored
                     break;
                 case "GUILD_MEMBER_ADD":
-                    dispatcher.onServerMemberAdd(serializer.deserialize(data, ServerMemberAddResponse.class));
+                    dispatcher.onServerMemberAdd(message.getData(ServerMemberAddResponse.class));
                     break;
                 case "GUILD_MEMBER_REMOVE":
-                    dispatcher.onServerMemberRemove(serializer.deserialize(data, ServerMemberRemoveResponse.class));
+                    dispatcher.onServerMemberRemove(message.getData(ServerMemberRemoveResponse.class));
                     break;
                 case "GUILD_MEMBER_UPDATE":
-                    dispatcher.onServerMemberUpdate(serializer.deserialize(data, ServerMemberUpdateResponse.class));
+                    dispatcher.onServerMemberUpdate(message.getData(ServerMemberUpdateResponse.class));
                     break;
                 case "GUILD_MEMBERS_CHUNK":
-                    dispatcher.onServerMemberChunk(serializer.deserialize(data, ServerMemberChunkResponse.class));
+                    dispatcher.onServerMemberChunk(message.getData(ServerMemberChunkResponse.class));
                     break;
                 case "GUILD_ROLE_CREATE":
-                    dispatcher.onRoleCreate(serializer.deserialize(data, ServerRoleResponse.class));
+                    dispatcher.onRoleCreate(message.getData(ServerRoleResponse.class));
                     break;
                 case "GUILD_ROLE_UPDATE":
-                    dispatcher.onRoleUpdate(serializer.deserialize(data, ServerRoleResponse.class));
+                    dispatcher.onRoleUpdate(message.getData(ServerRoleResponse.class));
                     break;
                 case "GUILD_ROLE_DELETE":
-                    dispatcher.onRoleDelete(serializer.deserialize(data, ServerRoleDeleteResponse.class));
+                    dispatcher.onRoleDelete(message.getData(ServerRoleDeleteResponse.class));
                     break;
                 case "CHANNEL_PINS_UPDATE":
-                    dispatcher.onChannelPins(data.getString("channel_id"));
+                    dispatcher.onChannelPins(message.getJson().getString("channel_id"));
                     break;
                 case "MESSAGE_CREATE":
-                    dispatcher.onMessage(serializer.deserialize(data, MessageObject.class));
+                    dispatcher.onMessage(message.getData(MessageObject.class));
                     break;
                 case "MESSAGE_UPDATE":
-                    dispatcher.onMessageUpdate(serializer.deserialize(data, MessageObject.class));
+                    dispatcher.onMessageUpdate(message.getData(MessageObject.class));
                     break;
                 case "MESSAGE_DELETE":
-                    dispatcher.onMessageDelete(serializer.deserialize(data, MessageDeleteResponse.class));
+                    dispatcher.onMessageDelete(message.getData(MessageDeleteResponse.class));
                     break;
                 case "MESSAGE_DELETE_BULK":
-                    dispatcher.onMessageDeleteBulk(serializer.deserialize(data, MessageDeleteBulkResponse.class));
+                    dispatcher.onMessageDeleteBulk(message.getData(MessageDeleteBulkResponse.class));
                     break;
                 case "MESSAGE_REACTION_ADD":
-                    dispatcher.onReactionAdd(serializer.deserialize(data, ReactionUpdateResponse.class));
+                    dispatcher.onReactionAdd(message.getData(ReactionUpdateResponse.class));
                     break;
                 case "MESSAGE_REACTION_REMOVE":
-                    dispatcher.onReactionRemove(serializer.deserialize(data, ReactionUpdateResponse.class));
+                    dispatcher.onReactionRemove(message.getData(ReactionUpdateResponse.class));
                     break;
                 case "PRESENCE_UPDATE":
-                    dispatcher.onPresenceChange(serializer.deserialize(data, PresenceUpdateResponse.class));
+                    dispatcher.onPresenceChange(message.getData(PresenceUpdateResponse.class));
                     break;
                 case "TYPING_START":
-                    dispatcher.onTypingStart(serializer.deserialize(data, TypingStartResponse.class));
+                    dispatcher.onTypingStart(message.getData(TypingStartResponse.class));
                     break;
                 case "USER_UPDATE":
-                    dispatcher.onUserUpdate(serializer.deserialize(data, UserObject.class));
+                    dispatcher.onUserUpdate(message.getData(UserObject.class));
                     break;
                 case "VOICE_STATE_UPDATE":
                     // Ignored, we don't implement voice
@@ -608,6 +696,6 @@ public class DiscordWebSocket extends WebSocketAdapter {
             heartbeatThread.start();
         }
 
-        dispatcher.onReady(privateChannels, servers);
+        shards.shardReady(this, privateChannels, servers);
     }
 }
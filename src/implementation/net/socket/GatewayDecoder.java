@@ -0,0 +1,150 @@
+package cz.salmelu.discord.implementation.net.socket;
+
+import cz.salmelu.discord.implementation.json.reflector.Serializer;
+import cz.salmelu.discord.implementation.json.resources.ChannelObject;
+import cz.salmelu.discord.implementation.json.resources.MessageObject;
+import cz.salmelu.discord.implementation.json.resources.ServerObject;
+import cz.salmelu.discord.implementation.json.resources.UserObject;
+import cz.salmelu.discord.implementation.json.response.*;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * <p>Streaming decoder of Discord Gateway messages.</p>
+ * <p>Reads the message envelope (op code, event type and sequence number) and binds the event data
+ * straight into their target class, without building the intermediate {@link JSONObject}.
+ * Data of events the client doesn't process are skipped without being parsed.</p>
+ * <p>Discord sends the data as the last field. If they come before the event type, the decoder falls back
+ * to reading them as a JSON object, which is then bound later.</p>
+ */
+final class GatewayDecoder {
+
+    /** Events, which are bound directly into their classes */
+    private static final Map<String, Class<?>> BOUND_EVENTS = new HashMap<>();
+    /** Events, which need the data as a JSON object */
+    private static final Set<String> JSON_EVENTS = new HashSet<>();
+
+    static {
+        BOUND_EVENTS.put("CHANNEL_UPDATE", ChannelObject.class);
+        BOUND_EVENTS.put("GUILD_CREATE", ServerObject.class);
+        BOUND_EVENTS.put("GUILD_UPDATE", ServerObject.class);
+        BOUND_EVENTS.put("GUILD_MEMBER_ADD", ServerMemberAddResponse.class);
+        BOUND_EVENTS.put("GUILD_MEMBER_REMOVE", ServerMemberRemoveResponse.class);
+        BOUND_EVENTS.put("GUILD_MEMBER_UPDATE", ServerMemberUpdateResponse.class);
+        BOUND_EVENTS.put("GUILD_MEMBERS_CHUNK", ServerMemberChunkResponse.class);
+        BOUND_EVENTS.put("GUILD_ROLE_CREATE", ServerRoleResponse.class);
+        BOUND_EVENTS.put("GUILD_ROLE_UPDATE", ServerRoleResponse.class);
+        BOUND_EVENTS.put("GUILD_ROLE_DELETE", ServerRoleDeleteResponse.class);
+        BOUND_EVENTS.put("MESSAGE_CREATE", MessageObject.class);
+        BOUND_EVENTS.put("MESSAGE_UPDATE", MessageObject.class);
+        BOUND_EVENTS.put("MESSAGE_DELETE", MessageDeleteResponse.class);
+        BOUND_EVENTS.put("MESSAGE_DELETE_BULK", MessageDeleteBulkResponse.class);
+        BOUND_EVENTS.put("MESSAGE_REACTION_ADD", ReactionUpdateResponse.class);
+        BOUND_EVENTS.put("MESSAGE_REACTION_REMOVE", ReactionUpdateResponse.class);
+        BOUND_EVENTS.put("PRESENCE_UPDATE", PresenceUpdateResponse.class);
+        BOUND_EVENTS.put("TYPING_START", TypingStartResponse.class);
+        BOUND_EVENTS.put("USER_UPDATE", UserObject.class);
+
+        // Those need to check some fields first, or use the data directly
+        JSON_EVENTS.add("READY");
+        JSON_EVENTS.add("CHANNEL_CREATE");
+        JSON_EVENTS.add("CHANNEL_DELETE");
+        JSON_EVENTS.add("GUILD_DELETE");
+        JSON_EVENTS.add("CHANNEL_PINS_UPDATE");
+    }
+
+    private final Serializer serializer;
+
+    GatewayDecoder(Serializer serializer) {
+        this.serializer = serializer;
+    }
+
+    /**
+     * Decodes a single gateway message.
+     * @param message received message
+     * @return decoded message
+     */
+    GatewayPayload decode(String message) {
+        return decode(new JSONTokener(message));
+    }
+
+    /**
+     * Decodes a single gateway message from a tokener.
+     * @param tokener tokener positioned before the message
+     * @return decoded message
+     */
+    GatewayPayload decode(JSONTokener tokener) {
+        int op = -1;
+        String type = null;
+        Integer sequence = null;
+        Object data = null;
+
+        if(tokener.nextClean() != '{') {
+            throw tokener.syntaxError("A gateway message must begin with '{'");
+        }
+        if(tokener.nextClean() == '}') {
+            throw tokener.syntaxError("A gateway message must not be empty");
+        }
+        tokener.back();
+
+        char c;
+        do {
+            final String key = Serializer.readKey(tokener);
+            switch(key) {
+                case "op":
+                    op = ((Number) tokener.nextValue()).intValue();
+                    break;
+                case "t":
+                    final Object typeValue = tokener.nextValue();
+                    type = typeValue.equals(JSONObject.NULL) ? null : typeValue.toString();
+                    break;
+                case "s":
+                    final Object sequenceValue = tokener.nextValue();
+                    sequence = sequenceValue.equals(JSONObject.NULL) ? null : ((Number) sequenceValue).intValue();
+                    break;
+                case "d":
+                    data = readData(tokener, op, type);
+                    break;
+                default:
+                    Serializer.skip(tokener);
+                    break;
+            }
+            c = tokener.nextClean();
+        } while(c == ',');
+        if(c != '}') {
+            throw tokener.syntaxError("Expected a ',' or '}'");
+        }
+
+        return new GatewayPayload(serializer, op, type, sequence, data);
+    }
+
+    /**
+     * Reads the data of the message in the most efficient way possible for the already known message type.
+     * @param tokener tokener positioned before the data
+     * @param op op code, -1 if not yet known
+     * @param type event type, null if not known
+     * @return read data
+     */
+    private Object readData(JSONTokener tokener, int op, String type) {
+        if(op == DiscordSocketMessage.DISPATCH && type != null) {
+            final Class<?> bound = BOUND_EVENTS.get(type);
+            if(bound != null) {
+                return serializer.deserialize(tokener, bound);
+            }
+            if(!JSON_EVENTS.contains(type)) {
+                // Nobody is interested in those
+                Serializer.skip(tokener);
+                return null;
+            }
+        }
+        else if(op == DiscordSocketMessage.HELLO) {
+            return serializer.deserialize(tokener, HelloResponse.class);
+        }
+        return tokener.nextValue();
+    }
+}
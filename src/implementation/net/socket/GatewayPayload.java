@@ -0,0 +1,70 @@
+package cz.salmelu.discord.implementation.net.socket;
+
+import cz.salmelu.discord.implementation.json.reflector.Serializer;
+import org.json.JSONObject;
+
+/**
+ * <p>A single decoded message received from Discord Gateway.</p>
+ * <p>Depending on the event type, the data are either already bound into their Java object,
+ * kept as a {@link JSONObject} or skipped completely.</p>
+ */
+final class GatewayPayload {
+    private final Serializer serializer;
+    private final int op;
+    private final String type;
+    private final Integer sequence;
+    private final Object data;
+
+    GatewayPayload(Serializer serializer, int op, String type, Integer sequence, Object data) {
+        this.serializer = serializer;
+        this.op = op;
+        this.type = type;
+        this.sequence = sequence;
+        this.data = data;
+    }
+
+    int getOp() {
+        return op;
+    }
+
+    String getType() {
+        return type;
+    }
+
+    Integer getSequence() {
+        return sequence;
+    }
+
+    /**
+     * Gets the data as an instance of the expected class. If they were not bound while decoding,
+     * they are deserialized now.
+     * @param clazz expected class
+     * @param <T> type of the data
+     * @return event data
+     */
+    <T> T getData(Class<T> clazz) {
+        if(clazz.isInstance(data)) {
+            return clazz.cast(data);
+        }
+        return serializer.deserialize(getJson(), clazz);
+    }
+
+    /**
+     * Gets the data as a JSON object.
+     * @return event data
+     */
+    JSONObject getJson() {
+        if(!(data instanceof JSONObject)) {
+            throw new IllegalStateException("Event data were not kept as a JSON object.");
+        }
+        return (JSONObject) data;
+    }
+
+    /**
+     * Gets the data as they were read, used for simple values.
+     * @return event data, null if they were skipped
+     */
+    Object getRawData() {
+        return data;
+    }
+}
@@ -20,6 +20,8 @@ public class HeartbeatGenerator {
     private volatile boolean heartbeatReceived = true;
     private long nextTick = 0;
     private Integer sequenceNumber = null;
+    private volatile long lastHeartbeat = 0;
+    private volatile long latency = -1;
 
     private final Logger logger = LoggerFactory.getLogger(getClass().getSimpleName());
 
@@ -93,6 +95,17 @@ public class HeartbeatGenerator {
      */
     void heartbeatAck() {
         heartbeatReceived = true;
+        if(lastHeartbeat != 0) {
+            latency = System.currentTimeMillis() - lastHeartbeat;
+        }
+    }
+
+    /**
+     * Gets the time between the last heartbeat and its acknowledgement.
+     * @return latency in milliseconds, or -1 if no heartbeat was acknowledged yet
+     */
+    long getLatency() {
+        return latency;
     }
 
     /**
@@ -117,6 +130,7 @@ public class HeartbeatGenerator {
         }
 
         // Send the message and bypass some of the checks
+        lastHeartbeat = System.currentTimeMillis();
         socket.sendMessage0(beat.toString(), true);
 
         heartbeatReceived = false;
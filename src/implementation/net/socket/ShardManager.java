@@ -0,0 +1,139 @@
+package cz.salmelu.discord.implementation.net.socket;
+
+import cz.salmelu.discord.implementation.Dispatcher;
+import cz.salmelu.discord.implementation.json.reflector.Serializer;
+import cz.salmelu.discord.implementation.json.resources.PrivateChannelObject;
+import cz.salmelu.discord.implementation.json.resources.UnavailableServerObject;
+import cz.salmelu.discord.implementation.net.RateLimiter;
+import cz.salmelu.discord.implementation.resources.ClientImpl;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * <p>Manages all the gateway connections of the client.</p>
+ * <p>Discord limits the amount of servers a single connection can handle. Larger bots need to split
+ * the servers into shards, each of them using its own websocket. Every server belongs to the shard
+ * {@code (server_id >> 22) % shard_count}. All the shards pass their events to the same dispatcher.</p>
+ * <p>Without sharding, the manager holds a single connection.</p>
+ */
+public class ShardManager {
+
+    private final int shardCount;
+    private final List<DiscordWebSocket> shards;
+    private final Dispatcher dispatcher;
+    private final Logger logger = LoggerFactory.getLogger(getClass().getSimpleName());
+
+    /** Amount of shards that were ready at least once */
+    private int readyShards = 0;
+    private final boolean[] shardReady;
+
+    public ShardManager(ClientImpl client, String token, Serializer serializer, Dispatcher dispatcher,
+                        RateLimiter limiter, boolean transportCompression, int shardCount) {
+        if(shardCount < 1) {
+            throw new IllegalArgumentException("There must be at least one shard.");
+        }
+        this.shardCount = shardCount;
+        this.dispatcher = dispatcher;
+        this.shardReady = new boolean[shardCount];
+        final List<DiscordWebSocket> list = new ArrayList<>(shardCount);
+        for(int i = 0; i < shardCount; i++) {
+            list.add(new DiscordWebSocket(client, token, serializer, dispatcher, limiter, transportCompression,
+                    this, i));
+        }
+        this.shards = Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Connects all the shards to the gateway. The identify requests are spaced by the rate limiter.
+     * @param uri uri of the gateway
+     */
+    public void connect(URI uri) {
+        logger.info("Connecting " + shardCount + " shard(s) to the gateway.");
+        shards.forEach(shard -> shard.connect(uri));
+    }
+
+    /**
+     * Disconnects all the shards from the gateway.
+     */
+    public void disconnect() {
+        shards.forEach(DiscordWebSocket::disconnect);
+    }
+
+    /**
+     * Gets the amount of shards.
+     * @return shard count
+     */
+    public int getShardCount() {
+        return shardCount;
+    }
+
+    /**
+     * Gets all the shards, which can be used to check their state and latency.
+     * @return unmodifiable list of shards, ordered by their id
+     */
+    public List<DiscordWebSocket> getShards() {
+        return shards;
+    }
+
+    /**
+     * Gets a shard with given id.
+     * @param shardId shard id
+     * @return requested shard
+     */
+    public DiscordWebSocket getShard(int shardId) {
+        return shards.get(shardId);
+    }
+
+    /**
+     * Gets the shard handling given server.
+     * @param serverId server id
+     * @return shard responsible for the server
+     */
+    public DiscordWebSocket getShardForServer(String serverId) {
+        return shards.get(getShardId(serverId, shardCount));
+    }
+
+    /**
+     * Calculates which shard handles given server.
+     * @param serverId server id
+     * @param shardCount amount of shards
+     * @return shard id
+     */
+    public static int getShardId(String serverId, int shardCount) {
+        return (int) ((Long.parseLong(serverId) >> 22) % shardCount);
+    }
+
+    /**
+     * Checks if any of the shards died completely.
+     * @return true if there is a dead shard
+     */
+    public boolean isDead() {
+        return shards.stream().anyMatch(shard -> shard.getState() == DiscordWebSocketState.DEAD);
+    }
+
+    /**
+     * <p>A shard received the ready event.</p>
+     * <p>The listeners are notified only after all shards become ready for the first time.
+     * Later, every ready shard (e.g. after its session was invalidated) notifies them again.</p>
+     * @param shard ready shard
+     * @param privateChannels private channels received by the shard
+     * @param servers servers received by the shard
+     */
+    synchronized void shardReady(DiscordWebSocket shard, PrivateChannelObject[] privateChannels,
+                                 UnavailableServerObject[] servers) {
+        if(!shardReady[shard.getShardId()]) {
+            shardReady[shard.getShardId()] = true;
+            ++readyShards;
+            logger.info("Shard " + shard.getShardId() + " is ready (" + readyShards + "/" + shardCount + ").");
+            if(readyShards < shardCount) {
+                return;
+            }
+        }
+        dispatcher.onReady(privateChannels, servers);
+    }
+}
@@ -0,0 +1,136 @@
+package cz.salmelu.discord.implementation.net.socket;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * <p>Decompresses binary messages received from Discord Gateway.</p>
+ * <p>With {@code compress=zlib-stream} transport compression, the whole connection shares a single zlib context
+ * and a message may span multiple binary frames. A message is complete when the received data end with
+ * the {@code Z_SYNC_FLUSH} suffix. Without the transport compression, every binary message is
+ * a separate zlib stream.</p>
+ * <p>A single inflater and reusable buffers are kept for the whole session.</p>
+ * <p>A corrupted message can't be skipped with the transport compression, because the following messages
+ * continue the broken context. The inflater drops all the data then, until it's reset for a new connection.</p>
+ */
+final class ZlibStreamInflater {
+
+    /** Initial size of the buffers */
+    private static final int INITIAL_BUFFER = 16 * 1024;
+
+    private final boolean stream;
+    private final Inflater inflater = new Inflater();
+    private byte[] input = new byte[INITIAL_BUFFER];
+    private int inputLength = 0;
+    private byte[] output = new byte[INITIAL_BUFFER * 4];
+    /** Set when the native resources are released, the frames received afterwards are dropped */
+    private boolean closed = false;
+    /** Set when the shared context of the transport compression is corrupted, cleared by {@link #reset()} */
+    private boolean broken = false;
+
+    /**
+     * Creates a new inflater.
+     * @param stream true if the transport compression is used, false for separately compressed messages
+     */
+    ZlibStreamInflater(boolean stream) {
+        this.stream = stream;
+    }
+
+    /**
+     * Processes a received binary frame.
+     * @param bytes received data
+     * @param offset offset of the data in the array
+     * @param len length of the data
+     * @return decompressed message, or null if the message continues in the next frame, the inflater is closed
+     * or the context of the transport compression is corrupted
+     * @throws DataFormatException if the received data are corrupted
+     */
+    String inflate(byte[] bytes, int offset, int len) throws DataFormatException {
+        if(closed || broken) return null;
+        if(inputLength + len > input.length) {
+            input = Arrays.copyOf(input, Math.max(input.length * 2, inputLength + len));
+        }
+        System.arraycopy(bytes, offset, input, inputLength, len);
+        inputLength += len;
+
+        if(stream && !hasSyncFlushSuffix()) {
+            // Wait for the rest of the message
+            return null;
+        }
+
+        try {
+            inflater.setInput(input, 0, inputLength);
+            int total = 0;
+            while(true) {
+                if(total == output.length) {
+                    output = Arrays.copyOf(output, output.length * 2);
+                }
+                final int inflated = inflater.inflate(output, total, output.length - total);
+                total += inflated;
+                if(inflated == 0 && (inflater.needsInput() || inflater.finished() || inflater.needsDictionary())) {
+                    break;
+                }
+            }
+            if(!stream) {
+                // Every message is a separate zlib stream
+                inflater.reset();
+            }
+            return new String(output, 0, total, StandardCharsets.UTF_8);
+        }
+        catch (DataFormatException e) {
+            if(stream) {
+                // The following messages depend on the broken context, only a new connection can fix it
+                broken = true;
+            }
+            else {
+                inflater.reset();
+            }
+            throw e;
+        }
+        finally {
+            inputLength = 0;
+        }
+    }
+
+    /**
+     * Checks if the buffered data end with Z_SYNC_FLUSH suffix, {@code 00 00 ff ff}.
+     * @return true if the message is complete
+     */
+    private boolean hasSyncFlushSuffix() {
+        return inputLength >= 4
+                && input[inputLength - 4] == 0x00
+                && input[inputLength - 3] == 0x00
+                && input[inputLength - 2] == (byte) 0xff
+                && input[inputLength - 1] == (byte) 0xff;
+    }
+
+    /**
+     * Checks if the whole connection shares a single zlib context.
+     * @return true if the transport compression is used
+     */
+    boolean isStream() {
+        return stream;
+    }
+
+    /**
+     * Resets the zlib context. Needed when a new connection is opened.
+     */
+    void reset() {
+        if(closed) return;
+        inflater.reset();
+        inputLength = 0;
+        broken = false;
+    }
+
+    /**
+     * Releases the native resources of the inflater. Any data received afterwards are ignored.
+     */
+    void close() {
+        if(closed) return;
+        closed = true;
+        inputLength = 0;
+        inflater.end();
+    }
+}
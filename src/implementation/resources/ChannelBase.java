@@ -13,54 +13,73 @@ import org.json.JSONObject;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Map;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 public abstract class ChannelBase implements Channel {
 
     protected ClientImpl client;
-    protected final Map<String, MessageImpl> messageCache = new HashMap<>();
 
+    /**
+     * Adds a message to the client's message cache.
+     * @param message cached message
+     */
     public void cacheMessage(MessageImpl message) {
-        messageCache.put(message.getId(), message);
+        client.getMessageCache().put(getId(), message);
     }
 
+    /**
+     * Gets a message from the client's message cache without querying Discord servers.
+     * @param id message id
+     * @return cached message, or null if it is not cached
+     */
+    public MessageImpl getCachedMessage(String id) {
+        return client.getMessageCache().get(id);
+    }
+
+    /**
+     * Checks if a message is present in the client's message cache.
+     * @param id message id
+     * @return true if the message is cached
+     */
     public boolean hasCachedMessage(String id) {
-        return messageCache.containsKey(id);
+        return client.getMessageCache().contains(id);
     }
 
+    /**
+     * Removes a message from the client's message cache.
+     * @param id message id
+     */
     public void removeCachedMessage(String id) {
-        if(messageCache.containsKey(id)) messageCache.remove(id);
+        client.getMessageCache().remove(id);
     }
 
+    /**
+     * Removes all messages of this channel from the client's message cache.
+     */
     public void clearCache() {
-        messageCache.clear();
+        client.getMessageCache().clearChannel(getId());
     }
 
     abstract public void messageArrived(Message message);
 
     public ReactionImpl addReaction(ReactionUpdateResponse reaction, Emoji emoji) {
-        if(messageCache.containsKey(reaction.getMessageId())) {
-            // We only care if the message is present, otherwise the user needs to pull it whole anyway
-            MessageImpl message = messageCache.get(reaction.getMessageId());
-            return message.addReaction0(reaction, emoji);
-        }
-        return ((MessageImpl) getMessage(reaction.getMessageId())).addReaction0(reaction, emoji);
+        // If the message is not cached, the user needs to pull it whole anyway
+        final MessageImpl message = (MessageImpl) getMessage(reaction.getMessageId());
+        return message == null ? null : message.addReaction0(reaction, emoji);
     }
 
     public ReactionImpl removeReaction(ReactionUpdateResponse reaction, Emoji emoji) {
-        if(messageCache.containsKey(reaction.getMessageId())) {
-            // We only care if the message is present, otherwise the user needs to pull it whole anyway
-            MessageImpl message = messageCache.get(reaction.getMessageId());
-            return message.removeReaction0(reaction, emoji);
-        }
-        return ((MessageImpl) getMessage(reaction.getMessageId())).removeReaction0(reaction, emoji);
+        // If the message is not cached, the user needs to pull it whole anyway
+        final MessageImpl message = (MessageImpl) getMessage(reaction.getMessageId());
+        return message == null ? null : message.removeReaction0(reaction, emoji);
     }
 
     @Override
     public Message getMessage(String id) throws PermissionDeniedException {
-        if(messageCache.containsKey(id)) {
-            return messageCache.get(id);
+        final MessageImpl cached = getCachedMessage(id);
+        if(cached != null) {
+            return cached;
         }
         try {
             JSONObject rawObject = client.getRequester().getRequestAsObject(
@@ -68,7 +87,7 @@ public abstract class ChannelBase implements Channel {
                             .addElement("messages").addElement(id).build());
             MessageObject messageObject = client.getSerializer().deserialize(rawObject, MessageObject.class);
             final MessageImpl message = new MessageImpl(client, messageObject);
-            messageCache.put(message.getId(), message);
+            cacheMessage(message);
             return message;
         }
         catch (DiscordRequestException e) {
@@ -90,7 +109,7 @@ public abstract class ChannelBase implements Channel {
                 MessageObject messageObject = client.getSerializer().deserialize(rawObjects.getJSONObject(i), MessageObject.class);
                 final MessageImpl message = new MessageImpl(client, messageObject);
                 messages.add(message);
-                messageCache.put(message.getId(), message);
+                cacheMessage(message);
             }
             return messages;
         }
@@ -136,11 +155,16 @@ public abstract class ChannelBase implements Channel {
     }
 
     @Override
-    public Future<RequestResponse> triggerTyping() {
+    public CompletableFuture<RequestResponse> triggerTyping() {
         return client.getRequester().postRequestAsync(EndpointBuilder.create(Endpoint.CHANNEL)
                 .addElement(getId()).addElement("typing").build());
     }
 
+    @Override
+    public CompletionStage<RequestResponse> triggerTypingAsync() {
+        return triggerTyping();
+    }
+
     @Override
     public List<Message> getPinnedMessages() {
         final Endpoint endpoint = EndpointBuilder.create(Endpoint.CHANNEL)
@@ -158,22 +182,37 @@ public abstract class ChannelBase implements Channel {
     }
 
     @Override
-    public Future<RequestResponse> pinMessage(Message message) {
+    public CompletableFuture<RequestResponse> pinMessage(Message message) {
         final Endpoint endpoint = EndpointBuilder.create(Endpoint.CHANNEL)
                 .addElement(getId()).addElement("pins").addElement(message.getId()).build();
         return client.getRequester().putRequestAsync(endpoint);
     }
 
     @Override
-    public Future<RequestResponse> unpinMessage(Message message) {
+    public CompletionStage<RequestResponse> pinMessageAsync(Message message) {
+        return pinMessage(message);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> unpinMessage(Message message) {
         final Endpoint endpoint = EndpointBuilder.create(Endpoint.CHANNEL)
                 .addElement(getId()).addElement("pins").addElement(message.getId()).build();
         return client.getRequester().deleteRequestAsync(endpoint);
     }
 
     @Override
-    public Future<RequestResponse> deleteChannel() throws PermissionDeniedException {
+    public CompletionStage<RequestResponse> unpinMessageAsync(Message message) {
+        return unpinMessage(message);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> deleteChannel() throws PermissionDeniedException {
         final Endpoint endpoint = EndpointBuilder.create(Endpoint.CHANNEL).addElement(getId()).build();
         return client.getRequester().deleteRequestAsync(endpoint);
     }
+
+    @Override
+    public CompletionStage<RequestResponse> deleteChannelAsync() throws PermissionDeniedException {
+        return deleteChannel();
+    }
 }
@@ -7,41 +7,97 @@ import cz.salmelu.discord.implementation.json.resources.PrivateChannelObject;
 import cz.salmelu.discord.implementation.json.resources.UserObject;
 import cz.salmelu.discord.implementation.net.*;
 import cz.salmelu.discord.implementation.net.rest.*;
-import cz.salmelu.discord.implementation.net.socket.DiscordWebSocket;
-import cz.salmelu.discord.implementation.net.socket.DiscordWebSocketState;
+import cz.salmelu.discord.implementation.net.socket.ShardManager;
+import cz.salmelu.discord.implementation.util.ConcurrentLongMap;
 import cz.salmelu.discord.resources.*;
 import org.json.JSONArray;
 import org.json.JSONObject;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ClientImpl implements Client {
     private final String botToken;
     private final DiscordRequester requester;
     private final RateLimiter limiter;
     private final Serializer serializer;
-    private DiscordWebSocket socket;
-
-    private final List<Server> serverList = new ArrayList<>();
-    private final Map<String, Server> serversByName = new HashMap<>();
-    private final Map<String, Server> serversById = new HashMap<>();
-
-    private final List<ServerChannel> serverChannelList = new ArrayList<>();
-    private final List<PrivateChannel> privateChannelList = new ArrayList<>();
-    private final Map<String, Channel> channelsById = new HashMap<>();
+    private ShardManager shardManager;
+
+    /**
+     * A read-only list built from a map, valid until the map's version changes.
+     * @param <T> type of the elements
+     */
+    private static final class Snapshot<T> {
+        private final long version;
+        private final List<T> list;
+
+        private Snapshot(long version, List<T> list) {
+            this.version = version;
+            this.list = Collections.unmodifiableList(list);
+        }
+    }
 
-    private final List<User> userList = new ArrayList<>();
-    private final Map<String, User> usersById = new HashMap<>();
-    private User myUser = null;
+    /*
+     * Entity registry. The id lookups are lock free in the common case, so the dispatch lanes and module threads never block each other.
+     * Modifications are synchronized, to keep the indices consistent. The maps are the only source of truth,
+     * the lists returned by the getters are snapshots of them, built when first requested after a change.
+     * Every modification bumps the version of the map after changing it, which invalidates the snapshots.
+     */
+    private final Map<String, Server> serversByName = new ConcurrentHashMap<>();
+    private final ConcurrentLongMap<Server> serversById = new ConcurrentLongMap<>();
+    private volatile long serversVersion = 0;
+    private volatile Snapshot<Server> serverSnapshot = null;
+
+    private final ConcurrentLongMap<Channel> channelsById = new ConcurrentLongMap<>();
+    private volatile long channelsVersion = 0;
+    private volatile Snapshot<ServerChannel> serverChannelSnapshot = null;
+    private volatile Snapshot<PrivateChannel> privateChannelSnapshot = null;
+
+    private final ConcurrentLongMap<User> usersById = new ConcurrentLongMap<>();
+    /** Incremented when names of users or channels may have changed, members and roles are versioned by servers */
+    private final AtomicLong namesVersion = new AtomicLong();
+    private volatile User myUser = null;
+    private boolean transportCompression = true;
+    private int shardCount = 1;
+    private boolean lazyMembers = false;
+    private MessageCache messageCache = new MessageCache(0, 0, 0, 0);
+    /** Runs lookups which may need to ask Discord servers, so they don't block the callers */
+    private final ExecutorService lookupExecutor = Executors.newCachedThreadPool(runnable -> {
+        final Thread thread = new Thread(runnable, "Lookup");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final Logger logger = LoggerFactory.getLogger(getClass().getSimpleName());
 
     public void login(Dispatcher dispatcher) {
-        final JSONObject gatewayResponse = requester.getRequestAsObject(Endpoint.GATEWAY);
-        final String gateway = gatewayResponse.getString("url") + "?v=6&encoding=json";
+        final JSONObject gatewayResponse;
+        int shards = shardCount;
+        if(shardCount < 1) {
+            // Let Discord decide how many shards we need
+            gatewayResponse = requester.getRequestAsObject(Endpoint.GATEWAY_BOT);
+            shards = gatewayResponse.getInt("shards");
+            final JSONObject startLimit = gatewayResponse.optJSONObject("session_start_limit");
+            if(startLimit != null) {
+                limiter.setIdentifyConcurrency(startLimit.optInt("max_concurrency", 1));
+            }
+        }
+        else {
+            gatewayResponse = requester.getRequestAsObject(Endpoint.GATEWAY);
+        }
+        final String gateway = gatewayResponse.getString("url") + "?v=6&encoding=json"
+                + (transportCompression ? "&compress=zlib-stream" : "");
 
         URI uri;
         try {
@@ -52,8 +108,8 @@ public class ClientImpl implements Client {
             throw new RuntimeException(e);
         }
 
-        socket = new DiscordWebSocket(this, botToken, serializer, dispatcher, limiter);
-        socket.connect(uri);
+        shardManager = new ShardManager(this, botToken, serializer, dispatcher, limiter, transportCompression, shards);
+        shardManager.connect(uri);
     }
 
     private void verifyUser() {
@@ -71,41 +127,145 @@ public class ClientImpl implements Client {
         }
     }
 
-    public void purgeData() {
+    public synchronized void purgeData() {
         // needed when the connection invalidates, all is reloaded anyway
-        serverList.clear();
         serversByName.clear();
         serversById.clear();
+        serversVersion++;
 
-        serverChannelList.clear();
-        privateChannelList.clear();
         channelsById.clear();
+        channelsVersion++;
 
-        userList.clear();
         usersById.clear();
         myUser = null;
+
+        messageCache.clear();
+    }
+
+    /**
+     * Removes all the data belonging to a single shard, needed when the shard's session invalidates.
+     * @param shardId id of the shard
+     * @param shardCount amount of shards
+     */
+    public synchronized void purgeShardData(int shardId, int shardCount) {
+        final List<Server> purged = new ArrayList<>();
+        for(Server server : serversById.values()) {
+            if(ShardManager.getShardId(server.getId(), shardCount) == shardId) {
+                purged.add(server);
+            }
+        }
+        purged.forEach(server -> clearServer((ServerImpl) server));
     }
 
     public void logout() {
+        lookupExecutor.shutdownNow();
         requester.stop();
-        socket.disconnect();
+        shardManager.disconnect();
+        logger.info("Message cache: " + messageCache);
     }
 
     public ClientImpl(String token) {
+        this(token, DiscordRequester.Transport.POOLED, 0);
+    }
+
+    /**
+     * Creates the client and verifies its token.
+     * @param token bot's token
+     * @param transport transport used for REST requests
+     * @param connections maximum amount of REST connections, used by the shared transport
+     */
+    public ClientImpl(String token, DiscordRequester.Transport transport, int connections) {
         this.botToken = token;
         this.limiter = new RateLimiter();
         this.serializer = new Serializer();
-        this.requester = new DiscordRequester(botToken, serializer, limiter);
+        this.requester = new DiscordRequester(botToken, serializer, limiter, transport, connections);
 
         verifyUser();
     }
 
-    public DiscordWebSocket getSocket() {
-        return socket;
+    /**
+     * Sets whether the gateway connection uses zlib-stream transport compression. Must be set before login.
+     * @param transportCompression true to compress the whole gateway connection
+     */
+    public void setTransportCompression(boolean transportCompression) {
+        this.transportCompression = transportCompression;
+    }
+
+    /**
+     * Sets the amount of gateway shards. Must be set before login.
+     * @param shardCount amount of shards, or 0 to use the amount recommended by Discord
+     */
+    public void setShardCount(int shardCount) {
+        this.shardCount = shardCount;
+    }
+
+    /**
+     * Sets whether server members are created only when they are needed. Must be set before login.
+     * @param lazyMembers true to keep only compact records of the members until they are requested
+     */
+    public void setLazyMembers(boolean lazyMembers) {
+        this.lazyMembers = lazyMembers;
+    }
+
+    /**
+     * Checks whether server members are created only when they are needed.
+     * @return true if the members are loaded lazily
+     */
+    public boolean isLazyMembers() {
+        return lazyMembers;
+    }
+
+    /**
+     * Sets the limits of the message cache. Must be set before login.
+     * Any of the limits can be set to 0 to disable it.
+     * @param channelLimit maximum amount of cached messages per channel
+     * @param totalLimit maximum amount of cached messages in total
+     * @param byteLimit maximum approximate size of cached messages in bytes
+     * @param timeToLive time in milliseconds after which unused messages are evicted
+     */
+    public void setMessageCacheLimits(int channelLimit, int totalLimit, long byteLimit, long timeToLive) {
+        this.messageCache = new MessageCache(channelLimit, totalLimit, byteLimit, timeToLive);
+    }
+
+    /**
+     * Notes that the names of some users or channels changed,
+     * so that the texts with converted mentions are created again.
+     * Changes of members and roles are noted by their server, see {@link ServerImpl#namesChanged()}.
+     */
+    public void namesChanged() {
+        namesVersion.incrementAndGet();
+    }
+
+    /**
+     * Gets the version of the names, incremented with every change of them.
+     * @return names version
+     */
+    long getNamesVersion() {
+        return namesVersion.get();
+    }
+
+    /**
+     * Gets the executor for lookups, which may need to send synchronous requests.
+     * @return lookup executor
+     */
+    ExecutorService getLookupExecutor() {
+        return lookupExecutor;
+    }
+
+    /**
+     * Gets the cache of the messages received by the client.
+     * @return message cache
+     */
+    MessageCache getMessageCache() {
+        return messageCache;
+    }
+
+    public ShardManager getShardManager() {
+        return shardManager;
     }
 
     public DiscordRequester getRequester() {
-        if(socket != null && socket.getState().equals(DiscordWebSocketState.DEAD)) {
+        if(shardManager != null && shardManager.isDead()) {
             throw new Error("Websocket died completely, killing this thread too.");
         }
         return requester;
@@ -116,20 +276,21 @@ public class ClientImpl implements Client {
     }
 
     public synchronized void addServer(Server server) {
-        serverList.add(server);
-        serversByName.put(server.getName(), server);
+        if(server.getName() != null) serversByName.put(server.getName(), server);
         serversById.put(server.getId(), server);
+        serversVersion++;
     }
 
     public synchronized void clearServer(ServerImpl server) {
-        serverList.remove(server);
-        serversByName.remove(server.getName());
+        if(server.getName() != null) serversByName.remove(server.getName(), server);
         serversById.remove(server.getId());
+        serversVersion++;
 
         server.getChannels().forEach(channel -> {
-            serverChannelList.remove(channel);
             channelsById.remove(channel.getId());
+            messageCache.clearChannel(channel.getId());
         });
+        channelsVersion++;
     }
 
     public void setMyUser(UserImpl user) {
@@ -138,10 +299,19 @@ public class ClientImpl implements Client {
     }
 
     public void addUser(UserImpl user) {
-        userList.add(user);
         usersById.put(user.getId(), user);
     }
 
+    /**
+     * Adds the user, unless a user with the same id is already known.
+     * @param user added user
+     * @return the known user with the same id, or the added user
+     */
+    public UserImpl addUserIfAbsent(UserImpl user) {
+        final User known = usersById.putIfAbsent(user.getId(), user);
+        return known == null ? user : (UserImpl) known;
+    }
+
     public UserImpl getUser(String id) {
         return (UserImpl) usersById.get(id);
     }
@@ -153,93 +323,128 @@ public class ClientImpl implements Client {
 
     @Override
     public User getUserById(String id) {
-        if(usersById.containsKey(id)) {
-            return usersById.get(id);
+        final User known = usersById.get(id);
+        if(known != null) {
+            return known;
         }
         final Endpoint endpoint = EndpointBuilder.create(Endpoint.USER).addElement(id).build();
         final JSONObject jsonObject = getRequester().getRequestAsObject(endpoint);
         final UserObject userObject = getSerializer().deserialize(jsonObject, UserObject.class);
-        final UserImpl newUser = new UserImpl(this, userObject);
-        addUser(newUser);
-        return newUser;
+        final User newUser = usersById.putIfAbsent(id, new UserImpl(this, userObject));
+        return newUser == null ? usersById.get(id) : newUser;
     }
 
     @Override
     public void updateStatus(String gameName, Long idleSince) {
-        if(getSocket() == null) return;
-        getSocket().statusUpdate(gameName, idleSince);
+        if(getShardManager() == null) return;
+        getShardManager().getShards().forEach(shard -> shard.statusUpdate(gameName, idleSince));
     }
 
     @Override
-    public synchronized List<Server> getServers() {
-        return serverList;
+    public List<Server> getServers() {
+        final long version = serversVersion;
+        Snapshot<Server> snapshot = serverSnapshot;
+        if(snapshot == null || snapshot.version != version) {
+            snapshot = new Snapshot<>(version, serversById.values());
+            serverSnapshot = snapshot;
+        }
+        return snapshot.list;
     }
 
     @Override
-    public synchronized Server getServerById(String id) {
+    public Server getServerById(String id) {
         return serversById.get(id);
     }
 
     @Override
-    public synchronized Server getServerByName(String name) {
+    public Server getServerByName(String name) {
         return serversByName.get(name);
     }
 
     public synchronized void addChannel(Channel channel) {
         channelsById.put(channel.getId(),channel);
-        if(channel.isPrivate()) {
-            privateChannelList.add(channel.toPrivateChannel());
-        }
-        else {
-            final ServerChannel serverChannel = channel.toServerChannel();
-            serverChannelList.add(serverChannel);
-
-        }
+        channelsVersion++;
     }
 
     public synchronized void removeChannel(Channel channel) {
-        if(channel.isPrivate()) privateChannelList.remove(channel);
-        else serverChannelList.remove(channel);
         channelsById.remove(channel.getId());
+        channelsVersion++;
+        messageCache.clearChannel(channel.getId());
     }
 
     public synchronized void addChannels(List<ServerChannel> channels) {
         for(ServerChannel channel : channels) {
-            serverChannelList.add(channel);
             channelsById.put(channel.getId(), channel);
         }
+        channelsVersion++;
     }
 
     @Override
-    public synchronized List<ServerChannel> getServerChannels() {
-        return serverChannelList;
+    public List<ServerChannel> getServerChannels() {
+        final long version = channelsVersion;
+        Snapshot<ServerChannel> snapshot = serverChannelSnapshot;
+        if(snapshot == null || snapshot.version != version) {
+            final List<ServerChannel> channels = new ArrayList<>();
+            channelsById.forEachValue(channel -> {
+                if(!channel.isPrivate()) channels.add(channel.toServerChannel());
+            });
+            snapshot = new Snapshot<>(version, channels);
+            serverChannelSnapshot = snapshot;
+        }
+        return snapshot.list;
     }
 
     @Override
-    public synchronized List<PrivateChannel> getPrivateChannels() {
-        if(privateChannelList.isEmpty()) {
-            reloadPrivateChannels();
+    public List<PrivateChannel> getPrivateChannels() {
+        List<PrivateChannel> channels = getPrivateChannelSnapshot();
+        if(channels.isEmpty()) {
+            synchronized (this) {
+                channels = getPrivateChannelSnapshot();
+                if(channels.isEmpty()) {
+                    reloadPrivateChannels();
+                    channels = getPrivateChannelSnapshot();
+                }
+            }
         }
-        return privateChannelList;
+        return channels;
+    }
+
+    private List<PrivateChannel> getPrivateChannelSnapshot() {
+        final long version = channelsVersion;
+        Snapshot<PrivateChannel> snapshot = privateChannelSnapshot;
+        if(snapshot == null || snapshot.version != version) {
+            final List<PrivateChannel> channels = new ArrayList<>();
+            channelsById.forEachValue(channel -> {
+                if(channel.isPrivate()) channels.add(channel.toPrivateChannel());
+            });
+            snapshot = new Snapshot<>(version, channels);
+            privateChannelSnapshot = snapshot;
+        }
+        return snapshot.list;
     }
 
     @Override
     public synchronized void reloadPrivateChannels() {
-        privateChannelList.clear();
         final Endpoint endpoint = EndpointBuilder.create(Endpoint.USER)
                 .addElement("@me").addElement("channels").build();
         JSONArray jsonArray = getRequester().getRequestAsArray(endpoint);
+        final Set<String> reloaded = new HashSet<>();
         for(int i = 0; i < jsonArray.length(); i++) {
             JSONObject jsonObject = jsonArray.getJSONObject(i);
             PrivateChannelObject channelObject = getSerializer().deserialize(jsonObject, PrivateChannelObject.class);
             PrivateChannelImpl channel = new PrivateChannelImpl(this, channelObject, null);
-            privateChannelList.add(channel);
             channelsById.put(channel.getId(), channel);
+            reloaded.add(channel.getId());
+        }
+        // Forget the private channels which are not open anymore
+        for(PrivateChannel channel : getPrivateChannelSnapshot()) {
+            if(!reloaded.contains(channel.getId())) channelsById.remove(channel.getId());
         }
+        channelsVersion++;
     }
 
     @Override
-    public synchronized Channel getChannelById(String id) {
+    public Channel getChannelById(String id) {
         return channelsById.get(id);
     }
 
@@ -4,6 +4,7 @@ import cz.salmelu.discord.*;
 import cz.salmelu.discord.implementation.json.resources.ServerMemberObject;
 import cz.salmelu.discord.implementation.net.rest.Endpoint;
 import cz.salmelu.discord.implementation.net.rest.EndpointBuilder;
+import cz.salmelu.discord.implementation.util.Snowflake;
 import cz.salmelu.discord.resources.*;
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -12,7 +13,10 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Future;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class MemberImpl implements Member {
 
@@ -22,6 +26,12 @@ public class MemberImpl implements Member {
     private final ServerMemberObject originalObject;
 
     private final List<Role> roles = new ArrayList<>();
+    private volatile long[] roleIds;
+
+    /** Permissions in the server cached by the permission engine */
+    private volatile PermissionEngine.Entry serverPermissions;
+    /** Permissions in the channels cached by the permission engine, created when first needed */
+    private volatile ConcurrentHashMap<ServerChannelImpl, PermissionEngine.Entry> channelPermissions;
 
     public MemberImpl(ClientImpl client, ServerImpl server, UserImpl user, ServerMemberObject object) {
         this.client = client;
@@ -30,6 +40,20 @@ public class MemberImpl implements Member {
         this.originalObject = object;
 
         Arrays.stream(originalObject.getRoles()).forEach(role -> roles.add(server.getRoleById(role)));
+        roleIds = toRoleIds(originalObject.getRoles());
+    }
+
+    /**
+     * Converts the role ids into numbers.
+     * @param ids role ids
+     * @return numeric role ids
+     */
+    private static long[] toRoleIds(String[] ids) {
+        final long[] roleIds = new long[ids.length];
+        for(int i = 0; i < ids.length; i++) {
+            roleIds[i] = Snowflake.parse(ids[i]);
+        }
+        return roleIds;
     }
 
     @Override
@@ -54,6 +78,92 @@ public class MemberImpl implements Member {
     public void setRoles(String[] roleIds) {
         roles.clear();
         Arrays.stream(roleIds).forEach(role -> roles.add(server.getRoleById(role)));
+        // A new array, so the permissions cached for the previous roles are not valid anymore
+        this.roleIds = toRoleIds(roleIds);
+    }
+
+    /**
+     * Gets the ids of member's roles.
+     * @return numeric role ids, not to be modified
+     */
+    long[] getRoleIds() {
+        return roleIds;
+    }
+
+    /**
+     * Gets the cached permissions in the server.
+     * @return cached permissions, or null
+     */
+    PermissionEngine.Entry getCachedPermissions() {
+        return serverPermissions;
+    }
+
+    /**
+     * Caches the permissions in the server.
+     * @param entry calculated permissions
+     */
+    void setCachedPermissions(PermissionEngine.Entry entry) {
+        serverPermissions = entry;
+    }
+
+    /**
+     * Gets the cached permissions in the channel.
+     * @param channel channel
+     * @return cached permissions, or null
+     */
+    PermissionEngine.Entry getCachedPermissions(ServerChannelImpl channel) {
+        final ConcurrentHashMap<ServerChannelImpl, PermissionEngine.Entry> cache = channelPermissions;
+        return cache == null ? null : cache.get(channel);
+    }
+
+    /**
+     * Caches the permissions in the channel.
+     * @param channel channel
+     * @param entry calculated permissions
+     */
+    void setCachedPermissions(ServerChannelImpl channel, PermissionEngine.Entry entry) {
+        ConcurrentHashMap<ServerChannelImpl, PermissionEngine.Entry> cache = channelPermissions;
+        if(cache == null) {
+            cache = new ConcurrentHashMap<>(8);
+            channelPermissions = cache;
+        }
+        cache.put(channel, entry);
+    }
+
+    /**
+     * Drops the cached permissions in a removed channel.
+     * @param channel removed channel
+     */
+    void removeCachedPermissions(ServerChannel channel) {
+        final ConcurrentHashMap<ServerChannelImpl, PermissionEngine.Entry> cache = channelPermissions;
+        if(cache != null) cache.remove(channel);
+    }
+
+    @Override
+    public boolean hasPermission(Permission permission) {
+        return (server.getPermissionEngine().getPermissions(this) & permission.getValue()) != 0;
+    }
+
+    @Override
+    public boolean hasPermission(ServerChannel channel, Permission permission) {
+        return (getPermissionBits(channel) & permission.getValue()) != 0;
+    }
+
+    @Override
+    public Set<Permission> getPermissions(ServerChannel channel) {
+        return Collections.unmodifiableSet(Permission.getPermissions(getPermissionBits(channel)));
+    }
+
+    /**
+     * Gets the member's permissions in a channel of their server.
+     * @param channel channel
+     * @return bitmask of granted permissions
+     */
+    private long getPermissionBits(ServerChannel channel) {
+        if(!server.equals(channel.getServer())) {
+            throw new IllegalArgumentException("The channel is not from the member's server.");
+        }
+        return server.getPermissionEngine().getPermissions(this, (ServerChannelImpl) channel);
     }
 
     @Override
@@ -92,7 +202,7 @@ public class MemberImpl implements Member {
     }
 
     @Override
-    public Future<RequestResponse> addRole(Role role) throws PermissionDeniedException {
+    public CompletableFuture<RequestResponse> addRole(Role role) throws PermissionDeniedException {
         if(roles.contains(role)) {
             return null;
         }
@@ -106,7 +216,12 @@ public class MemberImpl implements Member {
     }
 
     @Override
-    public Future<RequestResponse> removeRole(Role role) throws PermissionDeniedException {
+    public CompletionStage<RequestResponse> addRoleAsync(Role role) throws PermissionDeniedException {
+        return addRole(role);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> removeRole(Role role) throws PermissionDeniedException {
         if(!roles.contains(role)) {
             return null;
         }
@@ -120,7 +235,12 @@ public class MemberImpl implements Member {
     }
 
     @Override
-    public Future<RequestResponse> setRoles(List<Role> roles) {
+    public CompletionStage<RequestResponse> removeRoleAsync(Role role) throws PermissionDeniedException {
+        return removeRole(role);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> setRoles(List<Role> roles) {
         if(!server.checkPermission(Permission.MANAGE_ROLES)) {
             throw new PermissionDeniedException("This application cannot manage roles of this server.");
         }
@@ -138,7 +258,12 @@ public class MemberImpl implements Member {
     }
 
     @Override
-    public Future<RequestResponse> mute(boolean mute) {
+    public CompletionStage<RequestResponse> setRolesAsync(List<Role> roles) {
+        return setRoles(roles);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> mute(boolean mute) {
         if(!server.checkPermission(Permission.VOICE_MUTE)) {
             throw new PermissionDeniedException("This application cannot mute users of this server.");
         }
@@ -150,7 +275,12 @@ public class MemberImpl implements Member {
     }
 
     @Override
-    public Future<RequestResponse> deafen(boolean deaf) {
+    public CompletionStage<RequestResponse> muteAsync(boolean mute) {
+        return mute(mute);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> deafen(boolean deaf) {
         if(!server.checkPermission(Permission.VOICE_DEAFEN)) {
             throw new PermissionDeniedException("This application cannot deafen users of this server.");
         }
@@ -162,7 +292,12 @@ public class MemberImpl implements Member {
     }
 
     @Override
-    public Future<RequestResponse> moveChannel(ServerChannel newChannel) {
+    public CompletionStage<RequestResponse> deafenAsync(boolean deaf) {
+        return deafen(deaf);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> moveChannel(ServerChannel newChannel) {
         if(!newChannel.isVoice() || !newChannel.getServer().equals(getServer())) {
             throw new IllegalArgumentException("Invalid channel id given.");
         }
@@ -177,17 +312,32 @@ public class MemberImpl implements Member {
     }
 
     @Override
-    public Future<RequestResponse> ban(int messageDays) {
+    public CompletionStage<RequestResponse> moveChannelAsync(ServerChannel newChannel) {
+        return moveChannel(newChannel);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> ban(int messageDays) {
         return server.banMember(this, messageDays);
     }
 
     @Override
-    public Future<RequestResponse> kick() {
+    public CompletionStage<RequestResponse> banAsync(int messageDays) {
+        return ban(messageDays);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> kick() {
         return server.kickMember(this);
     }
 
     @Override
-    public Future<RequestResponse> changeNickname(String nickname) {
+    public CompletionStage<RequestResponse> kickAsync() {
+        return kick();
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> changeNickname(String nickname) {
         nickname = nickname.trim();
         if(!NameHelper.validateName(nickname)) {
             throw new IllegalArgumentException("Invalid nickname requested.");
@@ -202,4 +352,9 @@ public class MemberImpl implements Member {
         return client.getRequester().patchRequestAsync(endpoint, request);
     }
 
+    @Override
+    public CompletionStage<RequestResponse> changeNicknameAsync(String nickname) {
+        return changeNickname(nickname);
+    }
+
 }
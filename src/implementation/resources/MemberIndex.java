@@ -0,0 +1,327 @@
+package cz.salmelu.discord.implementation.resources;
+
+import cz.salmelu.discord.implementation.util.LongMap;
+import cz.salmelu.discord.implementation.util.Snowflake;
+import cz.salmelu.discord.resources.Member;
+
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * <p>Members of a single server.</p>
+ * <p>Members are stored by their ids. The order in which they were added is kept in a linked list
+ * and members sharing a nickname are linked together in a nickname bucket, so adding, removing and updating
+ * a member takes constant time and never needs to go through other members.</p>
+ * <p>Members can be added as {@link MemberRecord}s. Their {@link MemberImpl} instances are created
+ * only when they are requested for the first time.</p>
+ * <p>The index is modified only by the dispatch lane of its server. The member list given to modules
+ * is an immutable snapshot, created again only after the members change.</p>
+ */
+class MemberIndex {
+
+    /**
+     * A member with its position in the index.
+     */
+    private static final class Node {
+        final long id;
+        /** Created member, or null if only the record is known yet */
+        volatile MemberImpl member;
+        /** Record of the member, cleared when the member is created */
+        MemberRecord record;
+        /** Key of the nickname bucket the member is in */
+        String nickKey;
+        Node prev, next;
+        /** Neighbours in the nickname bucket */
+        Node nickPrev, nickNext;
+
+        Node(long id, MemberImpl member, MemberRecord record) {
+            this.id = id;
+            this.member = member;
+            this.record = record;
+        }
+    }
+
+    /**
+     * Members sharing a nickname, linked in the order they were added.
+     */
+    private static final class NickBucket {
+        Node first, last;
+        int size;
+    }
+
+    /**
+     * The member list together with the version it was created from.
+     */
+    private static final class Snapshot {
+        final int version;
+        final List<Member> members;
+
+        Snapshot(int version, List<Member> members) {
+            this.version = version;
+            this.members = members;
+        }
+    }
+
+    private final Function<MemberRecord, MemberImpl> factory;
+    private final LongMap<Node> byId = new LongMap<>();
+    private final Map<String, NickBucket> byNick = new HashMap<>();
+    /** The oldest and the newest added member */
+    private Node head, tail;
+    /** Incremented after every change of the members */
+    private volatile int version = 0;
+    private volatile Snapshot snapshot = new Snapshot(0, Collections.emptyList());
+
+    /**
+     * Creates an empty index.
+     * @param factory creates members from their records
+     */
+    MemberIndex(Function<MemberRecord, MemberImpl> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Gets the name the member is known as on the server.
+     * @param node member's node
+     * @return member's nickname, or user name if there is no nickname
+     */
+    private static String nickKey(Node node) {
+        MemberImpl member = node.member;
+        if(member == null) {
+            synchronized(node) {
+                member = node.member;
+                if(member == null) return node.record.getDisplayName();
+            }
+        }
+        return member.getNickname() == null ? member.getUser().getName() : member.getNickname();
+    }
+
+    /**
+     * Adds a member, replacing the previous member with the same id.
+     * @param member added member
+     */
+    void add(MemberImpl member) {
+        link(new Node(Snowflake.parse(member.getId()), member, null));
+    }
+
+    /**
+     * Adds members, which will be created when they are needed, replacing the previous members with the same ids.
+     * @param records records of the added members
+     * @return immutable list of the added members, creating each of them when it's accessed
+     */
+    List<Member> addAll(List<MemberRecord> records) {
+        final Node[] nodes = new Node[records.size()];
+        for(int i = 0; i < nodes.length; i++) {
+            final MemberRecord record = records.get(i);
+            nodes[i] = new Node(Snowflake.parse(record.getUser().getId()), null, record);
+            link(nodes[i]);
+        }
+        return new AbstractList<Member>() {
+            @Override
+            public Member get(int index) {
+                return materialize(nodes[index]);
+            }
+
+            @Override
+            public int size() {
+                return nodes.length;
+            }
+        };
+    }
+
+    /**
+     * Adds a node as the last one.
+     * @param node added node
+     */
+    private void link(Node node) {
+        unlink(node.id);
+        byId.put(node.id, node);
+
+        node.prev = tail;
+        if(tail != null) tail.next = node;
+        else head = node;
+        tail = node;
+
+        addNick(node);
+        version++;
+    }
+
+    /**
+     * Removes a member.
+     * @param id member id
+     * @return removed member, or null if there was no such member
+     */
+    MemberImpl remove(String id) {
+        final Node node = unlink(Snowflake.parse(id));
+        return node == null ? null : materialize(node);
+    }
+
+    /**
+     * Removes a member from the index.
+     * @param id member id
+     * @return removed node, or null if there was no such member
+     */
+    private Node unlink(long id) {
+        final Node node = byId.remove(id);
+        if(node == null) return null;
+
+        if(node.prev != null) node.prev.next = node.next;
+        else head = node.next;
+        if(node.next != null) node.next.prev = node.prev;
+        else tail = node.prev;
+
+        removeNick(node);
+        version++;
+        return node;
+    }
+
+    /**
+     * Gets the member of the node, creating it if needed. Can be called from any thread.
+     * @param node member's node
+     * @return member
+     */
+    private MemberImpl materialize(Node node) {
+        MemberImpl member = node.member;
+        if(member != null) return member;
+        synchronized(node) {
+            member = node.member;
+            if(member == null) {
+                member = factory.apply(node.record);
+                node.member = member;
+                node.record = null;
+            }
+        }
+        return member;
+    }
+
+    /**
+     * Puts the member into the bucket of its current nickname.
+     * @param node member's node
+     */
+    private void addNick(Node node) {
+        node.nickKey = nickKey(node);
+        if(node.nickKey == null) return;
+        final NickBucket bucket = byNick.computeIfAbsent(node.nickKey, k -> new NickBucket());
+        node.nickPrev = bucket.last;
+        node.nickNext = null;
+        if(bucket.last != null) bucket.last.nickNext = node;
+        else bucket.first = node;
+        bucket.last = node;
+        bucket.size++;
+    }
+
+    /**
+     * Removes the member from the bucket of its nickname.
+     * @param node member's node
+     */
+    private void removeNick(Node node) {
+        if(node.nickKey == null) return;
+        final NickBucket bucket = byNick.get(node.nickKey);
+        if(bucket != null) {
+            if(node.nickPrev != null) node.nickPrev.nickNext = node.nickNext;
+            else bucket.first = node.nickNext;
+            if(node.nickNext != null) node.nickNext.nickPrev = node.nickPrev;
+            else bucket.last = node.nickPrev;
+            if(--bucket.size == 0) byNick.remove(node.nickKey);
+        }
+        node.nickPrev = null;
+        node.nickNext = null;
+        node.nickKey = null;
+    }
+
+    /**
+     * Moves the member into the correct nickname bucket, after its nickname or user name changed.
+     * @param id member id
+     */
+    void nicknameChanged(String id) {
+        final Node node = byId.get(id);
+        if(node == null) return;
+        if(Objects.equals(node.nickKey, nickKey(node))) return;
+        removeNick(node);
+        addNick(node);
+    }
+
+    /**
+     * Checks if there is a member with given id, without creating it.
+     * @param id member id
+     * @return true if the member is known
+     */
+    boolean contains(String id) {
+        return byId.containsKey(id);
+    }
+
+    /**
+     * Gets a member.
+     * @param id member id
+     * @return member, or null if there is no such member
+     */
+    MemberImpl get(String id) {
+        final Node node = byId.get(id);
+        return node == null ? null : materialize(node);
+    }
+
+    /**
+     * Gets the first added member with given nickname.
+     * @param nickname nickname, or user name for members without one
+     * @return member, or null if there is no such member
+     */
+    MemberImpl getByNickname(String nickname) {
+        final NickBucket bucket = byNick.get(nickname);
+        final Node first = bucket == null ? null : bucket.first;
+        return first == null ? null : materialize(first);
+    }
+
+    /**
+     * Gets all members with given nickname.
+     * @param nickname nickname, or user name for members without one
+     * @return list of members, empty if there are none
+     */
+    List<Member> getAllByNickname(String nickname) {
+        final NickBucket bucket = byNick.get(nickname);
+        if(bucket == null) return Collections.emptyList();
+        final List<Member> list = new ArrayList<>(bucket.size);
+        for(Node node = bucket.first; node != null; node = node.nickNext) {
+            list.add(materialize(node));
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Gets all the members in the order they were added.
+     * @return immutable list of members
+     */
+    List<Member> getAll() {
+        final Snapshot current = snapshot;
+        final int currentVersion = version;
+        if(current.version == currentVersion) {
+            return current.members;
+        }
+        final List<Member> list = new ArrayList<>(byId.size());
+        for(Node node = head; node != null; node = node.next) {
+            list.add(materialize(node));
+        }
+        // If the members changed meanwhile, the old version makes the next call create the list again
+        final List<Member> members = Collections.unmodifiableList(list);
+        snapshot = new Snapshot(currentVersion, members);
+        return members;
+    }
+
+    /**
+     * Runs an action for every member already created, without creating the others.
+     * @param action action run for the members
+     */
+    void forEachCreated(Consumer<MemberImpl> action) {
+        for(Node node = head; node != null; node = node.next) {
+            final MemberImpl member = node.member;
+            if(member != null) action.accept(member);
+        }
+    }
+
+    /**
+     * Gets the amount of members.
+     * @return amount of members
+     */
+    int size() {
+        return byId.size();
+    }
+}
@@ -0,0 +1,75 @@
+package cz.salmelu.discord.implementation.resources;
+
+import cz.salmelu.discord.implementation.json.resources.ServerMemberObject;
+import cz.salmelu.discord.implementation.json.resources.UserObject;
+import cz.salmelu.discord.implementation.util.Snowflake;
+
+import java.time.OffsetDateTime;
+
+/**
+ * <p>Compact form of a server member, which wasn't needed by anyone yet.</p>
+ * <p>Keeps only the data needed to create the {@link MemberImpl} later, with the role ids stored as numbers.
+ * No user instance is created or registered in the client until the member is needed.</p>
+ */
+final class MemberRecord {
+
+    private static final byte DEAF = 1;
+    private static final byte MUTED = 2;
+
+    private final UserObject user;
+    private final String nickname;
+    private final long[] roles;
+    private final OffsetDateTime joinedAt;
+    private final byte flags;
+
+    /**
+     * Creates a record from the received member.
+     * @param object received member
+     */
+    MemberRecord(ServerMemberObject object) {
+        this.user = object.getUser();
+        this.nickname = object.getNickname();
+        final String[] roleIds = object.getRoles();
+        this.roles = new long[roleIds == null ? 0 : roleIds.length];
+        for(int i = 0; i < roles.length; i++) {
+            roles[i] = Snowflake.parse(roleIds[i]);
+        }
+        this.joinedAt = object.getJoinedAt();
+        this.flags = (byte) ((object.isDeaf() ? DEAF : 0) | (object.isMuted() ? MUTED : 0));
+    }
+
+    /**
+     * Gets the user of the member.
+     * @return received user
+     */
+    UserObject getUser() {
+        return user;
+    }
+
+    /**
+     * Gets the name the member is known as on the server.
+     * @return nickname, or user name if there is no nickname
+     */
+    String getDisplayName() {
+        return nickname == null ? user.getUsername() : nickname;
+    }
+
+    /**
+     * Creates the received member again.
+     * @return member object equal to the received one
+     */
+    ServerMemberObject toObject() {
+        final ServerMemberObject object = new ServerMemberObject();
+        object.setUser(user);
+        object.setNickname(nickname);
+        final String[] roleIds = new String[roles.length];
+        for(int i = 0; i < roles.length; i++) {
+            roleIds[i] = Long.toString(roles[i]);
+        }
+        object.setRoles(roleIds);
+        object.setJoinedAt(joinedAt);
+        object.setDeaf((flags & DEAF) != 0);
+        object.setMuted((flags & MUTED) != 0);
+        return object;
+    }
+}
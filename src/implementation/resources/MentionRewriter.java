@@ -0,0 +1,134 @@
+package cz.salmelu.discord.implementation.resources;
+
+/**
+ * <p>Converts the mentions in a message text into readable names in a single pass.</p>
+ * <p>Recognized mentions are users <code>&lt;@id&gt;</code>, members <code>&lt;@!id&gt;</code>,
+ * roles <code>&lt;@&amp;id&gt;</code> and channels <code>&lt;#id&gt;</code>.
+ * Mentions which can't be resolved are kept in the raw format.</p>
+ */
+final class MentionRewriter {
+
+    /**
+     * Gets the names of mentioned entities.
+     */
+    interface Resolver {
+        /**
+         * @param id user id
+         * @return user's name, or null if the user is not known
+         */
+        String user(String id);
+
+        /**
+         * @param id user id
+         * @return member's displayed name, or null if the member is not known
+         */
+        String member(String id);
+
+        /**
+         * @param id role id
+         * @return role's name, or null if the role is not known
+         */
+        String role(String id);
+
+        /**
+         * @param id channel id
+         * @return channel's name, or null if the channel is not known
+         */
+        String channel(String id);
+    }
+
+    /**
+     * Text with converted mentions.
+     */
+    static final class Result {
+        final String text;
+        /** False if some of the mentions couldn't be resolved */
+        final boolean complete;
+
+        private Result(String text, boolean complete) {
+            this.text = text;
+            this.complete = complete;
+        }
+    }
+
+    private MentionRewriter() {}
+
+    /**
+     * Converts all mentions in the text.
+     * @param text raw message text
+     * @param resolver resolver of the names
+     * @return converted text
+     */
+    static Result rewrite(String text, Resolver resolver) {
+        if(text == null) return new Result(null, true);
+        int start = text.indexOf('<');
+        if(start < 0) return new Result(text, true);
+
+        final StringBuilder builder = new StringBuilder(text.length());
+        boolean complete = true;
+        int copied = 0;
+        while(start >= 0) {
+            final int end = parse(text, start);
+            if(end < 0) {
+                start = text.indexOf('<', start + 1);
+                continue;
+            }
+            final char kind = text.charAt(start + 1) == '#' ? '#' : text.charAt(start + 2);
+            final int idStart = start + (kind == '!' || kind == '&' ? 3 : 2);
+            final String id = text.substring(idStart, end);
+            final String name;
+            final char sign;
+            switch(kind) {
+                case '#':
+                    name = resolver.channel(id);
+                    sign = '#';
+                    break;
+                case '!':
+                    name = resolver.member(id);
+                    sign = '@';
+                    break;
+                case '&':
+                    name = resolver.role(id);
+                    sign = '@';
+                    break;
+                default:
+                    name = resolver.user(id);
+                    sign = '@';
+            }
+            if(name == null) {
+                complete = false;
+            }
+            else {
+                builder.append(text, copied, start).append(sign).append(name);
+                copied = end + 1;
+            }
+            start = text.indexOf('<', end + 1);
+        }
+        if(copied == 0) return new Result(text, complete);
+        builder.append(text, copied, text.length());
+        return new Result(builder.toString(), complete);
+    }
+
+    /**
+     * Checks if there is a mention at the position.
+     * @param text message text
+     * @param start position of <code>&lt;</code>
+     * @return position of the closing <code>&gt;</code>, or -1 if there is no mention
+     */
+    private static int parse(String text, int start) {
+        final int length = text.length();
+        int i = start + 1;
+        if(i >= length) return -1;
+        final char type = text.charAt(i++);
+        if(type == '@') {
+            if(i < length && (text.charAt(i) == '!' || text.charAt(i) == '&')) i++;
+        }
+        else if(type != '#') {
+            return -1;
+        }
+        final int idStart = i;
+        while(i < length && text.charAt(i) >= '0' && text.charAt(i) <= '9') i++;
+        if(i == idStart || i >= length || text.charAt(i) != '>') return -1;
+        return i;
+    }
+}
@@ -0,0 +1,312 @@
+package cz.salmelu.discord.implementation.resources;
+
+import cz.salmelu.discord.implementation.util.LongMap;
+import cz.salmelu.discord.implementation.util.Snowflake;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * <p>A bounded cache of messages received by the client, shared by all the channels.</p>
+ * <p>The cache limits the amount of messages kept for a single channel, and the total amount and approximate size
+ * of all cached messages. When a limit is exceeded, the least recently used messages are evicted.
+ * Messages not accessed for longer than the configured time are evicted too.</p>
+ * <p>All limits can be disabled by setting them to 0.</p>
+ */
+class MessageCache {
+
+    /** Estimated memory used by a message without its text */
+    private static final int MESSAGE_OVERHEAD = 1024;
+
+    /**
+     * A single cached message. It is linked into the list of all messages and the list of its channel,
+     * both ordered from the least recently used.
+     */
+    private static final class Entry {
+        final long id;
+        final long channelId;
+        final MessageImpl message;
+        final long size;
+        long lastAccess;
+        Entry prev, next;
+        Entry channelPrev, channelNext;
+
+        Entry(long id, long channelId, MessageImpl message, long size, long lastAccess) {
+            this.id = id;
+            this.channelId = channelId;
+            this.message = message;
+            this.size = size;
+            this.lastAccess = lastAccess;
+        }
+    }
+
+    /**
+     * Messages of a single channel.
+     */
+    private static final class ChannelList {
+        Entry head, tail;
+        int size;
+    }
+
+    private final int channelLimit;
+    private final int totalLimit;
+    private final long byteLimit;
+    private final long timeToLive;
+
+    /** All messages by their ids */
+    private final LongMap<Entry> messages = new LongMap<>(256);
+    /** Messages of every channel */
+    private final LongMap<ChannelList> channels = new LongMap<>();
+    /** The least and the most recently used messages */
+    private Entry head, tail;
+    private long totalBytes = 0;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a new cache.
+     * @param channelLimit maximum amount of messages per channel
+     * @param totalLimit maximum amount of messages in total
+     * @param byteLimit maximum approximate size of all messages in bytes
+     * @param timeToLive time in milliseconds after which unused messages are evicted
+     */
+    MessageCache(int channelLimit, int totalLimit, long byteLimit, long timeToLive) {
+        this.channelLimit = channelLimit;
+        this.totalLimit = totalLimit;
+        this.byteLimit = byteLimit;
+        this.timeToLive = timeToLive;
+    }
+
+    /**
+     * Estimates the memory used by a message.
+     * @param message cached message
+     * @return approximate size in bytes
+     */
+    private static long estimateSize(MessageImpl message) {
+        final String text = message.getRawText();
+        return MESSAGE_OVERHEAD + (text == null ? 0 : 2L * text.length());
+    }
+
+    /**
+     * Links the entry as the most recently used one.
+     * @param entry linked entry
+     * @param channel list of the entry's channel
+     */
+    private void link(Entry entry, ChannelList channel) {
+        entry.prev = tail;
+        entry.next = null;
+        if(tail != null) tail.next = entry;
+        else head = entry;
+        tail = entry;
+
+        entry.channelPrev = channel.tail;
+        entry.channelNext = null;
+        if(channel.tail != null) channel.tail.channelNext = entry;
+        else channel.head = entry;
+        channel.tail = entry;
+        channel.size++;
+    }
+
+    /**
+     * Unlinks the entry from both lists.
+     * @param entry unlinked entry
+     * @param channel list of the entry's channel
+     */
+    private void unlink(Entry entry, ChannelList channel) {
+        if(entry.prev != null) entry.prev.next = entry.next;
+        else head = entry.next;
+        if(entry.next != null) entry.next.prev = entry.prev;
+        else tail = entry.prev;
+
+        if(entry.channelPrev != null) entry.channelPrev.channelNext = entry.channelNext;
+        else channel.head = entry.channelNext;
+        if(entry.channelNext != null) entry.channelNext.channelPrev = entry.channelPrev;
+        else channel.tail = entry.channelPrev;
+        channel.size--;
+    }
+
+    /**
+     * Adds a message to the cache, replacing the previous version of it, and evicts messages over the limits.
+     * @param channelId id of the message's channel
+     * @param message cached message
+     */
+    synchronized void put(String channelId, MessageImpl message) {
+        final long now = System.currentTimeMillis();
+        final long id = Snowflake.parse(message.getId());
+        final long channelKey = Snowflake.parse(channelId);
+        if(id == Snowflake.INVALID || channelKey == Snowflake.INVALID) return;
+        removeEntry(messages.get(id));
+
+        final Entry entry = new Entry(id, channelKey, message, estimateSize(message), now);
+        ChannelList channel = channels.get(channelKey);
+        if(channel == null) {
+            channel = new ChannelList();
+            channels.put(channelKey, channel);
+        }
+        messages.put(id, entry);
+        link(entry, channel);
+        totalBytes += entry.size;
+
+        if(channelLimit > 0) {
+            while(channel.size > channelLimit) {
+                evict(channel.head);
+            }
+        }
+        evictOverLimits(now);
+    }
+
+    /**
+     * Gets a cached message and marks it as recently used.
+     * @param id message id
+     * @return cached message, or null if it is not cached
+     */
+    synchronized MessageImpl get(String id) {
+        final Entry entry = messages.get(id);
+        final long now = System.currentTimeMillis();
+        if(entry == null || isExpired(entry, now)) {
+            if(entry != null) evict(entry);
+            misses.incrementAndGet();
+            return null;
+        }
+        hits.incrementAndGet();
+        entry.lastAccess = now;
+        final ChannelList channel = channels.get(entry.channelId);
+        unlink(entry, channel);
+        link(entry, channel);
+        return entry.message;
+    }
+
+    /**
+     * Checks if a message is cached, without marking it as used.
+     * @param id message id
+     * @return true if the message is cached
+     */
+    synchronized boolean contains(String id) {
+        return messages.containsKey(id);
+    }
+
+    /**
+     * Removes a message from the cache.
+     * @param id message id
+     */
+    synchronized void remove(String id) {
+        removeEntry(messages.get(id));
+    }
+
+    /**
+     * Removes an entry from the cache.
+     * @param entry removed entry, may be null
+     */
+    private void removeEntry(Entry entry) {
+        if(entry == null) return;
+        messages.remove(entry.id);
+        final ChannelList channel = channels.get(entry.channelId);
+        unlink(entry, channel);
+        if(channel.size == 0) channels.remove(entry.channelId);
+        totalBytes -= entry.size;
+    }
+
+    /**
+     * Removes all messages of a channel.
+     * @param channelId channel id
+     */
+    synchronized void clearChannel(String channelId) {
+        final ChannelList channel = channels.get(channelId);
+        if(channel == null) return;
+        while(channel.head != null) {
+            removeEntry(channel.head);
+        }
+    }
+
+    /**
+     * Removes all messages from the cache.
+     */
+    synchronized void clear() {
+        messages.clear();
+        channels.clear();
+        head = tail = null;
+        totalBytes = 0;
+    }
+
+    /**
+     * Removes a message because of the limits.
+     * @param entry evicted entry
+     */
+    private void evict(Entry entry) {
+        removeEntry(entry);
+        evictions.incrementAndGet();
+    }
+
+    /**
+     * Checks if the message wasn't used for too long.
+     * @param entry checked entry
+     * @param now current time
+     * @return true if the message should be evicted
+     */
+    private boolean isExpired(Entry entry, long now) {
+        return timeToLive > 0 && now - entry.lastAccess > timeToLive;
+    }
+
+    /**
+     * Evicts the least recently used messages until the cache is within the limits.
+     * Expired messages are always at the beginning, so they are evicted too.
+     * @param now current time
+     */
+    private void evictOverLimits(long now) {
+        while(head != null) {
+            final boolean overLimit = (totalLimit > 0 && messages.size() > totalLimit)
+                    || (byteLimit > 0 && totalBytes > byteLimit);
+            if(!overLimit && !isExpired(head, now)) {
+                break;
+            }
+            evict(head);
+        }
+    }
+
+    /**
+     * Gets the amount of cached messages.
+     * @return amount of messages
+     */
+    synchronized int size() {
+        return messages.size();
+    }
+
+    /**
+     * Gets the approximate size of all cached messages.
+     * @return size in bytes
+     */
+    synchronized long getBytes() {
+        return totalBytes;
+    }
+
+    /**
+     * Gets how many times a requested message was found in the cache.
+     * @return amount of hits
+     */
+    long getHits() {
+        return hits.get();
+    }
+
+    /**
+     * Gets how many times a requested message was not found in the cache.
+     * @return amount of misses
+     */
+    long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * Gets how many messages were evicted because of the limits.
+     * @return amount of evicted messages
+     */
+    long getEvictions() {
+        return evictions.get();
+    }
+
+    @Override
+    public String toString() {
+        return "messages = " + size() + " (" + getBytes() + " bytes), hits = " + getHits()
+                + ", misses = " + getMisses() + ", evictions = " + getEvictions();
+    }
+}
@@ -15,7 +15,8 @@ import org.slf4j.MarkerFactory;
 
 import java.time.OffsetDateTime;
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 
 public class MessageImpl implements Message {
@@ -24,6 +25,24 @@ public class MessageImpl implements Message {
     private Channel channel;
     private final ClientImpl client;
     private final Map<String, ReactionImpl> reactions = new HashMap<>();
+    /**
+     * Text with converted mentions, with the raw text and the versions of the names it was created from.
+     */
+    private static final class ResolvedText {
+        final String raw;
+        final long namesVersion;
+        final long serverNamesVersion;
+        final String text;
+
+        ResolvedText(String raw, long namesVersion, long serverNamesVersion, String text) {
+            this.raw = raw;
+            this.namesVersion = namesVersion;
+            this.serverNamesVersion = serverNamesVersion;
+            this.text = text;
+        }
+    }
+
+    private volatile ResolvedText resolved;
 
     private final static Logger logger = LoggerFactory.getLogger(MessageImpl.class.getSimpleName());
     private final static Marker marker = MarkerFactory.getMarker("MessageImpl");
@@ -83,6 +102,7 @@ public class MessageImpl implements Message {
     }
 
     public void update(MessageObject update) {
+        resolved = null;
         if(update.getContent() != null) originalObject.setContent(update.getContent());
         if(update.getEditedTimestamp() != null) originalObject.setEditedTimestamp(update.getEditedTimestamp());
         if(update.isMentionEveryone() != null) originalObject.setMentionEveryone(update.isMentionEveryone());
@@ -108,28 +128,124 @@ public class MessageImpl implements Message {
 
     @Override
     public String getText() {
-        String text = originalObject.getContent();
-        if(channel.isPrivate()) {
-            for (User user : getMentionedUsers()) {
-                text = text.replace(user.getMention(), "@" + user.getName());
-            }
+        final String raw = originalObject.getContent();
+        final String memoized = getResolvedText(raw);
+        if(memoized != null) return memoized;
+        return resolveText(raw, false).text;
+    }
+
+    @Override
+    public CompletionStage<String> getTextAsync() {
+        final String raw = originalObject.getContent();
+        final String memoized = getResolvedText(raw);
+        if(memoized != null) return CompletableFuture.completedFuture(memoized);
+        final MentionRewriter.Result local = resolveText(raw, false);
+        if(local.complete) return CompletableFuture.completedFuture(local.text);
+        return CompletableFuture.supplyAsync(() -> resolveText(raw, true).text, client.getLookupExecutor());
+    }
+
+    /**
+     * Gets the memoized text with converted mentions.
+     * @param raw current raw text
+     * @return converted text, or null if it wasn't created for the current text and names yet
+     */
+    private String getResolvedText(String raw) {
+        final ResolvedText current = resolved;
+        if(current == null || current.raw != raw || current.namesVersion != client.getNamesVersion()
+                || current.serverNamesVersion != getServerNamesVersion()) return null;
+        return current.text;
+    }
+
+    /**
+     * Gets the version of the member and role names of the server the message was sent in.
+     * @return names version, 0 for messages outside of servers
+     */
+    private long getServerNamesVersion() {
+        if(channel == null || channel.isPrivate()) return 0;
+        return ((ServerImpl) channel.toServerChannel().getServer()).getNamesVersion();
+    }
+
+    /**
+     * Converts the mentions in the text and memoizes the result, if all of them were resolved.
+     * @param raw raw text
+     * @param remote true to ask Discord servers for unknown users and members
+     * @return converted text
+     */
+    private MentionRewriter.Result resolveText(String raw, boolean remote) {
+        // Read before the names are, so a change made meanwhile invalidates the result
+        final long namesVersion = client.getNamesVersion();
+        final long serverNamesVersion = getServerNamesVersion();
+        final MentionRewriter.Result result = MentionRewriter.rewrite(raw, new MentionNames(remote));
+        if(result.complete) {
+            resolved = new ResolvedText(raw, namesVersion, serverNamesVersion, result.text);
         }
-        else {
-            final Server server = getChannel().toServerChannel().getServer();
-            for (User user : getMentionedUsers()) {
-                text = text.replace(user.getMention(), "@" + user.getName());
-                final Member member = server.getMember(user);
-                text = text.replace(member.getMention(), "@" + member.getNickname());
+        return result;
+    }
+
+    /**
+     * Resolves the names of mentioned entities from the client's data.
+     */
+    private final class MentionNames implements MentionRewriter.Resolver {
+        private final boolean remote;
+
+        MentionNames(boolean remote) {
+            this.remote = remote;
+        }
+
+        @Override
+        public String user(String id) {
+            final User user = client.getUser(id);
+            if(user != null) return user.getName();
+            if(originalObject.getMentions() != null) {
+                for(UserObject mentioned : originalObject.getMentions()) {
+                    if(id.equals(mentioned.getId())) return mentioned.getUsername();
+                }
+            }
+            if(remote) {
+                try {
+                    return client.getUserById(id).getName();
+                }
+                catch (DiscordRequestException e) {
+                    logger.debug(marker, "Mentioned user " + id + " couldn't be retrieved.");
+                }
             }
-            for (Role role : getMentionedRoles()) {
-                text = text.replace(role.getMention(), "@" + role.getName());
+            return null;
+        }
+
+        @Override
+        public String member(String id) {
+            if(channel == null || channel.isPrivate()) return user(id);
+            final ServerImpl server = (ServerImpl) channel.toServerChannel().getServer();
+            Member member = server.getCachedMember(id);
+            if(member == null && remote) {
+                try {
+                    member = server.getMemberById(id);
+                }
+                catch (DiscordRequestException e) {
+                    logger.debug(marker, "Mentioned member " + id + " couldn't be retrieved.");
+                }
             }
+            if(member == null) return user(id);
+            return member.getNickname() != null ? member.getNickname() : member.getUser().getName();
+        }
+
+        @Override
+        public String role(String id) {
+            if(channel == null || channel.isPrivate()) return null;
+            final Role role = channel.toServerChannel().getServer().getRoleById(id);
+            return role == null ? null : role.getName();
+        }
+
+        @Override
+        public String channel(String id) {
+            final Channel mentioned = client.getChannelById(id);
+            if(mentioned == null || mentioned.isPrivate()) return null;
+            return mentioned.toServerChannel().getName();
         }
-        return text;
     }
 
     @Override
-    public Future<RequestResponse> edit(String newText) {
+    public CompletableFuture<RequestResponse> edit(String newText) {
         if(!getAuthor().equals(client.getMyUser())) {
             throw new PermissionDeniedException("You cannot edit messages that aren't yours.");
         }
@@ -143,7 +259,12 @@ public class MessageImpl implements Message {
     }
 
     @Override
-    public Future<RequestResponse> delete() {
+    public CompletionStage<RequestResponse> editAsync(String newText) {
+        return edit(newText);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> delete() {
         if(!getAuthor().equals(client.getMyUser())) {
             if(!((ServerChannelImpl) channel.toServerChannel()).checkPermission(Permission.MANAGE_MESSAGES)) {
                 throw new PermissionDeniedException("The application doesn't have permission to delete other messages than its.");
@@ -155,6 +276,11 @@ public class MessageImpl implements Message {
         return client.getRequester().deleteRequestAsync(endpoint);
     }
 
+    @Override
+    public CompletionStage<RequestResponse> deleteAsync() {
+        return delete();
+    }
+
     @Override
     public Channel getChannel() {
         return channel;
@@ -207,12 +333,17 @@ public class MessageImpl implements Message {
     }
 
     @Override
-    public Future<RequestResponse> reply(String reply) {
-        return getChannel().sendMessage(reply);
+    public CompletableFuture<RequestResponse> reply(String reply) {
+        return getChannel().sendMessageAsync(reply).toCompletableFuture();
     }
 
     @Override
-    public Future<RequestResponse> addReaction(Emoji emoji) {
+    public CompletionStage<RequestResponse> replyAsync(String reply) {
+        return reply(reply);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> addReaction(Emoji emoji) {
         final Channel channel = getChannel();
         final ReactionImpl reaction = reactions.values().stream().filter(r -> r.getEmoji().equals(emoji)).findFirst().orElse(null);
         if(reaction != null && reaction.isMine()) {
@@ -236,7 +367,12 @@ public class MessageImpl implements Message {
     }
 
     @Override
-    public Future<RequestResponse> removeReaction(Emoji emoji) {
+    public CompletionStage<RequestResponse> addReactionAsync(Emoji emoji) {
+        return addReaction(emoji);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> removeReaction(Emoji emoji) {
         ReactionImpl reaction = reactions.values().stream().filter(r -> r.getEmoji().equals(emoji)).findFirst().orElse(null);
         if(reaction == null) {
             throw new IllegalArgumentException("This message doesn't contain that emoji.");
@@ -251,7 +387,12 @@ public class MessageImpl implements Message {
     }
 
     @Override
-    public Future<RequestResponse> removeUserReaction(Emoji emoji, User user) {
+    public CompletionStage<RequestResponse> removeReactionAsync(Emoji emoji) {
+        return removeReaction(emoji);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> removeUserReaction(Emoji emoji, User user) {
         if(user.equals(client.getMyUser())) {
             return removeReaction(emoji);
         }
@@ -270,7 +411,12 @@ public class MessageImpl implements Message {
     }
 
     @Override
-    public Future<RequestResponse> removeAllReactions() {
+    public CompletionStage<RequestResponse> removeUserReactionAsync(Emoji emoji, User user) {
+        return removeUserReaction(emoji, user);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> removeAllReactions() {
         if (!channel.isPrivate()) {
             final ServerChannelImpl serverChannel = (ServerChannelImpl) channel;
             if (!serverChannel.checkPermission(Permission.MANAGE_MESSAGES)) {
@@ -283,6 +429,11 @@ public class MessageImpl implements Message {
                 .addElement("reactions").build());
     }
 
+    @Override
+    public CompletionStage<RequestResponse> removeAllReactionsAsync() {
+        return removeAllReactions();
+    }
+
     @Override
     public List<User> getReactions(Emoji emoji) {
         JSONArray rawUsers = client.getRequester().getRequestAsArray(
@@ -338,12 +489,22 @@ public class MessageImpl implements Message {
     }
 
     @Override
-    public Future<RequestResponse> pin() {
-        return getChannel().pinMessage(this);
+    public CompletableFuture<RequestResponse> pin() {
+        return getChannel().pinMessageAsync(this).toCompletableFuture();
+    }
+
+    @Override
+    public CompletionStage<RequestResponse> pinAsync() {
+        return pin();
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> unpin() {
+        return getChannel().unpinMessageAsync(this).toCompletableFuture();
     }
 
     @Override
-    public Future<RequestResponse> unpin() {
-        return getChannel().unpinMessage(this);
+    public CompletionStage<RequestResponse> unpinAsync() {
+        return unpin();
     }
 }
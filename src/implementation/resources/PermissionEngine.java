@@ -0,0 +1,289 @@
+package cz.salmelu.discord.implementation.resources;
+
+import cz.salmelu.discord.implementation.json.resources.PermissionOverwriteObject;
+import cz.salmelu.discord.implementation.util.Snowflake;
+import cz.salmelu.discord.resources.Permission;
+import cz.salmelu.discord.resources.PermissionOverwriteType;
+
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * <p>Calculates permissions of any member of a server, in the server or in any of its channels.</p>
+ * <p>Permissions are handled as bitmasks of {@link Permission} values, so no sets are created.
+ * The rules are available at https://support.discordapp.com/hc/en-us/articles/206141927-How-is-the-permission-hierarchy-structured-</p>
+ * <p>Calculated permissions are cached in the members and recalculated lazily, when they are requested again
+ * after something they depend on changed. Every cached value remembers the versions it was calculated from:</p>
+ * <ul>
+ *     <li>the versions of the @everyone role and of the member's roles, so changing a role's permissions
+ *     only invalidates the members having the role,</li>
+ *     <li>the version of the channel, changed with its overwrites or the overwrites of its category,</li>
+ *     <li>the version of the whole server, changed only when a role is deleted or the server changes its owner.</li>
+ * </ul>
+ * <p>Cached values are also bound to the array of member's role ids, which is replaced when their roles change.</p>
+ */
+class PermissionEngine {
+
+    /** All permissions, granted to administrators and the owner of the server */
+    static final long ALL_PERMISSIONS;
+
+    static {
+        long all = 0;
+        for(Permission permission : Permission.values()) {
+            all |= permission.getValue();
+        }
+        ALL_PERMISSIONS = all;
+    }
+
+    /**
+     * Permissions calculated for a member, with the versions they were calculated from.
+     */
+    static final class Entry {
+        final int serverVersion;
+        /** Member's role ids the permissions were calculated for, replaced whenever the roles change */
+        final long[] roleIds;
+        final long roleStamp;
+        final int channelVersion;
+        final long permissions;
+
+        Entry(int serverVersion, long[] roleIds, long roleStamp, int channelVersion, long permissions) {
+            this.serverVersion = serverVersion;
+            this.roleIds = roleIds;
+            this.roleStamp = roleStamp;
+            this.channelVersion = channelVersion;
+            this.permissions = permissions;
+        }
+
+        boolean isValid(int serverVersion, long[] roleIds, long roleStamp, int channelVersion) {
+            return this.serverVersion == serverVersion && this.roleIds == roleIds && this.roleStamp == roleStamp
+                    && this.channelVersion == channelVersion;
+        }
+    }
+
+    /**
+     * Set of permissions converted from a bitmask, reused while the bitmask doesn't change.
+     */
+    static final class PermissionSet {
+        final long permissions;
+        final Set<Permission> set;
+
+        private PermissionSet(long permissions) {
+            this.permissions = permissions;
+            this.set = Collections.unmodifiableSet(Permission.getPermissions(permissions));
+        }
+
+        /**
+         * Gets the set for the bitmask.
+         * @param current previously created set, may be null
+         * @param permissions bitmask of granted permissions
+         * @return the current set, if it has the same permissions, or a new one
+         */
+        static PermissionSet of(PermissionSet current, long permissions) {
+            return current != null && current.permissions == permissions ? current : new PermissionSet(permissions);
+        }
+    }
+
+    /**
+     * Permission overwrites of a channel, with the ids converted into numbers.
+     */
+    static final class Overwrites {
+        static final Overwrites EMPTY = new Overwrites(0, 0, new long[0], new long[0], new long[0],
+                new long[0], new long[0], new long[0]);
+
+        final long everyoneAllow;
+        final long everyoneDeny;
+        final long[] roleIds;
+        final long[] roleAllow;
+        final long[] roleDeny;
+        final long[] memberIds;
+        final long[] memberAllow;
+        final long[] memberDeny;
+
+        private Overwrites(long everyoneAllow, long everyoneDeny, long[] roleIds, long[] roleAllow, long[] roleDeny,
+                           long[] memberIds, long[] memberAllow, long[] memberDeny) {
+            this.everyoneAllow = everyoneAllow;
+            this.everyoneDeny = everyoneDeny;
+            this.roleIds = roleIds;
+            this.roleAllow = roleAllow;
+            this.roleDeny = roleDeny;
+            this.memberIds = memberIds;
+            this.memberAllow = memberAllow;
+            this.memberDeny = memberDeny;
+        }
+
+        /**
+         * Converts the overwrites received from Discord.
+         * @param overwrites received overwrites, may be null
+         * @param everyoneId id of the server's @everyone role
+         * @return converted overwrites
+         */
+        static Overwrites of(PermissionOverwriteObject[] overwrites, long everyoneId) {
+            if(overwrites == null || overwrites.length == 0) return EMPTY;
+            long everyoneAllow = 0, everyoneDeny = 0;
+            int roles = 0, members = 0;
+            for(PermissionOverwriteObject overwrite : overwrites) {
+                if(overwrite.getType() == PermissionOverwriteType.MEMBER) members++;
+                else if(Snowflake.parse(overwrite.getId()) != everyoneId) roles++;
+            }
+            final long[] roleIds = new long[roles], roleAllow = new long[roles], roleDeny = new long[roles];
+            final long[] memberIds = new long[members], memberAllow = new long[members], memberDeny = new long[members];
+            roles = members = 0;
+            for(PermissionOverwriteObject overwrite : overwrites) {
+                final long id = Snowflake.parse(overwrite.getId());
+                if(overwrite.getType() == PermissionOverwriteType.MEMBER) {
+                    memberIds[members] = id;
+                    memberAllow[members] = overwrite.getAllow();
+                    memberDeny[members++] = overwrite.getDeny();
+                }
+                else if(id == everyoneId) {
+                    everyoneAllow = overwrite.getAllow();
+                    everyoneDeny = overwrite.getDeny();
+                }
+                else {
+                    roleIds[roles] = id;
+                    roleAllow[roles] = overwrite.getAllow();
+                    roleDeny[roles++] = overwrite.getDeny();
+                }
+            }
+            return new Overwrites(everyoneAllow, everyoneDeny, roleIds, roleAllow, roleDeny,
+                    memberIds, memberAllow, memberDeny);
+        }
+    }
+
+    private final ServerImpl server;
+    /** Incremented whenever a change may affect permissions of all members */
+    private volatile int version = 0;
+
+    PermissionEngine(ServerImpl server) {
+        this.server = server;
+    }
+
+    /**
+     * Invalidates all the cached permissions of the server's members. Called by the server's dispatch lane,
+     * only for changes which can't be tracked by the role and channel versions.
+     */
+    void invalidateAll() {
+        version++;
+    }
+
+    /**
+     * Gets the permissions of the member in the whole server.
+     * @param member member
+     * @return bitmask of granted permissions
+     */
+    long getPermissions(MemberImpl member) {
+        final int serverVersion = version;
+        final long[] roleIds = member.getRoleIds();
+        final long roleStamp = roleStamp(roleIds);
+        final Entry cached = member.getCachedPermissions();
+        if(cached != null && cached.isValid(serverVersion, roleIds, roleStamp, 0)) {
+            return cached.permissions;
+        }
+        final long permissions = computeBase(member, roleIds);
+        member.setCachedPermissions(new Entry(serverVersion, roleIds, roleStamp, 0, permissions));
+        return permissions;
+    }
+
+    /**
+     * Gets the permissions of the member in the channel.
+     * @param member member
+     * @param channel channel of the member's server
+     * @return bitmask of granted permissions
+     */
+    long getPermissions(MemberImpl member, ServerChannelImpl channel) {
+        final int serverVersion = version;
+        final long[] roleIds = member.getRoleIds();
+        final long roleStamp = roleStamp(roleIds);
+        final int channelVersion = channel.getPermissionVersion();
+        final Entry cached = member.getCachedPermissions(channel);
+        if(cached != null && cached.isValid(serverVersion, roleIds, roleStamp, channelVersion)) {
+            return cached.permissions;
+        }
+        final long permissions = compute(member, roleIds, channel);
+        member.setCachedPermissions(channel, new Entry(serverVersion, roleIds, roleStamp, channelVersion, permissions));
+        return permissions;
+    }
+
+    /**
+     * Sums the versions of the roles the member's permissions depend on. The versions only grow,
+     * so the sum changes whenever any of the roles changes. Roles unknown to the server are skipped.
+     * @param roleIds member's role ids
+     * @return current stamp of member's roles
+     */
+    private long roleStamp(long[] roleIds) {
+        final RoleImpl everyone = (RoleImpl) server.getEveryoneRole();
+        long stamp = everyone == null ? 0 : everyone.getPermissionVersion();
+        for(long roleId : roleIds) {
+            final RoleImpl role = server.getRoleById(roleId);
+            if(role != null) {
+                stamp += role.getPermissionVersion();
+            }
+        }
+        return stamp;
+    }
+
+    /**
+     * Calculates the permissions given by the member's roles.
+     * @param member member
+     * @param roleIds member's role ids
+     * @return bitmask of granted permissions
+     */
+    private long computeBase(MemberImpl member, long[] roleIds) {
+        if(member.getId().equals(server.getOwnerId())) {
+            return ALL_PERMISSIONS;
+        }
+        final RoleImpl everyone = (RoleImpl) server.getEveryoneRole();
+        long permissions = everyone == null ? 0 : everyone.getPermissionBits();
+        for(long roleId : roleIds) {
+            final RoleImpl role = server.getRoleById(roleId);
+            if(role != null) {
+                permissions |= role.getPermissionBits();
+            }
+        }
+        if((permissions & Permission.ADMINISTRATOR.getValue()) != 0) {
+            return ALL_PERMISSIONS;
+        }
+        return permissions;
+    }
+
+    /**
+     * Calculates the permissions in the channel. The channel's category, or the server if there is none,
+     * gives the initial permissions, which are then changed by the overwrites of the channel.
+     * @param member member
+     * @param roleIds member's role ids
+     * @param channel channel
+     * @return bitmask of granted permissions
+     */
+    private long compute(MemberImpl member, long[] roleIds, ServerChannelImpl channel) {
+        final ServerChannelImpl parent = channel.getParent();
+        long permissions = parent == null ? getPermissions(member) : getPermissions(member, parent);
+        if((getPermissions(member) & Permission.ADMINISTRATOR.getValue()) != 0) {
+            return ALL_PERMISSIONS;
+        }
+
+        final Overwrites overwrites = channel.getOverwrites();
+        permissions = (permissions & ~overwrites.everyoneDeny) | overwrites.everyoneAllow;
+
+        long allow = 0, deny = 0;
+        for(int i = 0; i < overwrites.roleIds.length; i++) {
+            final long overwriteId = overwrites.roleIds[i];
+            for(long roleId : roleIds) {
+                if(roleId == overwriteId) {
+                    allow |= overwrites.roleAllow[i];
+                    deny |= overwrites.roleDeny[i];
+                    break;
+                }
+            }
+        }
+        permissions = (permissions & ~deny) | allow;
+
+        final long memberId = Snowflake.parse(member.getId());
+        for(int i = 0; i < overwrites.memberIds.length; i++) {
+            if(overwrites.memberIds[i] == memberId) {
+                permissions = (permissions & ~overwrites.memberDeny[i]) | overwrites.memberAllow[i];
+                break;
+            }
+        }
+        return permissions;
+    }
+}
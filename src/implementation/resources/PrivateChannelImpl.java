@@ -11,7 +11,8 @@ import cz.salmelu.discord.resources.*;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 public class PrivateChannelImpl extends ChannelBase implements PrivateChannel {
 
@@ -75,13 +76,18 @@ public class PrivateChannelImpl extends ChannelBase implements PrivateChannel {
     }
 
     @Override
-    public Future<RequestResponse> sendMessage(String text) {
+    public CompletableFuture<RequestResponse> sendMessage(String text) {
         MessageObject messageObject = new MessageObject();
         messageObject.setContent(text);
         return client.getRequester().postRequestAsync(EndpointBuilder.create(Endpoint.CHANNEL)
                 .addElement(id).addElement("messages").build(), messageObject);
     }
 
+    @Override
+    public CompletionStage<RequestResponse> sendMessageAsync(String text) {
+        return sendMessage(text);
+    }
+
     @Override
     public ServerChannel toServerChannel() {
         return null;
@@ -9,12 +9,15 @@ import cz.salmelu.discord.resources.Server;
 import java.util.Collections;
 import java.util.List;
 import java.util.Set;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 public class RoleImpl implements Role {
 
     private final ServerImpl server;
     private final RoleObject originalObject;
+    /** Incremented when the role's permissions change, starts at 1 so adding the role changes member's stamps */
+    private volatile int permissionVersion = 1;
 
     public RoleImpl(ServerImpl server, RoleObject object) {
         this.server = server;
@@ -36,15 +39,36 @@ public class RoleImpl implements Role {
     }
 
     public void update(RoleObject object) {
+        final boolean permissionsChanged = originalObject.getPermissions() != object.getPermissions();
         originalObject.setName(object.getName());
         originalObject.setColor(object.getColor());
         originalObject.setPermissions(object.getPermissions());
+        if(permissionsChanged) {
+            // After the permissions are set, so anyone seeing the new version sees the new permissions
+            permissionVersion++;
+        }
         originalObject.setPosition(object.getPosition());
         originalObject.setManaged(object.isManaged());
         originalObject.setMentionable(object.isMentionable());
         originalObject.setPinned(object.isPinned());
     }
 
+    /**
+     * Gets the version of the role's permissions, see {@link PermissionEngine}.
+     * @return current version
+     */
+    int getPermissionVersion() {
+        return permissionVersion;
+    }
+
+    /**
+     * Gets the permissions granted by this role.
+     * @return bitmask of {@link Permission} values
+     */
+    public long getPermissionBits() {
+        return originalObject.getPermissions();
+    }
+
     @Override
     public String getId() {
         return originalObject.getId();
@@ -86,13 +110,24 @@ public class RoleImpl implements Role {
     }
 
     @Override
-    public Future<RequestResponse> update(String name, List<Permission> permissions, int color, boolean separate,
+    public CompletableFuture<RequestResponse> update(String name, List<Permission> permissions, int color, boolean separate,
                          boolean mentionable) {
         return server.updateRole(this, name, permissions, color, separate, mentionable);
     }
 
     @Override
-    public Future<RequestResponse> delete() {
+    public CompletionStage<RequestResponse> updateAsync(String name, List<Permission> permissions, int color, boolean separate,
+                                                        boolean mentionable) {
+        return update(name, permissions, color, separate, mentionable);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> delete() {
         return server.deleteRole(this);
     }
+
+    @Override
+    public CompletionStage<RequestResponse> deleteAsync() {
+        return delete();
+    }
 }
@@ -7,12 +7,14 @@ import cz.salmelu.discord.implementation.json.resources.MessageObject;
 import cz.salmelu.discord.implementation.json.resources.PermissionOverwriteObject;
 import cz.salmelu.discord.implementation.net.rest.Endpoint;
 import cz.salmelu.discord.implementation.net.rest.EndpointBuilder;
+import cz.salmelu.discord.implementation.util.Snowflake;
 import cz.salmelu.discord.resources.*;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.stream.Collectors;
 
 public class ServerChannelImpl extends ChannelBase implements ServerChannel {
@@ -23,7 +25,10 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
     private final ServerImpl server;
     private ServerChannelImpl parent = null;
 
-    private Set<Permission> currentPermissions;
+    private volatile PermissionEngine.PermissionSet currentPermissions;
+    private volatile PermissionEngine.Overwrites overwrites;
+    /** Incremented whenever permissions in this channel may have changed */
+    private volatile int permissionVersion = 0;
 
     public ServerChannelImpl(ClientImpl client, ServerImpl server, ChannelObject channelObject) {
         this.id = channelObject.getId();
@@ -35,8 +40,8 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
         if(originalObject.getParentId() != null) {
             parent = (ServerChannelImpl) server.getChannelById(originalObject.getParentId());
         }
-
-        calculatePermissions();
+        overwrites = PermissionEngine.Overwrites.of(originalObject.getPermissionOverwrites(),
+                Snowflake.parse(server.getId()));
     }
 
     @Override
@@ -63,15 +68,14 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
         return null;
     }
 
-    // called when server becomes unavailable... prevents doing any actions with it
-    public void resetPermissions() {
-        currentPermissions = EnumSet.noneOf(Permission.class);
-    }
-
     public void update(ChannelObject channelObject) {
         if(channelObject.getName() != null) originalObject.setName(channelObject.getName());
         if(channelObject.getPosition() != null) originalObject.setPosition(channelObject.getPosition());
-        if(channelObject.getPermissionOverwrites() != null) originalObject.setPermissionOverwrites(channelObject.getPermissionOverwrites());
+        if(channelObject.getPermissionOverwrites() != null) {
+            originalObject.setPermissionOverwrites(channelObject.getPermissionOverwrites());
+            overwrites = PermissionEngine.Overwrites.of(channelObject.getPermissionOverwrites(),
+                    Snowflake.parse(server.getId()));
+        }
         if(channelObject.getTopic() != null) originalObject.setTopic(channelObject.getTopic());
         if(channelObject.getLastMessageId() != null) originalObject.setLastMessageId(channelObject.getLastMessageId());
         if(channelObject.getBitrate() != null) originalObject.setBitrate(channelObject.getBitrate());
@@ -80,13 +84,16 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
             if(!channelObject.getParentId().equals(originalObject.getParentId())) {
                 originalObject.setParentId(channelObject.getParentId());
                 parent = (ServerChannelImpl) server.getChannelById(originalObject.getParentId());
+                permissionVersion++;
             }
         }
 
-        if(channelObject.getType() == ChannelType.SERVER_CATEGORY) {
-            server.clearAllPermissions();
+        if(channelObject.getPermissionOverwrites() != null) {
+            permissionVersion++;
+            if(channelObject.getType() == ChannelType.SERVER_CATEGORY) {
+                server.invalidateCategory(this);
+            }
         }
-        calculatePermissions();
     }
 
     @Override
@@ -94,67 +101,41 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
         originalObject.setLastMessageId(message.getId());
     }
 
-    public void clearPermissions() {
-        currentPermissions = null;
+    /**
+     * Invalidates the cached permissions in this channel. They are calculated again when requested.
+     */
+    public void invalidatePermissions() {
+        permissionVersion++;
     }
 
     /**
-     * Precalculates current permissions for the channel given the discord rules.
-     *
-     * The rules are available at https://support.discordapp.com/hc/en-us/articles/206141927-How-is-the-permission-hierarchy-structured-
-     *
-     * Calculated permissions are saved in a local field to avoid recalculating everytime
+     * Gets the category of the channel.
+     * @return parent category, or null if the channel is not in any
      */
-    public void calculatePermissions() {
-        if(originalObject.getPermissionOverwrites() == null
-                || originalObject.getPermissionOverwrites().length == 0) {
-            currentPermissions = getParentPermissions();
-            return;
-        }
-
-        final long[] permissionValues = {0, 0, 0, 0, 0, 0};
-        final RoleImpl everyoneRole = (RoleImpl) server.getEveryoneRole();
-        final MemberImpl me = server.getMe();
-        final List<String> roleIds = me.getRoles().stream().map(Role::getId).collect(Collectors.toList());
-
-        Arrays.stream(originalObject.getPermissionOverwrites()).forEach(overwriteObject -> {
-            if(overwriteObject.getType().equals(PermissionOverwriteType.ROLE)) {
-                if(overwriteObject.getId().equals(everyoneRole.getId())) {
-                    permissionValues[0] = overwriteObject.getDeny();
-                    permissionValues[1] = overwriteObject.getAllow();
-                }
-                else if(roleIds.contains(overwriteObject.getId())) {
-                    permissionValues[2] |= overwriteObject.getDeny();
-                    permissionValues[3] |= overwriteObject.getAllow();
-                }
-            }
-            else if(overwriteObject.getType().equals(PermissionOverwriteType.MEMBER)
-                    && me.getId().equals(overwriteObject.getId())) {
-                permissionValues[4] = overwriteObject.getDeny();
-                permissionValues[5] = overwriteObject.getAllow();
-            }
-        });
-
-        EnumSet<Permission> permissions = EnumSet.copyOf(getParentPermissions());
-        permissions.removeAll(Permission.getPermissions(permissionValues[0]));
-        permissions.addAll(Permission.getPermissions(permissionValues[1]));
-        permissions.removeAll(Permission.getPermissions(permissionValues[2]));
-        permissions.addAll(Permission.getPermissions(permissionValues[3]));
-        permissions.removeAll(Permission.getPermissions(permissionValues[4]));
-        permissions.addAll(Permission.getPermissions(permissionValues[5]));
+    public ServerChannelImpl getParent() {
+        return parent;
+    }
 
-        currentPermissions = Collections.unmodifiableSet(permissions);
+    /**
+     * Gets the permission overwrites of the channel, prepared for the permission engine.
+     * @return channel's overwrites
+     */
+    PermissionEngine.Overwrites getOverwrites() {
+        return overwrites;
     }
 
-    private Set<Permission> getParentPermissions() {
-        if(parent == null) {
-            return EnumSet.copyOf(server.getPermissions());
-        }
-        return parent.getPermissions();
+    /**
+     * Gets the version of the channel's permissions. Permissions cached with an older version are not valid anymore.
+     * @return current version
+     */
+    int getPermissionVersion() {
+        return permissionVersion;
     }
 
     public boolean checkPermission(Permission permission) {
-        return currentPermissions.contains(permission);
+        final MemberImpl me = server.getMe();
+        if(server.isDisabled() || me == null) return false;
+        return (server.getPermissionEngine().getPermissions(me, this) & permission.getValue()) != 0;
     }
 
     @Override
@@ -204,17 +185,26 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
 
     @Override
     public Set<Permission> getPermissions() {
-        if(currentPermissions == null) calculatePermissions();
-        return Collections.unmodifiableSet(currentPermissions);
+        final MemberImpl me = server.getMe();
+        if(server.isDisabled() || me == null) return Collections.emptySet();
+        final long bits = server.getPermissionEngine().getPermissions(me, this);
+        final PermissionEngine.PermissionSet set = PermissionEngine.PermissionSet.of(currentPermissions, bits);
+        currentPermissions = set;
+        return set.set;
     }
 
     @Override
-    public Future<RequestResponse> changeName(String newName) {
+    public CompletableFuture<RequestResponse> changeName(String newName) {
         return editChannelCommon(newName, null, -1, -1, -1);
     }
 
     @Override
-    public Future<RequestResponse> changeTopic(String newTopic) {
+    public CompletionStage<RequestResponse> changeNameAsync(String newName) {
+        return changeName(newName);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> changeTopic(String newTopic) {
         if(originalObject.getType() != ChannelType.SERVER_TEXT) {
             throw new PermissionDeniedException("You can only set topic in text channels.");
         }
@@ -222,12 +212,22 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
     }
 
     @Override
-    public Future<RequestResponse> changePosition(int newPosition) {
+    public CompletionStage<RequestResponse> changeTopicAsync(String newTopic) {
+        return changeTopic(newTopic);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> changePosition(int newPosition) {
         return editChannelCommon(null, null, newPosition, -1, -1);
     }
 
     @Override
-    public Future<RequestResponse> changeBitrate(int newBitRate)
+    public CompletionStage<RequestResponse> changePositionAsync(int newPosition) {
+        return changePosition(newPosition);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> changeBitrate(int newBitRate)
             throws IllegalArgumentException, PermissionDeniedException {
         if(originalObject.getType() != ChannelType.SERVER_VOICE) {
             throw new PermissionDeniedException("You can only set bitrate in voice channels.");
@@ -236,7 +236,13 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
     }
 
     @Override
-    public Future<RequestResponse> changeUserLimit(int newUserLimit)
+    public CompletionStage<RequestResponse> changeBitrateAsync(int newBitRate)
+            throws IllegalArgumentException, PermissionDeniedException {
+        return changeBitrate(newBitRate);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> changeUserLimit(int newUserLimit)
             throws IllegalArgumentException, PermissionDeniedException {
         if(originalObject.getType() != ChannelType.SERVER_VOICE) {
             throw new PermissionDeniedException("You can only set user limit in voice channels.");
@@ -245,7 +251,13 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
     }
 
     @Override
-    public Future<RequestResponse> editTextChannel(String newName, String newTopic,
+    public CompletionStage<RequestResponse> changeUserLimitAsync(int newUserLimit)
+            throws IllegalArgumentException, PermissionDeniedException {
+        return changeUserLimit(newUserLimit);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> editTextChannel(String newName, String newTopic,
                                                    int newPosition) {
         if(originalObject.getType() != ChannelType.SERVER_TEXT) {
             throw new PermissionDeniedException("This channel is not a text channel.");
@@ -254,14 +266,25 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
     }
 
     @Override
-    public Future<RequestResponse> editVoiceChannel(String newName, int newPosition, int newBitrate, int newUserLimit) {
+    public CompletionStage<RequestResponse> editTextChannelAsync(String newName, String newTopic,
+                                                                 int newPosition) {
+        return editTextChannel(newName, newTopic, newPosition);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> editVoiceChannel(String newName, int newPosition, int newBitrate, int newUserLimit) {
         if(originalObject.getType() != ChannelType.SERVER_VOICE) {
             throw new PermissionDeniedException("This channel is not a voice channel.");
         }
         return editChannelCommon(newName, null, newPosition, newBitrate, newUserLimit);
     }
 
-    private Future<RequestResponse> editChannelCommon(String name, String topic, int position, int bitrate,
+    @Override
+    public CompletionStage<RequestResponse> editVoiceChannelAsync(String newName, int newPosition, int newBitrate, int newUserLimit) {
+        return editVoiceChannel(newName, newPosition, newBitrate, newUserLimit);
+    }
+
+    private CompletableFuture<RequestResponse> editChannelCommon(String name, String topic, int position, int bitrate,
                                    int userLimit) {
         if(!checkPermission(Permission.MANAGE_CHANNELS)) {
             throw new PermissionDeniedException("This application doesn't have the permission to edit this channel.");
@@ -291,7 +314,7 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
     }
 
     @Override
-    public Future<RequestResponse> updatePermissionOverwrites(PermissionOverwrite old, PermissionOverwrite replaced) {
+    public CompletableFuture<RequestResponse> updatePermissionOverwrites(PermissionOverwrite old, PermissionOverwrite replaced) {
         if(!old.getType().equals(replaced.getType())) {
             throw new IllegalArgumentException("Cannot replace overwrites of different types.");
         }
@@ -310,7 +333,12 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
     }
 
     @Override
-    public Future<RequestResponse> deletePermissionOverwrites(PermissionOverwrite overwrites) {
+    public CompletionStage<RequestResponse> updatePermissionOverwritesAsync(PermissionOverwrite old, PermissionOverwrite replaced) {
+        return updatePermissionOverwrites(old, replaced);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> deletePermissionOverwrites(PermissionOverwrite overwrites) {
         if(!checkPermission(Permission.MANAGE_ROLES)) {
             throw new PermissionDeniedException("This application doesn't have the permission to change this channel's permissions.");
         }
@@ -320,6 +348,11 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
         return client.getRequester().deleteRequestAsync(endpoint);
     }
 
+    @Override
+    public CompletionStage<RequestResponse> deletePermissionOverwritesAsync(PermissionOverwrite overwrites) {
+        return deletePermissionOverwrites(overwrites);
+    }
+
     @Override
     public String getMention() {
         return "<#" + id + ">";
@@ -336,7 +369,7 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
     }
 
     @Override
-    public Future<RequestResponse> sendMessage(String text) {
+    public CompletableFuture<RequestResponse> sendMessage(String text) {
         if(!canSendMessage()) {
             throw new PermissionDeniedException("This application doesn't have the permission to send messages to this channel.");
         }
@@ -346,6 +379,11 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
                 .addElement("messages").build(), messageObject);
     }
 
+    @Override
+    public CompletionStage<RequestResponse> sendMessageAsync(String text) {
+        return sendMessage(text);
+    }
+
     @Override
     public Message getMessage(String id) throws PermissionDeniedException {
         if(!checkPermission(Permission.READ_MESSAGE_HISTORY)) {
@@ -355,12 +393,17 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
     }
 
     @Override
-    public Future<RequestResponse> bulkDeleteMessages(List<Message> messages) {
+    public CompletableFuture<RequestResponse> bulkDeleteMessages(List<Message> messages) {
         return bulkDeleteMessagesByIds(messages.stream().map(Message::getId).collect(Collectors.toList()));
     }
 
     @Override
-    public Future<RequestResponse> bulkDeleteMessagesByIds(List<String> messageIds) {
+    public CompletionStage<RequestResponse> bulkDeleteMessagesAsync(List<Message> messages) {
+        return bulkDeleteMessages(messages);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> bulkDeleteMessagesByIds(List<String> messageIds) {
         if(!checkPermission(Permission.MANAGE_MESSAGES)) {
             throw new PermissionDeniedException("This application doesn't have the permission to delete messages in this channel.");
         }
@@ -375,7 +418,12 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
     }
 
     @Override
-    public Future<RequestResponse> pinMessage(Message message) {
+    public CompletionStage<RequestResponse> bulkDeleteMessagesByIdsAsync(List<String> messageIds) {
+        return bulkDeleteMessagesByIds(messageIds);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> pinMessage(Message message) {
         if(!isPrivate()) {
             if(!((ServerChannelImpl) toServerChannel()).checkPermission(Permission.MANAGE_MESSAGES)) {
                 throw new PermissionDeniedException("This application doesn't have the permission manage messages in this channel.");
@@ -385,7 +433,7 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
     }
 
     @Override
-    public Future<RequestResponse> unpinMessage(Message message) {
+    public CompletableFuture<RequestResponse> unpinMessage(Message message) {
         if(!isPrivate()) {
             if(!((ServerChannelImpl) toServerChannel()).checkPermission(Permission.MANAGE_MESSAGES)) {
                 throw new PermissionDeniedException("This application doesn't have the permission manage messages in this channel.");
@@ -395,7 +443,7 @@ public class ServerChannelImpl extends ChannelBase implements ServerChannel {
     }
 
     @Override
-    public Future<RequestResponse> deleteChannel() {
+    public CompletableFuture<RequestResponse> deleteChannel() {
         if(!checkPermission(Permission.MANAGE_CHANNELS)) {
             throw new PermissionDeniedException("This application doesn't have the permission to delete this channel.");
         }
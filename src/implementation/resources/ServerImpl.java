@@ -5,12 +5,15 @@ import cz.salmelu.discord.implementation.json.resources.*;
 import cz.salmelu.discord.implementation.json.response.ServerMemberUpdateResponse;
 import cz.salmelu.discord.implementation.net.rest.Endpoint;
 import cz.salmelu.discord.implementation.net.rest.EndpointBuilder;
+import cz.salmelu.discord.implementation.util.LongMap;
 import cz.salmelu.discord.resources.*;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.util.*;
-import java.util.concurrent.Future;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class ServerImpl implements Server {
 
@@ -20,18 +23,20 @@ public class ServerImpl implements Server {
     private final ClientImpl client;
     private final List<ServerChannel> channelList = new ArrayList<>();
     private final Map<String, ServerChannel> channelsByName = new HashMap<>();
-    private final Map<String, ServerChannel> channelsById = new HashMap<>();
+    private final LongMap<ServerChannel> channelsById = new LongMap<>();
     private final List<Role> roleList = new ArrayList<>();
-    private final Map<String, Role> rolesById = new HashMap<>();
+    private final LongMap<Role> rolesById = new LongMap<>();
     private final Map<String, Role> rolesByName = new HashMap<>();
-    private final List<MemberImpl> memberList = new ArrayList<>();
-    private final Map<String, MemberImpl> membersById = new HashMap<>();
-    private final Map<String, MemberImpl> membersByNick = new HashMap<>();
+    private final MemberIndex members = new MemberIndex(this::createMember);
 
-    private boolean disabled = false;
-    private Set<Permission> permissions = null;
+    private final PermissionEngine permissionEngine = new PermissionEngine(this);
+
+    private volatile boolean disabled = false;
+    private volatile PermissionEngine.PermissionSet permissions = null;
     private RoleImpl everyoneRole;
     private MemberImpl me;
+    /** Incremented when names of members or roles may have changed */
+    private final AtomicLong namesVersion = new AtomicLong();
 
     public ServerImpl(ClientImpl client, ServerObject serverObject) {
         this.id = serverObject.getId();
@@ -46,23 +51,7 @@ public class ServerImpl implements Server {
             if(roleRef.getName().equals("@everyone")) everyoneRole = roleRef;
         });
 
-        Arrays.stream(serverObject.getMembers()).forEach((member) -> {
-            UserImpl user = client.getUser(member.getUser().getId());
-            if(user == null) {
-                user = new UserImpl(client, member.getUser());
-                client.addUser(user);
-            }
-            final MemberImpl memberRef = new MemberImpl(client, this, user, member);
-            memberList.add(memberRef);
-            membersById.put(memberRef.getId(), memberRef);
-            membersByNick.put(memberRef.getNickname() == null
-                    ? memberRef.getUser().getName()
-                    : memberRef.getNickname(),
-                    memberRef);
-            if(memberRef.getId().equals(client.getMyUser().getId())) {
-                me = memberRef;
-            }
-        });
+        addMembers(serverObject.getMembers());
 
         Arrays.stream(serverObject.getChannels()).forEach((channel) -> {
             final ServerChannelImpl channelRef = new ServerChannelImpl(client, this, channel);
@@ -91,25 +80,46 @@ public class ServerImpl implements Server {
         return me;
     }
 
+    /**
+     * Gets the engine calculating permissions of the server's members.
+     * @return permission engine
+     */
+    PermissionEngine getPermissionEngine() {
+        return permissionEngine;
+    }
+
+    /**
+     * Gets the id of the server's owner.
+     * @return owner's user id
+     */
+    public String getOwnerId() {
+        return originalObject.getOwnerId();
+    }
+
     @Override
     public Set<Permission> getPermissions() {
         if(disabled) return EnumSet.noneOf(Permission.class);
-        if(permissions != null) return permissions;
-        // adds everyone permission + user role's permissions together
-        EnumSet<Permission> set = EnumSet.copyOf(everyoneRole.getPermissions());
-        for(Role role : getMe().getRoles()) {
-            set.addAll(role.getPermissions());
-        }
-        permissions = Collections.unmodifiableSet(set);
-        return permissions;
-    }
-
-    public void clearAllPermissions() {
-        channelList.forEach(channel -> ((ServerChannelImpl) channel).clearPermissions());
+        final long bits = me == null ? 0 : permissionEngine.getPermissions(me);
+        final PermissionEngine.PermissionSet set = PermissionEngine.PermissionSet.of(permissions, bits);
+        permissions = set;
+        return set.set;
+    }
+
+    /**
+     * Invalidates the permissions in the channels of a category, after the category's permissions changed.
+     * @param category changed category
+     */
+    public void invalidateCategory(ServerChannelImpl category) {
+        channelList.forEach(channel -> {
+            if(((ServerChannelImpl) channel).getParent() == category) {
+                ((ServerChannelImpl) channel).invalidatePermissions();
+            }
+        });
     }
 
     public boolean checkPermission(Permission permission) {
-        return permissions.contains(permission);
+        if(disabled || me == null) return false;
+        return (permissionEngine.getPermissions(me) & permission.getValue()) != 0;
     }
 
     public void disable() {
@@ -133,9 +143,14 @@ public class ServerImpl implements Server {
         channelsById.remove(channel.getId());
         channelsByName.remove(channel.getName());
         client.removeChannel(channel);
+        // Don't keep the removed channel reachable from the permission caches
+        members.forEachCreated(member -> member.removeCachedPermissions(channel));
     }
 
     public void update(ServerObject serverObject) {
+        if(!Objects.equals(originalObject.getOwnerId(), serverObject.getOwnerId())) {
+            permissionEngine.invalidateAll();
+        }
         originalObject.setName(serverObject.getName());
         originalObject.setIconHash(serverObject.getIconHash());
         originalObject.setOwnerId(serverObject.getOwnerId());
@@ -152,8 +167,6 @@ public class ServerImpl implements Server {
         originalObject.setMfaLevel(serverObject.getMfaLevel());
 
         updateRoles();
-        permissions = null;
-        channelList.forEach(channel -> ((ServerChannelImpl) channel).calculatePermissions());
     }
 
     private void updateRoles() {
@@ -169,6 +182,10 @@ public class ServerImpl implements Server {
                 newRoleList.add(roleUpdate);
             }
         });
+        if(newRoleList.size() != roleList.size() || !newRoleList.containsAll(roleList)) {
+            // Some roles were deleted, the role versions don't cover that
+            permissionEngine.invalidateAll();
+        }
         roleList.clear();
         rolesByName.clear();
         rolesById.clear();
@@ -190,66 +207,128 @@ public class ServerImpl implements Server {
 
     public Role removeRole(String roleId) {
         final Role role = rolesById.remove(roleId);
+        if(role == null) return null;
         roleList.remove(role);
         rolesByName.remove(role.getName());
+        permissionEngine.invalidateAll();
         return role;
     }
 
+    /**
+     * Gets the user instance for received user, registering it in the client if it is not known yet.
+     * @param userObject received user
+     * @return user instance
+     */
+    private UserImpl obtainUser(UserObject userObject) {
+        final UserImpl user = client.getUser(userObject.getId());
+        if(user != null) return user;
+        return client.addUserIfAbsent(new UserImpl(client, userObject));
+    }
+
+    /**
+     * Creates a member from its record, when it's needed for the first time.
+     * @param record member record
+     * @return created member
+     */
+    private MemberImpl createMember(MemberRecord record) {
+        return new MemberImpl(client, this, obtainUser(record.getUser()), record.toObject());
+    }
+
     public Member addMember(ServerMemberObject memberObject) {
-        UserImpl user = client.getUser(memberObject.getUser().getId());
-        if(user == null) {
-            user = new UserImpl(client, memberObject.getUser());
-            client.addUser(user);
-        }
-        final MemberImpl memberRef = new MemberImpl(client, this, user, memberObject);
-        memberList.add(memberRef);
-        membersById.put(memberRef.getId(), memberRef);
-        membersByNick.put(memberRef.getNickname() == null
-                        ? memberRef.getUser().getName()
-                        : memberRef.getNickname(),
-                memberRef);
+        final MemberImpl memberRef = new MemberImpl(client, this, obtainUser(memberObject.getUser()), memberObject);
+        members.add(memberRef);
         if(memberRef.getId().equals(client.getMyUser().getId())) {
             me = memberRef;
         }
         return memberRef;
     }
 
-    public void removeMember(User userObject) {
-        MemberImpl removed = membersById.remove(userObject.getId());
-        memberList.remove(removed);
-        membersByNick.remove(removed.getNickname());
+    /**
+     * <p>Adds received members to the server.</p>
+     * <p>If the client loads members lazily, only their records are stored and the members are created
+     * when they are needed.</p>
+     * @param memberObjects received members
+     * @return immutable list of the added members
+     */
+    public List<Member> addMembers(ServerMemberObject[] memberObjects) {
+        if(!client.isLazyMembers()) {
+            final List<Member> added = new ArrayList<>(memberObjects.length);
+            Arrays.stream(memberObjects).forEach(memberObject -> added.add(addMember(memberObject)));
+            return Collections.unmodifiableList(added);
+        }
+        final String myId = client.getMyUser().getId();
+        final List<MemberRecord> records = new ArrayList<>(memberObjects.length);
+        boolean containsMe = false;
+        for(ServerMemberObject memberObject : memberObjects) {
+            records.add(new MemberRecord(memberObject));
+            containsMe |= myId.equals(memberObject.getUser().getId());
+        }
+        final List<Member> added = members.addAll(records);
+        if(containsMe) {
+            me = members.get(myId);
+        }
+        return added;
+    }
+
+    /**
+     * Gets a member already known to the client, without asking Discord servers.
+     * @param id member id
+     * @return member, or null if the member is not known
+     */
+    public MemberImpl getCachedMember(String id) {
+        return members.get(id);
+    }
+
+    /**
+     * Checks if the member is known, without loading it.
+     * @param id member id
+     * @return true if the member is on the server
+     */
+    public boolean hasMember(String id) {
+        return members.contains(id);
+    }
+
+    /**
+     * Removes a member from the server. Lazily loaded members are created, so that they can be passed to the listeners.
+     * @param id member id
+     * @return removed member, or null if there was no such member
+     */
+    public MemberImpl removeMember(String id) {
+        return members.remove(id);
     }
 
     public Member updateMember(ServerMemberUpdateResponse memberObject) {
-        MemberImpl member = membersById.get(memberObject.getUser().getId());
-
-        final String oldNick = member.getNickname();
-        if(oldNick != null) {
-            membersByNick.remove(oldNick);
-        }
-        else {
-            membersByNick.remove(member.getUser().getName());
-        }
-
-        final String newNick = memberObject.getNick();
-        if(newNick != null) {
-            membersByNick.put(newNick, member);
-        }
-        else {
-            membersByNick.put(member.getUser().getName(), member);
-        }
+        final MemberImpl member = members.get(memberObject.getUser().getId());
+        if(member == null) return null;
 
+        final String oldName = member.getUser().getName();
         member.setNickname(memberObject.getNick());
-
         member.setRoles(memberObject.getRoles());
         ((UserImpl) member.getUser()).update(memberObject.getUser());
-        if(memberObject.getUser().getId().equals(me.getUser().getId())) {
-            permissions = null;
-            channelList.forEach(channel -> ((ServerChannelImpl) channel).calculatePermissions());
+        members.nicknameChanged(member.getId());
+        if(!Objects.equals(oldName, member.getUser().getName())) {
+            // The user is shared by all the servers
+            client.namesChanged();
         }
         return member;
     }
 
+    /**
+     * Notes that the names of some members or roles of the server changed,
+     * so that the texts with converted mentions sent in the server are created again.
+     */
+    public void namesChanged() {
+        namesVersion.incrementAndGet();
+    }
+
+    /**
+     * Gets the version of the member and role names, incremented with every change of them.
+     * @return names version
+     */
+    long getNamesVersion() {
+        return namesVersion.get();
+    }
+
     public ClientImpl getClient() {
         return client;
     }
@@ -265,12 +344,17 @@ public class ServerImpl implements Server {
     }
 
     @Override
-    public Future<RequestResponse> leave() {
+    public CompletableFuture<RequestResponse> leave() {
         final Endpoint endpoint = EndpointBuilder.create(Endpoint.USER).addElement("@me")
                                       .addElement("guilds").addElement(getId()).build();
         return getClient().getRequester().deleteRequestAsync(endpoint);
     }
 
+    @Override
+    public CompletionStage<RequestResponse> leaveAsync() {
+        return leave();
+    }
+
     @Override
     public List<ServerChannel> getChannels() {
         return Collections.unmodifiableList(channelList);
@@ -301,6 +385,15 @@ public class ServerImpl implements Server {
         return rolesById.get(id);
     }
 
+    /**
+     * Gets the role with given numeric id.
+     * @param id role id
+     * @return role, or null if there is none
+     */
+    RoleImpl getRoleById(long id) {
+        return (RoleImpl) rolesById.get(id);
+    }
+
     @Override
     public Role getRoleByName(String name) {
         return rolesByName.get(name);
@@ -308,17 +401,17 @@ public class ServerImpl implements Server {
 
     @Override
     public void loadAllMembers() {
-        client.getSocket().requestOfflineMembers(getId(), "", 0);
+        client.getShardManager().getShardForServer(getId()).requestOfflineMembers(getId(), "", 0);
     }
 
     @Override
     public List<Member> getMembers() {
-        return Collections.unmodifiableList(memberList);
+        return members.getAll();
     }
 
     @Override
     public Member getMemberById(String id) {
-        Member member = membersById.get(id);
+        Member member = members.get(id);
         if(member == null) {
             // Let's try to get it remotely
             try {
@@ -330,7 +423,8 @@ public class ServerImpl implements Server {
                 final JSONObject jsonObject = getClient().getRequester().getRequestAsObject(endpoint);
                 final ServerMemberObject memberObject = client.getSerializer()
                         .deserialize(jsonObject, ServerMemberObject.class);
-                return addMember(memberObject);
+                // Not cached, the members are only modified by the dispatch lane of the server
+                return new MemberImpl(client, this, obtainUser(memberObject.getUser()), memberObject);
             }
             catch(DiscordRequestException e) {
                 // No such user was found
@@ -347,11 +441,16 @@ public class ServerImpl implements Server {
 
     @Override
     public Member getMemberByNickname(String nickname) {
-        return membersByNick.get(nickname);
+        return members.getByNickname(nickname);
     }
 
     @Override
-    public Future<RequestResponse> kickMember(Member member) {
+    public List<Member> getMembersByNickname(String nickname) {
+        return members.getAllByNickname(nickname);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> kickMember(Member member) {
         if(!getPermissions().contains(Permission.KICK_MEMBERS)) {
             throw new PermissionDeniedException("This application cannot kick members on this server.");
         }
@@ -360,6 +459,11 @@ public class ServerImpl implements Server {
         return client.getRequester().deleteRequestAsync(endpoint);
     }
 
+    @Override
+    public CompletionStage<RequestResponse> kickMemberAsync(Member member) {
+        return kickMember(member);
+    }
+
     @Override
     public List<User> getBannedUsers() {
         if(!getPermissions().contains(Permission.BAN_MEMBERS)) {
@@ -383,12 +487,17 @@ public class ServerImpl implements Server {
     }
 
     @Override
-    public Future<RequestResponse> banMember(Member member, int messageDays) {
+    public CompletableFuture<RequestResponse> banMember(Member member, int messageDays) {
         return banUser(member.getUser(), messageDays);
     }
 
     @Override
-    public Future<RequestResponse> banUser(User user, int messageDays) {
+    public CompletionStage<RequestResponse> banMemberAsync(Member member, int messageDays) {
+        return banMember(member, messageDays);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> banUser(User user, int messageDays) {
         if(messageDays < 0 || messageDays > 7) {
             throw new IllegalArgumentException("Message days must be a value between 0 and 7.");
         }
@@ -405,7 +514,12 @@ public class ServerImpl implements Server {
     }
 
     @Override
-    public Future<RequestResponse> unbanUser(User user) {
+    public CompletionStage<RequestResponse> banUserAsync(User user, int messageDays) {
+        return banUser(user, messageDays);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> unbanUser(User user) {
         if(!getPermissions().contains(Permission.BAN_MEMBERS)) {
             throw new PermissionDeniedException("This application cannot unban members on this server.");
         }
@@ -415,7 +529,12 @@ public class ServerImpl implements Server {
     }
 
     @Override
-    public Future<RequestResponse> changeMyNickname(String nickname) {
+    public CompletionStage<RequestResponse> unbanUserAsync(User user) {
+        return unbanUser(user);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> changeMyNickname(String nickname) {
         nickname = nickname.trim();
         if(!NameHelper.validateName(nickname)) {
             throw new IllegalArgumentException("Invalid nickname requested.");
@@ -431,7 +550,12 @@ public class ServerImpl implements Server {
     }
 
     @Override
-    public Future<RequestResponse> createTextChannel(String name, List<PermissionOverwrite> overwrites) {
+    public CompletionStage<RequestResponse> changeMyNicknameAsync(String nickname) {
+        return changeMyNickname(nickname);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> createTextChannel(String name, List<PermissionOverwrite> overwrites) {
         if(!getPermissions().contains(Permission.MANAGE_CHANNELS)) {
             throw new PermissionDeniedException("This application cannot create channels on this server.");
         }
@@ -442,7 +566,12 @@ public class ServerImpl implements Server {
     }
 
     @Override
-    public Future<RequestResponse> createVoiceChannel(String name, int bitrate, int userLimit,
+    public CompletionStage<RequestResponse> createTextChannelAsync(String name, List<PermissionOverwrite> overwrites) {
+        return createTextChannel(name, overwrites);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> createVoiceChannel(String name, int bitrate, int userLimit,
                                                       List<PermissionOverwrite> overwrites) {
         if(!getPermissions().contains(Permission.MANAGE_CHANNELS)) {
             throw new PermissionDeniedException("This application cannot create channels on this server.");
@@ -455,7 +584,13 @@ public class ServerImpl implements Server {
         return createChannelCommon(object, overwrites);
     }
 
-    private Future<RequestResponse> createChannelCommon(JSONObject object, List<PermissionOverwrite> overwrites) {
+    @Override
+    public CompletionStage<RequestResponse> createVoiceChannelAsync(String name, int bitrate, int userLimit,
+                                                                    List<PermissionOverwrite> overwrites) {
+        return createVoiceChannel(name, bitrate, userLimit, overwrites);
+    }
+
+    private CompletableFuture<RequestResponse> createChannelCommon(JSONObject object, List<PermissionOverwrite> overwrites) {
         final JSONArray overwritesArray = new JSONArray();
         if(overwrites != null) {
             overwrites.forEach(overwrite -> {
@@ -481,15 +616,20 @@ public class ServerImpl implements Server {
     }
 
     @Override
-    public Future<RequestResponse> deleteChannel(ServerChannel channel) {
+    public CompletableFuture<RequestResponse> deleteChannel(ServerChannel channel) {
         if(!channelList.contains(channel)) {
             throw new IllegalArgumentException("Given channel doesn't belong this server.");
         }
-        return channel.deleteChannel();
+        return channel.deleteChannelAsync().toCompletableFuture();
     }
 
     @Override
-    public Future<RequestResponse> createRole(String name, Collection<Permission> permissions, int color,
+    public CompletionStage<RequestResponse> deleteChannelAsync(ServerChannel channel) {
+        return deleteChannel(channel);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> createRole(String name, Collection<Permission> permissions, int color,
                                               boolean separate, boolean mentionable) {
         if(!getPermissions().contains(Permission.MANAGE_ROLES)) {
             throw new PermissionDeniedException("This application cannot create roles on this server.");
@@ -518,7 +658,13 @@ public class ServerImpl implements Server {
     }
 
     @Override
-    public Future<RequestResponse> updateRole(Role role, String name, Collection<Permission> permissions, int color,
+    public CompletionStage<RequestResponse> createRoleAsync(String name, Collection<Permission> permissions, int color,
+                                                            boolean separate, boolean mentionable) {
+        return createRole(name, permissions, color, separate, mentionable);
+    }
+
+    @Override
+    public CompletableFuture<RequestResponse> updateRole(Role role, String name, Collection<Permission> permissions, int color,
                                               boolean separate, boolean mentionable) {
         if(!getPermissions().contains(Permission.MANAGE_ROLES)) {
             throw new PermissionDeniedException("This application cannot manage roles on this server.");
@@ -549,19 +695,21 @@ public class ServerImpl implements Server {
         return client.getRequester().patchRequestAsync(endpoint, jsonObject);
     }
 
+    @Override
+    public CompletionStage<RequestResponse> updateRoleAsync(Role role, String name, Collection<Permission> permissions, int color,
+                                                            boolean separate, boolean mentionable) {
+        return updateRole(role, name, permissions, color, separate, mentionable);
+    }
+
     public void updateRoleResponse(RoleImpl role, RoleObject updatedRole) {
-        // We may need to reset the permissions
+        // The role's version changes with its permissions, invalidating only the members having it
         rolesByName.remove(role.getName());
         role.update(updatedRole);
         rolesByName.put(role.getName(), role);
-        if(getMe().getRoles().contains(role)) {
-            permissions = null; // Resets the permissions cause something may have changed
-            channelList.forEach(channel -> ((ServerChannelImpl) channel).calculatePermissions());
-        }
     }
 
     @Override
-    public Future<RequestResponse> deleteRole(Role role) {
+    public CompletableFuture<RequestResponse> deleteRole(Role role) {
         if(!getPermissions().contains(Permission.MANAGE_ROLES)) {
             throw new PermissionDeniedException("This application cannot delete roles on this server.");
         }
@@ -574,6 +722,11 @@ public class ServerImpl implements Server {
         return client.getRequester().deleteRequestAsync(endpoint);
     }
 
+    @Override
+    public CompletionStage<RequestResponse> deleteRoleAsync(Role role) {
+        return deleteRole(role);
+    }
+
     @Override
     public int getPruneMembersCount(int days) {
         if(days <= 0) {
@@ -0,0 +1,221 @@
+package cz.salmelu.discord.implementation.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+import java.util.function.Consumer;
+
+/**
+ * <p>A thread safe hash map with primitive long keys.</p>
+ * <p>The keys are split into segments, each being a {@link LongMap} guarded by its own lock, so writers
+ * of different segments don't block each other. Lookups don't take the lock at all. They read optimistically
+ * and only retry under the lock if a writer modified the segment at the same time.</p>
+ * @param <V> type of the values
+ */
+public class ConcurrentLongMap<V> {
+
+    private static final int SEGMENTS = 16;
+
+    private final LongMap<V>[] maps;
+    private final StampedLock[] locks;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentLongMap() {
+        maps = new LongMap[SEGMENTS];
+        locks = new StampedLock[SEGMENTS];
+        for(int i = 0; i < SEGMENTS; i++) {
+            maps[i] = new LongMap<>();
+            locks[i] = new StampedLock();
+        }
+    }
+
+    /**
+     * Gets the segment of the key. Mixes the increment, worker and timestamp bits of the ids.
+     * @param key key
+     * @return segment index
+     */
+    private static int segment(long key) {
+        return (int) ((key ^ (key >>> 22) ^ (key >>> 17)) & (SEGMENTS - 1));
+    }
+
+    /**
+     * Gets a value mapped to the key.
+     * @param key key
+     * @return mapped value, or null
+     */
+    public V get(long key) {
+        final int segment = segment(key);
+        final StampedLock lock = locks[segment];
+        final long stamp = lock.tryOptimisticRead();
+        if(stamp != 0) {
+            final V value = maps[segment].get(key);
+            if(lock.validate(stamp)) {
+                return value;
+            }
+        }
+        final long readStamp = lock.readLock();
+        try {
+            return maps[segment].get(key);
+        }
+        finally {
+            lock.unlockRead(readStamp);
+        }
+    }
+
+    /**
+     * Gets a value mapped to the id.
+     * @param id id
+     * @return mapped value, or null
+     */
+    public V get(String id) {
+        return get(Snowflake.parse(id));
+    }
+
+    /**
+     * Checks if the id is mapped.
+     * @param id id
+     * @return true if the map contains the id
+     */
+    public boolean containsKey(String id) {
+        return get(id) != null;
+    }
+
+    /**
+     * Maps a value to the key.
+     * @param key positive key
+     * @param value mapped value, not null
+     * @return previously mapped value, or null
+     */
+    public V put(long key, V value) {
+        final int segment = segment(key);
+        final long stamp = locks[segment].writeLock();
+        try {
+            return maps[segment].put(key, value);
+        }
+        finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Maps a value to the id.
+     * @param id valid id
+     * @param value mapped value, not null
+     * @return previously mapped value, or null
+     */
+    public V put(String id, V value) {
+        return put(Snowflake.parse(id), value);
+    }
+
+    /**
+     * Atomically maps a value to the id, if it is not mapped yet.
+     * @param id valid id
+     * @param value mapped value, not null
+     * @return already mapped value, or null if the value was added
+     */
+    public V putIfAbsent(String id, V value) {
+        final long key = Snowflake.parse(id);
+        final int segment = segment(key);
+        final long stamp = locks[segment].writeLock();
+        try {
+            return maps[segment].putIfAbsent(key, value);
+        }
+        finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Removes the mapping of the id.
+     * @param id id
+     * @return removed value, or null
+     */
+    public V remove(String id) {
+        final long key = Snowflake.parse(id);
+        final int segment = segment(key);
+        final long stamp = locks[segment].writeLock();
+        try {
+            return maps[segment].remove(key);
+        }
+        finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Atomically removes the mapping of the id, if it is mapped to the value.
+     * @param id id
+     * @param value expected value
+     * @return true if the mapping was removed
+     */
+    public boolean remove(String id, V value) {
+        final long key = Snowflake.parse(id);
+        final int segment = segment(key);
+        final long stamp = locks[segment].writeLock();
+        try {
+            return maps[segment].remove(key, value);
+        }
+        finally {
+            locks[segment].unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Gets the amount of mappings. Not exact, if the map is modified at the same time.
+     * @return size of the map
+     */
+    public int size() {
+        int size = 0;
+        for(int i = 0; i < SEGMENTS; i++) {
+            final long stamp = locks[i].readLock();
+            try {
+                size += maps[i].size();
+            }
+            finally {
+                locks[i].unlockRead(stamp);
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Removes all mappings.
+     */
+    public void clear() {
+        for(int i = 0; i < SEGMENTS; i++) {
+            final long stamp = locks[i].writeLock();
+            try {
+                maps[i].clear();
+            }
+            finally {
+                locks[i].unlockWrite(stamp);
+            }
+        }
+    }
+
+    /**
+     * Runs an action for every value. Each segment is locked while its values are processed.
+     * @param action executed action
+     */
+    public void forEachValue(Consumer<? super V> action) {
+        for(int i = 0; i < SEGMENTS; i++) {
+            final long stamp = locks[i].readLock();
+            try {
+                maps[i].forEachValue(action);
+            }
+            finally {
+                locks[i].unlockRead(stamp);
+            }
+        }
+    }
+
+    /**
+     * Copies all values into a list.
+     * @return new list of the values
+     */
+    public List<V> values() {
+        final List<V> list = new ArrayList<>();
+        forEachValue(list::add);
+        return list;
+    }
+}
@@ -0,0 +1,334 @@
+package cz.salmelu.discord.implementation.util;
+
+import java.util.*;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * <p>A hash map with primitive long keys, used for entities keyed by their Discord ids.</p>
+ * <p>The map uses open addressing with linear probing, so it doesn't allocate an entry object for every mapping
+ * and doesn't box the keys. Keys must be positive, which holds for all Discord ids.
+ * Methods accepting {@link String} ids are provided for convenience, invalid ids are never present in the map.</p>
+ * <p>The map is not thread safe. It can be read by other threads while being modified, in which case they may
+ * get inconsistent results, but never an exception. {@link ConcurrentLongMap} detects those and reads again.</p>
+ * @param <V> type of the values
+ */
+public class LongMap<V> {
+
+    /** Arrays holding the mappings, swapped at once when the map grows */
+    private static final class Table {
+        final long[] keys;
+        final Object[] values;
+        final int mask;
+
+        Table(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+            mask = capacity - 1;
+        }
+    }
+
+    private static final int MIN_CAPACITY = 8;
+    private static final long EMPTY = 0;
+
+    private volatile Table table;
+    private int size = 0;
+
+    /**
+     * Creates an empty map.
+     */
+    public LongMap() {
+        this(MIN_CAPACITY);
+    }
+
+    /**
+     * Creates an empty map with space for a given amount of mappings.
+     * @param expectedSize expected amount of mappings
+     */
+    public LongMap(int expectedSize) {
+        table = new Table(capacityFor(expectedSize));
+    }
+
+    /**
+     * Gets the capacity needed to hold the amount of mappings, keeping the load factor under 0.75.
+     * @param size amount of mappings
+     * @return power of two capacity
+     */
+    private static int capacityFor(int size) {
+        int capacity = MIN_CAPACITY;
+        while(capacity * 3L / 4 < size) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    /**
+     * Spreads the ids, their lowest bits are mostly the same.
+     * @param key key
+     * @return hash of the key
+     */
+    private static int hash(long key) {
+        final long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+
+    /**
+     * Gets a value mapped to the key.
+     * @param key key
+     * @return mapped value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        if(key <= 0) return null;
+        final Table t = table;
+        int index = hash(key) & t.mask;
+        for(int probes = 0; probes <= t.mask; probes++) {
+            final long current = t.keys[index];
+            if(current == key) {
+                return (V) t.values[index];
+            }
+            if(current == EMPTY) {
+                return null;
+            }
+            index = (index + 1) & t.mask;
+        }
+        return null;
+    }
+
+    /**
+     * Gets a value mapped to the id.
+     * @param id id
+     * @return mapped value, or null
+     */
+    public V get(String id) {
+        return get(Snowflake.parse(id));
+    }
+
+    /**
+     * Checks if the key is mapped.
+     * @param key key
+     * @return true if the map contains the key
+     */
+    public boolean containsKey(long key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Checks if the id is mapped.
+     * @param id id
+     * @return true if the map contains the id
+     */
+    public boolean containsKey(String id) {
+        return get(id) != null;
+    }
+
+    /**
+     * Maps a value to the key.
+     * @param key positive key
+     * @param value mapped value, not null
+     * @return previously mapped value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        if(key <= 0) {
+            throw new IllegalArgumentException("Invalid key: " + key);
+        }
+        Objects.requireNonNull(value);
+        Table t = table;
+        int index = hash(key) & t.mask;
+        while(true) {
+            final long current = t.keys[index];
+            if(current == key) {
+                final V old = (V) t.values[index];
+                t.values[index] = value;
+                return old;
+            }
+            if(current == EMPTY) {
+                break;
+            }
+            index = (index + 1) & t.mask;
+        }
+        if(size + 1 > (t.mask + 1) * 3L / 4) {
+            t = grow();
+            index = hash(key) & t.mask;
+            while(t.keys[index] != EMPTY) {
+                index = (index + 1) & t.mask;
+            }
+        }
+        // Value first, so the readers never see the key without a value
+        t.values[index] = value;
+        t.keys[index] = key;
+        size++;
+        return null;
+    }
+
+    /**
+     * Maps a value to the id.
+     * @param id valid id
+     * @param value mapped value, not null
+     * @return previously mapped value, or null
+     */
+    public V put(String id, V value) {
+        return put(Snowflake.parse(id), value);
+    }
+
+    /**
+     * Maps a value to the key, if it is not mapped yet.
+     * @param key positive key
+     * @param value mapped value, not null
+     * @return already mapped value, or null if the value was added
+     */
+    public V putIfAbsent(long key, V value) {
+        final V current = get(key);
+        if(current != null) return current;
+        put(key, value);
+        return null;
+    }
+
+    /**
+     * Removes the mapping of the key.
+     * @param key key
+     * @return removed value, or null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        if(key <= 0) return null;
+        final Table t = table;
+        int index = hash(key) & t.mask;
+        while(true) {
+            final long current = t.keys[index];
+            if(current == EMPTY) {
+                return null;
+            }
+            if(current == key) {
+                break;
+            }
+            index = (index + 1) & t.mask;
+        }
+        final V removed = (V) t.values[index];
+
+        // Shift the following entries back, so no tombstones are needed
+        int gap = index;
+        int next = (gap + 1) & t.mask;
+        while(t.keys[next] != EMPTY) {
+            final int ideal = hash(t.keys[next]) & t.mask;
+            // Move the entry if the gap lies between its ideal slot and its current slot
+            if(((next - ideal) & t.mask) >= ((next - gap) & t.mask)) {
+                t.values[gap] = t.values[next];
+                t.keys[gap] = t.keys[next];
+                gap = next;
+            }
+            next = (next + 1) & t.mask;
+        }
+        t.keys[gap] = EMPTY;
+        t.values[gap] = null;
+        size--;
+        return removed;
+    }
+
+    /**
+     * Removes the mapping of the id.
+     * @param id id
+     * @return removed value, or null
+     */
+    public V remove(String id) {
+        return remove(Snowflake.parse(id));
+    }
+
+    /**
+     * Removes the mapping of the key, if it is mapped to the value.
+     * @param key key
+     * @param value expected value
+     * @return true if the mapping was removed
+     */
+    public boolean remove(long key, V value) {
+        if(get(key) != value) return false;
+        remove(key);
+        return true;
+    }
+
+    /**
+     * Doubles the capacity of the map.
+     * @return new table
+     */
+    private Table grow() {
+        final Table old = table;
+        final Table t = new Table((old.mask + 1) << 1);
+        for(int i = 0; i <= old.mask; i++) {
+            final long key = old.keys[i];
+            if(key != EMPTY) {
+                int index = hash(key) & t.mask;
+                while(t.keys[index] != EMPTY) {
+                    index = (index + 1) & t.mask;
+                }
+                t.keys[index] = key;
+                t.values[index] = old.values[i];
+            }
+        }
+        table = t;
+        return t;
+    }
+
+    /**
+     * Gets the amount of mappings.
+     * @return size of the map
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Checks if the map is empty.
+     * @return true if there are no mappings
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Removes all mappings.
+     */
+    public void clear() {
+        table = new Table(MIN_CAPACITY);
+        size = 0;
+    }
+
+    /**
+     * Runs an action for every mapping.
+     * @param action executed action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<Long, ? super V> action) {
+        final Table t = table;
+        for(int i = 0; i <= t.mask; i++) {
+            final long key = t.keys[i];
+            if(key != EMPTY) {
+                action.accept(key, (V) t.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Runs an action for every value.
+     * @param action executed action
+     */
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<? super V> action) {
+        final Table t = table;
+        for(int i = 0; i <= t.mask; i++) {
+            if(t.keys[i] != EMPTY) {
+                action.accept((V) t.values[i]);
+            }
+        }
+    }
+
+    /**
+     * Copies all values into a list.
+     * @return new list of the values
+     */
+    public List<V> values() {
+        final List<V> list = new ArrayList<>(size);
+        forEachValue(list::add);
+        return list;
+    }
+}
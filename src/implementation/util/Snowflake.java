@@ -0,0 +1,33 @@
+package cz.salmelu.discord.implementation.util;
+
+/**
+ * <p>Helper methods for Discord ids.</p>
+ * <p>Discord ids (snowflakes) are unsigned 64-bit numbers sent as strings. All of them fit in a positive long,
+ * so they can be stored without boxing.</p>
+ */
+public final class Snowflake {
+
+    /** Returned for strings, which are not valid ids */
+    public static final long INVALID = 0;
+
+    private Snowflake() {}
+
+    /**
+     * Converts an id into a number.
+     * @param id id received from Discord
+     * @return numeric id, or {@link #INVALID} if the string is not a valid id
+     */
+    public static long parse(String id) {
+        if(id == null) return INVALID;
+        final int length = id.length();
+        if(length == 0 || length > 19) return INVALID;
+        long value = 0;
+        for(int i = 0; i < length; i++) {
+            final char c = id.charAt(i);
+            if(c < '0' || c > '9') return INVALID;
+            value = value * 10 + (c - '0');
+            if(value < 0) return INVALID;
+        }
+        return value;
+    }
+}
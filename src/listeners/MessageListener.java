@@ -2,6 +2,8 @@ package cz.salmelu.discord.listeners;
 
 import cz.salmelu.discord.resources.*;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 /**
@@ -18,6 +20,22 @@ public interface MessageListener extends Initializer {
      */
     boolean matchMessage(Message message);
 
+    /**
+     * <p>Gets the commands handled by this module, including their prefix, e.g. <code>!roll</code>.</p>
+     * <p>If the module declares any commands, messages starting with one of them are routed directly
+     * to {@link #onMessage(Message)}, and {@link #matchMessage(Message)} is never called.
+     * A command matches only if it is followed by a whitespace or the end of the message.
+     * If more modules declare the same command, the one called first by {@link #getPriority()} handles it.
+     * Modules without commands called before the command's module still get the message first,
+     * and take it if their {@link #matchMessage(Message)} returns true.</p>
+     * <p>Modules which need other matching shall return an empty collection and implement
+     * {@link #matchMessage(Message)} instead.</p>
+     * @return collection of handled commands
+     */
+    default Collection<String> getCommands() {
+        return Collections.emptyList();
+    }
+
     // Only if match message returned true
 
     /**
@@ -4,6 +4,7 @@ import cz.salmelu.discord.PermissionDeniedException;
 import cz.salmelu.discord.RequestResponse;
 
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 /**
@@ -43,6 +44,15 @@ public interface Channel {
      */
     Future<RequestResponse> sendMessage(String text) throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #sendMessage(String)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param text sent text message
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have send message permissions
+     */
+    CompletionStage<RequestResponse> sendMessageAsync(String text) throws PermissionDeniedException;
+
     /**
      * <p>Gets a message in this channel with given id.</p>
      * <p>If the message is not yet cached, the method blocks until the message is retrieved from Discord servers.</p>
@@ -126,6 +136,13 @@ public interface Channel {
      */
     Future<RequestResponse> triggerTyping();
 
+    /**
+     * <p>Same as {@link #triggerTyping()}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @return stage completed with the response from Discord servers
+     */
+    CompletionStage<RequestResponse> triggerTypingAsync();
+
     /**
      * Casts the channel into {@link ServerChannel} instance.
      * @return a {@link ServerChannel} instance or null, if the channel is not a server channel
@@ -155,6 +172,16 @@ public interface Channel {
      */
     Future<RequestResponse> pinMessage(Message message) throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #pinMessage(Message)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param message pinned message
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the channel is a server channel and application doesn't have
+     * manage messages permission
+     */
+    CompletionStage<RequestResponse> pinMessageAsync(Message message) throws PermissionDeniedException;
+
     /**
      * <p>Unpins a specific message in the channel.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -165,6 +192,16 @@ public interface Channel {
      */
     Future<RequestResponse> unpinMessage(Message message) throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #unpinMessage(Message)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param message unpinned message
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the channel is a server channel and application doesn't have
+     * manage messages permission
+     */
+    CompletionStage<RequestResponse> unpinMessageAsync(Message message) throws PermissionDeniedException;
+
     /**
      * <p>Deletes this channel.</p>
      * <p>If the channel is a private channel, this call only closes the channel.</p>
@@ -175,6 +212,15 @@ public interface Channel {
      */
     Future<RequestResponse> deleteChannel() throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #deleteChannel()}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the channel is a server channel and application doesn't have
+     * manage channels permission
+     */
+    CompletionStage<RequestResponse> deleteChannelAsync() throws PermissionDeniedException;
+
     /**
      * <p>Various channel types available at discord.</p>
      */
@@ -4,6 +4,8 @@ import cz.salmelu.discord.PermissionDeniedException;
 import cz.salmelu.discord.RequestResponse;
 
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 /**
@@ -36,6 +38,33 @@ public interface Member {
      */
     List<Role> getRoles();
 
+    /**
+     * <p>Checks if the member has a permission in the server.</p>
+     * <p>Members with administrator permission and the owner of the server have all permissions.</p>
+     * @param permission checked permission
+     * @return true if the permission is granted
+     */
+    boolean hasPermission(Permission permission);
+
+    /**
+     * <p>Checks if the member has a permission in a channel, including the channel's permission overwrites.</p>
+     * <p>The result is cached until member's roles or the channel's overwrites change,
+     * so this can be called for every received message.</p>
+     * @param channel channel of the member's server
+     * @param permission checked permission
+     * @return true if the permission is granted
+     * @throws IllegalArgumentException if the channel is not from the member's server
+     */
+    boolean hasPermission(ServerChannel channel, Permission permission) throws IllegalArgumentException;
+
+    /**
+     * Gets the set of permissions the member has in a channel.
+     * @param channel channel of the member's server
+     * @return set of granted permissions
+     * @throws IllegalArgumentException if the channel is not from the member's server
+     */
+    Set<Permission> getPermissions(ServerChannel channel) throws IllegalArgumentException;
+
     /**
      * <p>Gets a mention string for the member.</p>
      * <p>This converts member's name and discriminator into a message specific string, which triggers a mention.</p>
@@ -67,6 +96,15 @@ public interface Member {
      */
     Future<RequestResponse> addRole(Role role) throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #addRole(Role)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param role assigned role
+     * @return stage completed with the response from Discord servers, or null if the request wasn't sent
+     * @throws PermissionDeniedException if the application doesn't have manage roles permission
+     */
+    CompletionStage<RequestResponse> addRoleAsync(Role role) throws PermissionDeniedException;
+
     /**
      * <p>Removes a role from the member.</p>
      * <p>If such role doesn't exist on the server, this method has no effect.</p>
@@ -77,6 +115,15 @@ public interface Member {
      */
     Future<RequestResponse> removeRole(Role role) throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #removeRole(Role)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param role removed role
+     * @return stage completed with the response from Discord servers, or null if the request wasn't sent
+     * @throws PermissionDeniedException if the application doesn't have manage roles permission
+     */
+    CompletionStage<RequestResponse> removeRoleAsync(Role role) throws PermissionDeniedException;
+
     /**
      * <p>Sets member's roles to given roles.</p>
      * <p>In other words, this removes all member's roles and assigns only those specific roles to them.</p>
@@ -88,6 +135,16 @@ public interface Member {
     Future<RequestResponse> setRoles(List<Role> roles)
             throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #setRoles(List<Role>)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param roles list of assigned roles
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage roles permission
+     */
+    CompletionStage<RequestResponse> setRolesAsync(List<Role> roles)
+            throws PermissionDeniedException;
+
     /**
      * <p>Mutes or unmutes the member for all voice channels.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -98,6 +155,16 @@ public interface Member {
     Future<RequestResponse> mute(boolean mute)
             throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #mute(boolean)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param mute if true, the member is muted, if false, the member is unmuted
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have mute members permission
+     */
+    CompletionStage<RequestResponse> muteAsync(boolean mute)
+            throws PermissionDeniedException;
+
     /**
      * <p>Deafens the member on all voice channels.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -108,6 +175,16 @@ public interface Member {
     Future<RequestResponse> deafen(boolean deaf)
             throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #deafen(boolean)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param deaf if true, the member is deafened, if false, the condition is cancelled
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have deafen members permission
+     */
+    CompletionStage<RequestResponse> deafenAsync(boolean deaf)
+            throws PermissionDeniedException;
+
     /**
      * <p>Moves the member into different voice channel.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -119,6 +196,17 @@ public interface Member {
     Future<RequestResponse> moveChannel(ServerChannel newChannel)
             throws PermissionDeniedException, IllegalArgumentException;
 
+    /**
+     * <p>Same as {@link #moveChannel(ServerChannel)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param newChannel channel the member is moved into
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have move members permission
+     * @throws IllegalArgumentException if the channel is not a voice channel or not a part of this server
+     */
+    CompletionStage<RequestResponse> moveChannelAsync(ServerChannel newChannel)
+            throws PermissionDeniedException, IllegalArgumentException;
+
     /**
      * <p>Bans the member from the server. The member will not be able to rejoin the server until they
      * are unbanned.</p>
@@ -132,6 +220,17 @@ public interface Member {
      */
     Future<RequestResponse> ban(int messageDays) throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #ban(int)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param messageDays how old messages will be deleted (valid values are 0-7, where 0 means no messages
+     *                    will be deleted)
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have ban members permission
+     * @throws IllegalArgumentException if the parameter has invalid value
+     */
+    CompletionStage<RequestResponse> banAsync(int messageDays) throws PermissionDeniedException;
+
     /**
      * <p>Kicks the member from the server. The user will be able to rejoin again if they receive an invite.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -140,6 +239,14 @@ public interface Member {
      */
     Future<RequestResponse> kick() throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #kick()}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have kick members permission
+     */
+    CompletionStage<RequestResponse> kickAsync() throws PermissionDeniedException;
+
     /**
      * <p>Forcefully changes nickname of this member.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -151,4 +258,16 @@ public interface Member {
      */
     Future<RequestResponse> changeNickname(String nickname)
             throws PermissionDeniedException, IllegalArgumentException;
+
+    /**
+     * <p>Same as {@link #changeNickname(String)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param nickname new member's nickname
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage nicknames permission
+     * @throws IllegalArgumentException if the nickname is not valid by Discord standards,
+     * see {@link cz.salmelu.discord.NameHelper#validateName(String)}
+     */
+    CompletionStage<RequestResponse> changeNicknameAsync(String nickname)
+            throws PermissionDeniedException, IllegalArgumentException;
 }
@@ -7,6 +7,7 @@ import cz.salmelu.discord.RequestResponse;
 import java.time.OffsetDateTime;
 import java.util.Collection;
 import java.util.List;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 /**
@@ -26,11 +27,21 @@ public interface Message {
     String getRawText();
 
     /**
-     * Gets the message's text with converted mentions back into @names.
+     * <p>Gets the message's text with converted mentions back into @names and #channels.</p>
+     * <p>Only the data already known to the client are used, mentions which can't be resolved are kept
+     * in the raw format. See {@link #getTextAsync()} for resolving them too.</p>
      * @return converted message text
      */
     String getText();
 
+    /**
+     * <p>Same as {@link #getText()}, but mentioned users and members not known to the client
+     * are retrieved from Discord servers, without blocking the caller.</p>
+     * <p>If all the mentions are known, the returned stage is already completed.</p>
+     * @return stage completed with the converted message text
+     */
+    CompletionStage<String> getTextAsync();
+
     /**
      * <p>Changes the text of application's message into a different text.</p>
      * <p>Due to the limitations of Discord, the application can only change its own messages.</p>
@@ -42,6 +53,15 @@ public interface Message {
      */
     Future<RequestResponse> edit(String newText);
 
+    /**
+     * <p>Same as {@link #edit(String)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param newText text replacing the old text
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException when the message is not owned by the application
+     */
+    CompletionStage<RequestResponse> editAsync(String newText);
+
     /**
      * <p>Deletes the message from the channel.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -51,6 +71,15 @@ public interface Message {
      */
     Future<RequestResponse> delete() throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #delete()}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the message is someone else's and the application
+     * doesn't have manage messages permission in relevant channel
+     */
+    CompletionStage<RequestResponse> deleteAsync() throws PermissionDeniedException;
+
     /**
      * Gets the instance of the channel where the message was posted
      * @return channel where the message was posted
@@ -75,6 +104,18 @@ public interface Message {
     Future<RequestResponse> addReaction(Emoji emoji)
             throws PermissionDeniedException, IllegalArgumentException;
 
+    /**
+     * <p>Same as {@link #addReaction(Emoji)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param emoji added reaction
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException either when the application doesn't have read message history permission,
+     * or when it doesn't have add reactions permission and there is no reaction of the same type present
+     * @throws IllegalArgumentException when attempting to add the same reaction twice
+     */
+    CompletionStage<RequestResponse> addReactionAsync(Emoji emoji)
+            throws PermissionDeniedException, IllegalArgumentException;
+
     /**
      * <p>Removes a previously added reaction from the message.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -84,6 +125,15 @@ public interface Message {
      */
     Future<RequestResponse> removeReaction(Emoji emoji) throws IllegalArgumentException;
 
+    /**
+     * <p>Same as {@link #removeReaction(Emoji)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param emoji removed reaction
+     * @return stage completed with the response from Discord servers
+     * @throws IllegalArgumentException when the reaction wasn't added before
+     */
+    CompletionStage<RequestResponse> removeReactionAsync(Emoji emoji) throws IllegalArgumentException;
+
     /**
      * <p>Removes another user's reaction from the message.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -94,6 +144,16 @@ public interface Message {
      */
     Future<RequestResponse> removeUserReaction(Emoji emoji, User user) throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #removeUserReaction(Emoji,User)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param emoji removed reaction
+     * @param user author of the removed reaction
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage messages permission
+     */
+    CompletionStage<RequestResponse> removeUserReactionAsync(Emoji emoji, User user) throws PermissionDeniedException;
+
     /**
      * <p>Removes all reactions from the message.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -102,6 +162,14 @@ public interface Message {
      */
     Future<RequestResponse> removeAllReactions() throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #removeAllReactions()}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage messages permission
+     */
+    CompletionStage<RequestResponse> removeAllReactionsAsync() throws PermissionDeniedException;
+
     /**
      * <p>Gets a list of those users who added the given reaction to the message.</p>
      * <p>This method sends a request to Discord server and therefore it blocks until it's completed.</p>
@@ -160,6 +228,15 @@ public interface Message {
      */
     Future<RequestResponse> reply(String reply) throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #reply(String)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param reply text of the message
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException when the application doesn't have send messages permission in the channel
+     */
+    CompletionStage<RequestResponse> replyAsync(String reply) throws PermissionDeniedException;
+
     /**
      * <p>Pins the message in its channel.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -168,6 +245,14 @@ public interface Message {
      */
     Future<RequestResponse> pin() throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #pin()}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException when the application doesn't have manage messages permission in the channel
+     */
+    CompletionStage<RequestResponse> pinAsync() throws PermissionDeniedException;
+
     /**
      * <p>Unpins the message from its channel.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -175,4 +260,12 @@ public interface Message {
      * @throws PermissionDeniedException when the application doesn't have manage messages permission in the channel
      */
     Future<RequestResponse> unpin() throws PermissionDeniedException;
+
+    /**
+     * <p>Same as {@link #unpin()}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException when the application doesn't have manage messages permission in the channel
+     */
+    CompletionStage<RequestResponse> unpinAsync() throws PermissionDeniedException;
 }
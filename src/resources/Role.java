@@ -5,6 +5,7 @@ import cz.salmelu.discord.RequestResponse;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 /**
@@ -79,6 +80,21 @@ public interface Role {
                                    boolean mentionable)
             throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #update(String,List<Permission>,int,boolean,boolean)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param name new role name
+     * @param permissions new role permissions
+     * @param color new role color
+     * @param separate whether the role displays separately
+     * @param mentionable whether the role can be mentioned
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException when the application doesn't have manage roles permission
+     */
+    CompletionStage<RequestResponse> updateAsync(String name, List<Permission> permissions, int color, boolean separate,
+                                                 boolean mentionable)
+            throws PermissionDeniedException;
+
     /**
      * <p>Deletes the role from the server.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -86,4 +102,12 @@ public interface Role {
      * @throws PermissionDeniedException when the application doesn't have manage roles permission
      */
     Future<RequestResponse> delete() throws PermissionDeniedException;
+
+    /**
+     * <p>Same as {@link #delete()}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException when the application doesn't have manage roles permission
+     */
+    CompletionStage<RequestResponse> deleteAsync() throws PermissionDeniedException;
 }
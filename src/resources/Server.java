@@ -6,6 +6,7 @@ import cz.salmelu.discord.RequestResponse;
 import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 /**
@@ -35,6 +36,13 @@ public interface Server {
      */
     Future<RequestResponse> leave();
 
+    /**
+     * <p>Same as {@link #leave()}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @return stage completed with the response from Discord servers
+     */
+    CompletionStage<RequestResponse> leaveAsync();
+
     /**
      * Gets the list of channels present on this server.
      * @return list of server channels
@@ -114,12 +122,23 @@ public interface Server {
 
     /**
      * <p>Gets the member with given name</p>
+     * <p>Members without a nickname are found by their user name. If more members share the name,
+     * the one who was loaded first is returned, see {@link #getMembersByNickname(String)}.</p>
      * <p><i>Attention:</i> the member may not be loaded, see {@link #loadAllMembers()}</p>
      * @param nickname member nickname
      * @return a member with given nickname or null, if there is none
      */
     Member getMemberByNickname(String nickname);
 
+    /**
+     * <p>Gets all the members with given name</p>
+     * <p>Members without a nickname are found by their user name.</p>
+     * <p><i>Attention:</i> some members may not be loaded, see {@link #loadAllMembers()}</p>
+     * @param nickname member nickname
+     * @return a list of members with given nickname, empty if there are none
+     */
+    List<Member> getMembersByNickname(String nickname);
+
     /**
      * <p>Converts an user instance into member instance.</p>
      * <p><i>Attention:</i> the member may not be loaded, see {@link #loadAllMembers()}</p>
@@ -136,6 +155,14 @@ public interface Server {
      */
     Future<RequestResponse> kickMember(Member member) throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #kickMember(Member)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have kick members permission
+     */
+    CompletionStage<RequestResponse> kickMemberAsync(Member member) throws PermissionDeniedException;
+
     /**
      * <p>Gets list of all banned users from this server.</p>
      * <p>This method sends a request to Discord server and therefore the call blocks until it's completed.</p>
@@ -159,6 +186,19 @@ public interface Server {
     Future<RequestResponse> banMember(Member member, int messageDays)
             throws PermissionDeniedException, IllegalArgumentException;
 
+    /**
+     * <p>Same as {@link #banMember(Member,int)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param member banned member
+     * @param messageDays how old messages will be deleted (valid values are 0-7, where 0 means no messages
+     *                    will be deleted)
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have ban members permission
+     * @throws IllegalArgumentException if the parameter has invalid value
+     */
+    CompletionStage<RequestResponse> banMemberAsync(Member member, int messageDays)
+            throws PermissionDeniedException, IllegalArgumentException;
+
     /**
      * <p>Bans the user from the server. The user will not be able to rejoin the server until they
      * are unbanned.</p>
@@ -174,6 +214,19 @@ public interface Server {
     Future<RequestResponse> banUser(User user, int messageDays)
             throws PermissionDeniedException, IllegalArgumentException;
 
+    /**
+     * <p>Same as {@link #banUser(User,int)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param user banned user
+     * @param messageDays how old messages will be deleted (valid values are 0-7, where 0 means no messages
+     *                    will be deleted)
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have ban members permission
+     * @throws IllegalArgumentException if the parameter has invalid value
+     */
+    CompletionStage<RequestResponse> banUserAsync(User user, int messageDays)
+            throws PermissionDeniedException, IllegalArgumentException;
+
     /**
      * <p>Unbans a banned user. The user can then use an invite to rejoin the server.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -183,6 +236,15 @@ public interface Server {
      */
     Future<RequestResponse> unbanUser(User user) throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #unbanUser(User)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param user banned user
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have ban members permission
+     */
+    CompletionStage<RequestResponse> unbanUserAsync(User user) throws PermissionDeniedException;
+
     /**
      * <p>Changes the application's user's nickname.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -193,6 +255,16 @@ public interface Server {
      */
     Future<RequestResponse> changeMyNickname(String nickname);
 
+    /**
+     * <p>Same as {@link #changeMyNickname(String)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param nickname new nickname
+     * @return stage completed with the response from Discord servers
+     * @throws IllegalArgumentException if the nickname is not valid by Discord standards,
+     * see {@link cz.salmelu.discord.NameHelper#validateName(String)}
+     */
+    CompletionStage<RequestResponse> changeMyNicknameAsync(String nickname);
+
     /**
      * <p>Creates a new text channel.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -204,6 +276,17 @@ public interface Server {
     Future<RequestResponse> createTextChannel(String name, List<PermissionOverwrite> overwrites)
             throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #createTextChannel(String,List<PermissionOverwrite>)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param name channel name
+     * @param overwrites permission overwrites for the channel
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage channels permission
+     */
+    CompletionStage<RequestResponse> createTextChannelAsync(String name, List<PermissionOverwrite> overwrites)
+            throws PermissionDeniedException;
+
     /**
      * <p>Creates a new voice channel.</p>
      * <p>This method sends a request to Discord server and therefore the call blocks until it's completed.</p>
@@ -218,6 +301,20 @@ public interface Server {
                                                List<PermissionOverwrite> overwrites)
             throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #createVoiceChannel(String,int,int,List<PermissionOverwrite>)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param name channel name
+     * @param overwrites permission overwrites for the channel
+     * @param bitrate bitrate of the channel
+     * @param userLimit maximum amount of users that can be in the channel simultaneously
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage channels permission
+     */
+    CompletionStage<RequestResponse> createVoiceChannelAsync(String name, int bitrate, int userLimit,
+                                                             List<PermissionOverwrite> overwrites)
+            throws PermissionDeniedException;
+
     /**
      * <p>Deletes an existing channel.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -229,6 +326,17 @@ public interface Server {
     Future<RequestResponse> deleteChannel(ServerChannel channel)
             throws PermissionDeniedException, IllegalArgumentException;
 
+    /**
+     * <p>Same as {@link #deleteChannel(ServerChannel)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param channel deleted channel
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage channels permission
+     * @throws IllegalArgumentException if the channel is not a part of this server
+     */
+    CompletionStage<RequestResponse> deleteChannelAsync(ServerChannel channel)
+            throws PermissionDeniedException, IllegalArgumentException;
+
     /**
      * <p>Creates a new role.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -243,6 +351,20 @@ public interface Server {
     Future<RequestResponse> createRole(String name, Collection<Permission> permissions, int color, boolean separate,
                                        boolean mentionable);
 
+    /**
+     * <p>Same as {@link #createRole(String,Collection<Permission>,int,boolean,boolean)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param name role name
+     * @param permissions a list of permissions the role will be granted
+     * @param color role's color
+     * @param separate set to true if the role should be displayed separately
+     * @param mentionable set to true if the members should be able to mention this role
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage roles permission
+     */
+    CompletionStage<RequestResponse> createRoleAsync(String name, Collection<Permission> permissions, int color, boolean separate,
+                                                     boolean mentionable);
+
     /**
      * <p>Updates an existing role.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -258,6 +380,21 @@ public interface Server {
     Future<RequestResponse> updateRole(Role role, String name, Collection<Permission> permissions, int color, boolean separate,
                                        boolean mentionable);
 
+    /**
+     * <p>Same as {@link #updateRole(Role,String,Collection<Permission>,int,boolean,boolean)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param role updated role
+     * @param name role name
+     * @param permissions a list of permissions the role will be granted
+     * @param color role's color
+     * @param separate set to true if the role should be displayed separately
+     * @param mentionable set to true if the members should be able to mention this role
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage roles permission
+     */
+    CompletionStage<RequestResponse> updateRoleAsync(Role role, String name, Collection<Permission> permissions, int color, boolean separate,
+                                                     boolean mentionable);
+
     /**
      * <p>Deletes a role from the server.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -268,6 +405,16 @@ public interface Server {
     Future<RequestResponse> deleteRole(Role role)
             throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #deleteRole(Role)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param role deleted role
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage roles permission
+     */
+    CompletionStage<RequestResponse> deleteRoleAsync(Role role)
+            throws PermissionDeniedException;
+
     /**
      * <p>Checks how many members would be kicked if {@link #pruneMembers(int)} was called with this argument.</p>
      * <p>This method sends a request to Discord server and therefore the call blocks until it's completed.</p>
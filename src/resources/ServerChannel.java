@@ -5,6 +5,7 @@ import cz.salmelu.discord.RequestResponse;
 
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.Future;
 
 /**
@@ -75,6 +76,16 @@ public interface ServerChannel extends Channel {
      */
     Future<RequestResponse> changeName(String newName);
 
+    /**
+     * <p>Same as {@link #changeName(String)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param newName a new channel's name (2-100 characters)
+     * @return stage completed with the response from Discord servers
+     * @throws IllegalArgumentException when the name is of invalid length
+     * @throws PermissionDeniedException if the application doesn't have manage channel permission for this channel
+     */
+    CompletionStage<RequestResponse> changeNameAsync(String newName);
+
     /**
      * <p>Changes channel's topic.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -86,6 +97,17 @@ public interface ServerChannel extends Channel {
      */
     Future<RequestResponse> changeTopic(String newTopic);
 
+    /**
+     * <p>Same as {@link #changeTopic(String)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param newTopic a new channel's topic (0-1024 characters)
+     * @return stage completed with the response from Discord servers
+     * @throws IllegalArgumentException when the topic is of invalid length
+     * @throws PermissionDeniedException if the application doesn't have manage channel permission for this channel
+     * or if the channel is not a text channel
+     */
+    CompletionStage<RequestResponse> changeTopicAsync(String newTopic);
+
     /**
      * <p>Changes channel's position in server channel list.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -96,6 +118,16 @@ public interface ServerChannel extends Channel {
      */
     Future<RequestResponse> changePosition(int newPosition);
 
+    /**
+     * <p>Same as {@link #changePosition(int)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param newPosition a new channel's position
+     * @return stage completed with the response from Discord servers
+     * @throws IllegalArgumentException when the position is a negative number
+     * @throws PermissionDeniedException if the application doesn't have manage channel permission for this channel
+     */
+    CompletionStage<RequestResponse> changePositionAsync(int newPosition);
+
     /**
      * <p>Changes channel's bitrate.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -108,6 +140,18 @@ public interface ServerChannel extends Channel {
     Future<RequestResponse> changeBitrate(int newBitRate)
             throws IllegalArgumentException, PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #changeBitrate(int)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param newBitRate a new channel's bitrate (8000-96000)
+     * @return stage completed with the response from Discord servers
+     * @throws IllegalArgumentException when the bitrate is a not allowed number
+     * @throws PermissionDeniedException if the application doesn't have manage channel permission for this channel
+     * or if the channel is not a voice channel
+     */
+    CompletionStage<RequestResponse> changeBitrateAsync(int newBitRate)
+            throws IllegalArgumentException, PermissionDeniedException;
+
     /**
      * <p>Changes channel's user limit.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -120,6 +164,18 @@ public interface ServerChannel extends Channel {
     Future<RequestResponse> changeUserLimit(int newUserLimit)
             throws IllegalArgumentException, PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #changeUserLimit(int)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param newUserLimit a new user limit (0-99)
+     * @return stage completed with the response from Discord servers
+     * @throws IllegalArgumentException when the user limit is a not allowed number
+     * @throws PermissionDeniedException if the application doesn't have manage channel permission for this channel
+     * or if the channel is not a voice channel
+     */
+    CompletionStage<RequestResponse> changeUserLimitAsync(int newUserLimit)
+            throws IllegalArgumentException, PermissionDeniedException;
+
     /**
      * <p>Updates a text channel.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -133,6 +189,19 @@ public interface ServerChannel extends Channel {
     Future<RequestResponse> editTextChannel(String newName, String newTopic,
                                             int newPosition);
 
+    /**
+     * <p>Same as {@link #editTextChannel(String,String,int)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param newName a new channel's name (2-100 characters)
+     * @param newTopic a new channel's topic (0-1024 characters)
+     * @param newPosition a new channel's position
+     * @return stage completed with the response from Discord servers
+     * @throws IllegalArgumentException when either of the arguments is invalid
+     * @throws PermissionDeniedException if the application doesn't have manage channel permission for this channel
+     */
+    CompletionStage<RequestResponse> editTextChannelAsync(String newName, String newTopic,
+                                                          int newPosition);
+
     /**
      * <p>Updates a voice channel</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -147,6 +216,20 @@ public interface ServerChannel extends Channel {
     Future<RequestResponse> editVoiceChannel(String newName, int newPosition, int newBitRate,
                                              int newUserLimit);
 
+    /**
+     * <p>Same as {@link #editVoiceChannel(String,int,int,int)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param newName a new channel's name (2-100 characters)
+     * @param newPosition a new channel's position
+     * @param newBitRate a new channel's bitrate (8000-96000)
+     * @param newUserLimit a new user limit (0-99)
+     * @return stage completed with the response from Discord servers
+     * @throws IllegalArgumentException when either of the arguments is invalid
+     * @throws PermissionDeniedException if the application doesn't have manage channel permission for this channel
+     */
+    CompletionStage<RequestResponse> editVoiceChannelAsync(String newName, int newPosition, int newBitRate,
+                                                           int newUserLimit);
+
     /**
      * <p>Updates channel permission overwrites</p>
      * <p>Replaces old overwrites with new ones.</p>
@@ -160,6 +243,17 @@ public interface ServerChannel extends Channel {
      */
     Future<RequestResponse> updatePermissionOverwrites(PermissionOverwrite old, PermissionOverwrite replaced);
 
+    /**
+     * <p>Same as {@link #updatePermissionOverwrites(PermissionOverwrite,PermissionOverwrite)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param old old channel's overwrites
+     * @param replaced new channel's overwrites
+     * @return stage completed with the response from Discord servers
+     * @throws IllegalArgumentException when the overwrites type doesn't match
+     * @throws PermissionDeniedException if the application doesn't have manage roles permission for this channel
+     */
+    CompletionStage<RequestResponse> updatePermissionOverwritesAsync(PermissionOverwrite old, PermissionOverwrite replaced);
+
     /**
      * <p>Delete channel's permission overwrites.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -170,6 +264,16 @@ public interface ServerChannel extends Channel {
     Future<RequestResponse> deletePermissionOverwrites(PermissionOverwrite overwrites)
             throws PermissionDeniedException;
 
+    /**
+     * <p>Same as {@link #deletePermissionOverwrites(PermissionOverwrite)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param overwrites deleted overwrites
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage roles permission for this channel
+     */
+    CompletionStage<RequestResponse> deletePermissionOverwritesAsync(PermissionOverwrite overwrites)
+            throws PermissionDeniedException;
+
     /**
      * <p>Gets a mention string for the channel.</p>
      * <p>This converts channel's name into a message specific string, which creates a channel link in other clients.</p>
@@ -187,6 +291,15 @@ public interface ServerChannel extends Channel {
      */
     Future<RequestResponse> bulkDeleteMessages(List<Message> messages);
 
+    /**
+     * <p>Same as {@link #bulkDeleteMessages(List<Message>)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param messages a list of deleted messages
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage messages permission for this channel
+     */
+    CompletionStage<RequestResponse> bulkDeleteMessagesAsync(List<Message> messages);
+
     /**
      * <p>Deletes a group of messages in the channel specified by their ids.</p>
      * <p>This method sends an asynchronous request to Discord server.</p>
@@ -195,4 +308,13 @@ public interface ServerChannel extends Channel {
      * @throws PermissionDeniedException if the application doesn't have manage messages permission for this channel
      */
     Future<RequestResponse> bulkDeleteMessagesByIds(List<String> messageIds);
+
+    /**
+     * <p>Same as {@link #bulkDeleteMessagesByIds(List<String>)}, but the returned stage can be used to chain further work
+     * without blocking a thread.</p>
+     * @param messageIds a list of deleted messages' ids
+     * @return stage completed with the response from Discord servers
+     * @throws PermissionDeniedException if the application doesn't have manage messages permission for this channel
+     */
+    CompletionStage<RequestResponse> bulkDeleteMessagesByIdsAsync(List<String> messageIds);
 }